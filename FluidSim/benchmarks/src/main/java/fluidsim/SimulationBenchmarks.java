@@ -0,0 +1,202 @@
+package fluidsim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the kernels of Simulation and for a whole SimulationStep.
+ * Every benchmark runs on each scene, resized to a square grid of each size.
+ * The defaults are a small matrix that finishes in minutes, the usual JMH options select others,
+ * for example -p size=64,1024,2048 -p scene=vortexScene,clashScene -p vectorKernels=false.
+ * Run them with BenchmarkMain, which also enables the GC profiler.
+ * <p>
+ * The kernels keep changing the fields they work on, diffusion for example flattens them more with every call.
+ * The fields are saved after the prewarm steps and restored before every iteration, so all iterations measure the same
+ * workload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "--add-modules=jdk.incubator.vector"})
+public class SimulationBenchmarks {
+    private static final int SAMPLE_POINTS = 1024;
+
+    @State(Scope.Thread)
+    public static class SimulationState {
+        @Param({"128", "512"})
+        public int size;
+
+        @Param({"waterFallScene", "shootCircleScene"})
+        public String scene; //Any preset of SimulationSceneInfo
+
+        @Param({"1"})
+        public int threads;
+
+        @Param({"DOUBLE", "FLOAT"})
+        public FieldPrecision precision; //Also used for the colors
+
+        @Param({"true"})
+        public boolean vectorKernels; //Only DOUBLE has vectorized kernels, false measures the scalar ones
+
+        @Param({"false"})
+        public boolean skipQuietTiles; //true lets tiles fall asleep, the kernels then process fewer tiles over time
+
+        @Param({"0"})
+        public int extraChannels; //Channels of an additional scalar field besides the colors
+
+        @Param({"10"})
+        public int prewarmSteps; //Steps run before measuring, so the fields are not all zero
+
+        public Simulation sim;
+        public double[] sampleX;
+        public double[] sampleY;
+        private GridField[] savedFields; //The fields of getFields after the prewarm steps
+        private double[] savedParticleX;
+        private double[] savedParticleY;
+        private float[] savedLifetimes;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            SimulationSceneInfo sceneInfo = SimulationSceneInfo.getPreset(scene).resized(size, size);
+            sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, threads, precision, precision);
+            sim.useVectorKernels = vectorKernels;
+            sim.skipQuietTiles = skipQuietTiles;
+            if (extraChannels > 0)
+                sim.addScalarField("extra", extraChannels, precision, 0.8);
+            for (int i = 0; i < prewarmSteps; i++) {
+                sim.SimulationStep();
+            }
+            GridField[] fields = getFields();
+            savedFields = new GridField[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                savedFields[i] = GridField.create(size, size, fields[i].components, fields[i].getPrecision());
+                savedFields[i].copyFrom(fields[i]);
+            }
+            savedParticleX = sim.particles.x.clone();
+            savedParticleY = sim.particles.y.clone();
+            savedLifetimes = sim.particles.lifetime.clone();
+
+            Random random = new Random(42);
+            sampleX = new double[SAMPLE_POINTS];
+            sampleY = new double[SAMPLE_POINTS];
+            for (int i = 0; i < SAMPLE_POINTS; i++) {
+                sampleX[i] = random.nextDouble() * size;
+                sampleY[i] = random.nextDouble() * size;
+            }
+        }
+
+        @Setup(Level.Iteration)
+        public void restore() {
+            GridField[] fields = getFields();
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].copyFrom(savedFields[i]);
+            }
+            System.arraycopy(savedParticleX, 0, sim.particles.x, 0, savedParticleX.length);
+            System.arraycopy(savedParticleY, 0, sim.particles.y, 0, savedParticleY.length);
+            System.arraycopy(savedLifetimes, 0, sim.particles.lifetime, 0, savedLifetimes.length);
+        }
+
+        /**
+         * @return everything the kernels change, by role: diffuse swaps the buffers, so the same object can be flows
+         * in one call and oldFlows in the next.
+         */
+        private GridField[] getFields() {
+            GridField[] fields = new GridField[4 + sim.scalarFields.length * 2];
+            fields[0] = sim.flows;
+            fields[1] = sim.oldFlows;
+            fields[2] = sim.divergence;
+            fields[3] = sim.pressure;
+            for (int i = 0; i < sim.scalarFields.length; i++) {
+                fields[4 + i * 2] = sim.scalarFields[i].values;
+                fields[5 + i * 2] = sim.scalarFields[i].oldValues;
+            }
+            return fields;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            sim.clean();
+        }
+    }
+
+    @Benchmark
+    public double calculateDivergence(SimulationState state) {
+        state.sim.calculateDivergence();
+        return state.sim.maxDivergence;
+    }
+
+    /**
+     * A single Gauss-Seidel sweep, SimulationStep runs gaussSeidelIterations of them.
+     */
+    @Benchmark
+    public GridField projectGaussSeidel(SimulationState state) {
+        state.sim.projectGaussSeidel();
+        return state.sim.flows;
+    }
+
+    @Benchmark
+    public GridField diffuse(SimulationState state) {
+        state.sim.diffuse();
+        return state.sim.flows;
+    }
+
+    @Benchmark
+    public GridField advect(SimulationState state) {
+        state.sim.advect();
+        return state.sim.colors.values;
+    }
+
+    @Benchmark
+    public GridField advectVelocities(SimulationState state) {
+        state.sim.advectVelocities();
+        return state.sim.flows;
+    }
+
+    @Benchmark
+    public GridField advectColor(SimulationState state) {
+        state.sim.advectColor();
+        return state.sim.colors.values;
+    }
+
+    @Benchmark
+    public ParticleSystem moveParticles(SimulationState state) {
+        state.sim.moveParticles();
+        return state.sim.particles;
+    }
+
+    /**
+     * Interpolates the velocity at SAMPLE_POINTS random points, the reported time is per point.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLE_POINTS)
+    public void getVelAtPoint(SimulationState state, Blackhole blackhole) {
+        Simulation sim = state.sim;
+        for (int i = 0; i < SAMPLE_POINTS; i++) {
+            blackhole.consume(sim.getVelAtPoint(state.sampleX[i], state.sampleY[i], Simulation.HORIZONTAL_FLOW));
+            blackhole.consume(sim.getVelAtPoint(state.sampleX[i], state.sampleY[i], Simulation.VERTICAL_FLOW));
+        }
+    }
+
+    @Benchmark
+    public GridField simulationStep(SimulationState state) {
+        state.sim.SimulationStep();
+        return state.sim.flows;
+    }
+}
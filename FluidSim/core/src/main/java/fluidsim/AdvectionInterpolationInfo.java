@@ -1,3 +1,5 @@
+package fluidsim;
+
 public class AdvectionInterpolationInfo{
     public int CellTLX;
     public int CellTLY;
@@ -0,0 +1,276 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * Preconditioned conjugate gradient solver for the pressure of a Simulation.
+ * Solves the same system as MultigridSolver: (A p)[i] is the pressure of a cell times its number of open neighbours
+ * minus the pressures of those neighbours, and A p has to equal the divergence.
+ * The 5-point matrix is stored as three flat arrays (diagonal, coupling to the right and to the lower neighbour)
+ * and is only rebuilt when the cell types change. A modified incomplete Cholesky (MIC(0)) factorization is
+ * used as preconditioner. Like MultigridSolver it removes the mean divergence of every connected region of default cells.
+ */
+public class ConjugateGradientSolver {
+    private static final int DEFAULT_CELL = 0;
+    private static final double TUNING = 0.97; //How much of the dropped fill-in MIC(0) adds back to the diagonal
+    private static final double SAFETY = 0.25; //Falls back to the plain diagonal when the factorization gets this small
+    private static final double NUMERICAL_ZERO = 1e-12;
+
+    private final int cols;
+    private final int rows;
+
+    private final boolean[] fluid;
+    private final double[] diagonal;
+    private final double[] right; //Coupling between a cell and the cell to its right
+    private final double[] down; //Coupling between a cell and the cell below it
+    private final double[] preconditioner;
+
+    private final double[] pressure;
+    private final double[] residual;
+    private final double[] auxiliary;
+    private final double[] search;
+    private final double[] forward; //Intermediate result of the preconditioner's forward substitution
+
+    private int[] fluidRegions; //The simulation's connected regions of default cells, -1 for other cells
+    private double[] regionMeans = new double[0];
+    private int[] regionCells = new int[0];
+    private int fluidCells;
+
+    private final TileScheduler scheduler;
+    private double[] multiplyInput; //The vectors the multiply kernel currently works on
+    private double[] multiplyOutput;
+    private final TileScheduler.RangeKernel multiplyKernel = (from, to) -> multiplyRows(multiplyInput, multiplyOutput, from, to);
+
+    /**
+     * Allocates the matrix and all vectors for a grid of the given size.
+     *
+     * @param cols         The horizontal size of the simulation.
+     * @param rows         The vertical size of the simulation.
+     * @param cellType     The simulation's cell types (row-major).
+     * @param fluidRegions The connected region of every default cell, -1 for the other cells.
+     * @param regionCount  The number of regions.
+     * @param scheduler    Runs the matrix multiplication in parallel.
+     */
+    public ConjugateGradientSolver(int cols, int rows, int[] cellType, int[] fluidRegions, int regionCount, TileScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.cols = cols;
+        this.rows = rows;
+        int cells = cols * rows;
+        fluid = new boolean[cells];
+        diagonal = new double[cells];
+        right = new double[cells];
+        down = new double[cells];
+        preconditioner = new double[cells];
+        pressure = new double[cells];
+        residual = new double[cells];
+        auxiliary = new double[cells];
+        search = new double[cells];
+        forward = new double[cells];
+        updateCellTypes(cellType, fluidRegions, regionCount);
+    }
+
+    /**
+     * Rebuilds the Laplacian and its preconditioner. Has to be called whenever cells change their type.
+     *
+     * @param cellType     The simulation's cell types (row-major).
+     * @param fluidRegions The connected region of every default cell, -1 for the other cells.
+     * @param regionCount  The number of regions.
+     */
+    public void updateCellTypes(int[] cellType, int[] fluidRegions, int regionCount) {
+        this.fluidRegions = fluidRegions;
+        if (regionMeans.length < regionCount) {
+            regionMeans = new double[regionCount];
+            regionCells = new int[regionCount];
+        }
+        Arrays.fill(regionCells, 0);
+        fluidCells = 0;
+        for (int i = 0; i < fluid.length; i++) {
+            fluid[i] = cellType[i] == DEFAULT_CELL;
+            if (fluid[i]) {
+                regionCells[fluidRegions[i]]++;
+                fluidCells++;
+            }
+        }
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                diagonal[i] = 0;
+                right[i] = 0;
+                down[i] = 0;
+                if (!fluid[i])
+                    continue;
+                if (x > 0 && fluid[i - 1]) diagonal[i]++;
+                if (y > 0 && fluid[i - cols]) diagonal[i]++;
+                if (x < cols - 1 && fluid[i + 1]) {
+                    diagonal[i]++;
+                    right[i] = -1;
+                }
+                if (y < rows - 1 && fluid[i + cols]) {
+                    diagonal[i]++;
+                    down[i] = -1;
+                }
+            }
+        }
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                if (!fluid[i] || diagonal[i] == 0) {
+                    preconditioner[i] = 0;
+                    continue;
+                }
+                double e = diagonal[i];
+                if (x > 0) {
+                    double l = right[i - 1] * preconditioner[i - 1];
+                    e -= l * l + TUNING * right[i - 1] * down[i - 1] * preconditioner[i - 1] * preconditioner[i - 1];
+                }
+                if (y > 0) {
+                    double u = down[i - cols] * preconditioner[i - cols];
+                    e -= u * u + TUNING * down[i - cols] * right[i - cols] * preconditioner[i - cols] * preconditioner[i - cols];
+                }
+                if (e < SAFETY * diagonal[i])
+                    e = diagonal[i];
+                preconditioner[i] = 1 / Math.sqrt(e);
+            }
+        }
+    }
+
+    /**
+     * Solves for the pressure that cancels the given divergence.
+     * The pressure already stored in the field is used as the initial guess.
+     * The residual of the solve is the divergence that is left after subtracting the pressure gradient.
+     *
+     * @param divergence    The divergence per cell, as calculated by Simulation.
+     * @param pressureField The pressure per cell, read as initial guess and overwritten with the result.
+     * @param maxIterations The maximum number of iterations to run.
+     * @param tolerance     Stops once the residual is below this value. 0 runs until maxIterations or an exact solution.
+     * @param useL2         Compares the root mean square instead of the maximum of the residual with the tolerance.
+     * @return the number of iterations that ran.
+     */
+    public int solve(GridField divergence, GridField pressureField, int maxIterations, double tolerance, boolean useL2) {
+        Arrays.fill(regionMeans, 0);
+        for (int i = 0; i < pressure.length; i++) {
+            if (fluid[i]) {
+                pressure[i] = pressureField.get(0, i);
+                regionMeans[fluidRegions[i]] += divergence.get(0, i);
+            } else {
+                pressure[i] = 0;
+            }
+        }
+        //A closed domain only has a solution if the divergence sums up to zero, in each region on its own
+        for (int r = 0; r < regionMeans.length; r++) {
+            if (regionCells[r] > 0)
+                regionMeans[r] /= regionCells[r];
+        }
+
+        multiply(pressure, auxiliary);
+        for (int i = 0; i < residual.length; i++) {
+            residual[i] = fluid[i] ? divergence.get(0, i) - regionMeans[fluidRegions[i]] - auxiliary[i] : 0;
+        }
+
+        double stop = Math.max(tolerance, NUMERICAL_ZERO);
+        int iterations = 0;
+        if (norm(residual, useL2) >= stop) {
+            applyPreconditioner(residual, auxiliary);
+            System.arraycopy(auxiliary, 0, search, 0, search.length);
+            double sigma = dot(auxiliary, residual);
+            while (iterations < maxIterations && sigma != 0) {
+                multiply(search, auxiliary);
+                double alpha = sigma / dot(auxiliary, search);
+                for (int i = 0; i < pressure.length; i++) {
+                    pressure[i] += alpha * search[i];
+                    residual[i] -= alpha * auxiliary[i];
+                }
+                iterations++;
+                if (norm(residual, useL2) < stop)
+                    break;
+                applyPreconditioner(residual, auxiliary);
+                double newSigma = dot(auxiliary, residual);
+                double beta = newSigma / sigma;
+                for (int i = 0; i < search.length; i++) {
+                    search[i] = auxiliary[i] + beta * search[i];
+                }
+                sigma = newSigma;
+            }
+        }
+
+        for (int i = 0; i < pressure.length; i++) {
+            pressureField.set(0, i, pressure[i]);
+        }
+        return iterations;
+    }
+
+    /**
+     * Calculates res = A v.
+     */
+    private void multiply(double[] v, double[] res) {
+        multiplyInput = v;
+        multiplyOutput = res;
+        scheduler.forEachRange(rows, multiplyKernel);
+    }
+
+    private void multiplyRows(double[] v, double[] res, int fromRow, int toRow) {
+        for (int y = fromRow; y < toRow; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                double r = diagonal[i] * v[i];
+                if (x > 0) r += right[i - 1] * v[i - 1];
+                if (x < cols - 1) r += right[i] * v[i + 1];
+                if (y > 0) r += down[i - cols] * v[i - cols];
+                if (y < rows - 1) r += down[i] * v[i + cols];
+                res[i] = r;
+            }
+        }
+    }
+
+    /**
+     * Calculates res = M^-1 r by a forward and a backward substitution with the MIC(0) factor.
+     * Both substitutions depend on the previous cell, so this stays on the calling thread.
+     */
+    private void applyPreconditioner(double[] r, double[] res) {
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                if (!fluid[i]) {
+                    forward[i] = 0;
+                    continue;
+                }
+                double t = r[i];
+                if (x > 0) t -= right[i - 1] * preconditioner[i - 1] * forward[i - 1];
+                if (y > 0) t -= down[i - cols] * preconditioner[i - cols] * forward[i - cols];
+                forward[i] = t * preconditioner[i];
+            }
+        }
+        for (int y = rows - 1; y >= 0; y--) {
+            for (int x = cols - 1; x >= 0; x--) {
+                int i = y * cols + x;
+                if (!fluid[i]) {
+                    res[i] = 0;
+                    continue;
+                }
+                double t = forward[i];
+                if (x < cols - 1) t -= right[i] * preconditioner[i] * res[i + 1];
+                if (y < rows - 1) t -= down[i] * preconditioner[i] * res[i + cols];
+                res[i] = t * preconditioner[i];
+            }
+        }
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private double norm(double[] v, boolean useL2) {
+        double max = 0;
+        double squared = 0;
+        for (double value : v) {
+            max = Math.max(max, Math.abs(value));
+            squared += value * value;
+        }
+        return useL2 ? Math.sqrt(squared / Math.max(fluidCells, 1)) : max; //Obstacles have no residual, they do not count
+    }
+}
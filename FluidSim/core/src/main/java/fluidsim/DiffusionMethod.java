@@ -0,0 +1,16 @@
+package fluidsim;
+
+/**
+ * The ways Simulation can diffuse the velocities and scalar fields.
+ */
+public enum DiffusionMethod {
+    /**
+     * Mixes every cell once with the old values of its neighbours. Spreads at most one cell per substep,
+     * so strong diffusion needs many substeps.
+     */
+    EXPLICIT,
+    /**
+     * Solves the backward Euler step with a fixed number of Jacobi iterations, stable and spreading further for any coefficient.
+     */
+    IMPLICIT
+}
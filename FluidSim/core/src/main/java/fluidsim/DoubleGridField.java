@@ -0,0 +1,58 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * GridField storing its values as double.
+ */
+final class DoubleGridField extends GridField {
+    private final double[][] data;
+
+    DoubleGridField(int cols, int rows, int components) {
+        super(cols, rows, components);
+        data = new double[components][cols * rows];
+    }
+
+    @Override
+    public FieldPrecision getPrecision() {
+        return FieldPrecision.DOUBLE;
+    }
+
+    /**
+     * Returns the backing array of a single component, for kernels that work on primitive arrays directly.
+     */
+    double[] array(int component) {
+        return data[component];
+    }
+
+    @Override
+    public double get(int component, int index) {
+        return data[component][index];
+    }
+
+    @Override
+    public void set(int component, int index, double value) {
+        data[component][index] = value;
+    }
+
+    @Override
+    public void add(int component, int index, double value) {
+        data[component][index] += value;
+    }
+
+    @Override
+    public void fill(int component, double value) {
+        Arrays.fill(data[component], value);
+    }
+
+    @Override
+    public void copyFrom(GridField other) {
+        if (!(other instanceof DoubleGridField)) {
+            super.copyFrom(other);
+            return;
+        }
+        for (int c = 0; c < components; c++) {
+            System.arraycopy(((DoubleGridField) other).data[c], 0, data[c], 0, data[c].length);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package fluidsim;
+
+/**
+ * How the values of a GridField are stored. The kernels listed in FloatKernels calculate in float on fields stored as FLOAT,
+ * unless Simulation.useFloatKernels is off. All other kernels calculate in double: DOUBLE needs no conversion, while
+ * FLOAT and PACKED fields are converted to double on every load and back on every store.
+ */
+public enum FieldPrecision {
+    /**
+     * 64 bit floating point, the reference precision.
+     */
+    DOUBLE,
+    /**
+     * 32 bit floating point, half the memory traffic of DOUBLE. Calculated in float by FloatKernels,
+     * so results differ from DOUBLE within float precision.
+     */
+    FLOAT,
+    /**
+     * 16 bit unsigned fixed point with a resolution of 1/64 and a range of 0 to 1023.98.
+     * Meant for colours only, values outside the range are clamped.
+     */
+    PACKED
+}
@@ -0,0 +1,74 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * GridField storing its values as float.
+ */
+final class FloatGridField extends GridField {
+    private final float[][] data;
+
+    FloatGridField(int cols, int rows, int components) {
+        super(cols, rows, components);
+        data = new float[components][cols * rows];
+    }
+
+    @Override
+    public FieldPrecision getPrecision() {
+        return FieldPrecision.FLOAT;
+    }
+
+    /**
+     * Returns the backing array of a single component, for kernels that work on primitive arrays directly.
+     */
+    float[] array(int component) {
+        return data[component];
+    }
+
+    @Override
+    public double get(int component, int index) {
+        return data[component][index];
+    }
+
+    @Override
+    public void set(int component, int index, double value) {
+        data[component][index] = flushSubnormal(value);
+    }
+
+    @Override
+    public void add(int component, int index, double value) {
+        data[component][index] = flushSubnormal(data[component][index] + value);
+    }
+
+    @Override
+    public void fill(int component, double value) {
+        Arrays.fill(data[component], (float) value);
+    }
+
+    @Override
+    public void copyFrom(GridField other) {
+        if (!(other instanceof FloatGridField)) {
+            super.copyFrom(other);
+            return;
+        }
+        for (int c = 0; c < components; c++) {
+            System.arraycopy(((FloatGridField) other).data[c], 0, data[c], 0, data[c].length);
+        }
+    }
+
+    /**
+     * Converts to float and flushes values too small for a normal float to zero.
+     * Decaying flows would otherwise end up as subnormal floats, which the CPU handles many times slower.
+     */
+    static float flushSubnormal(double value) {
+        return flushSubnormal((float) value);
+    }
+
+    /**
+     * Flushes subnormal floats to zero. Clears all bits when the exponent is 0, without a branch.
+     */
+    static float flushSubnormal(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        return Float.intBitsToFloat(bits & ~(((bits & 0x7f800000) - 1) >> 31));
+    }
+}
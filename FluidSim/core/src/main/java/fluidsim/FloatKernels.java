@@ -0,0 +1,322 @@
+package fluidsim;
+
+/**
+ * The per-cell kernels of Simulation for fields stored as FLOAT, working on the float arrays directly and calculating in float.
+ * The generic kernels read and write every value through the GridField accessors and calculate in double,
+ * converting between float and double costs more than the halved memory traffic saves.
+ * These kernels round after every operation instead of once per stored value, so their results differ from the
+ * generic kernels within float precision.
+ * <p>
+ * Simulation picks them per storage class: divergence, projection, summed flows and the advection of the velocities
+ * when the flows are FLOAT, diffusion and advection of a scalar field when its buffers are FLOAT as well.
+ * Divergence and projection have vectorized versions in VectorKernels, which give the same results.
+ */
+final class FloatKernels {
+    //Copies of the tables of Simulation as floats
+    private float[] inverseNeighbourCounts;
+    float[] inverseOpenFaceCounts; //Also read by the float kernels of VectorKernels
+    private float[] backtraceWeights; //Simulation.backtraceWeights as written by backtraceRow
+
+    static float[] array(GridField field, int component) {
+        return ((FloatGridField) field).array(component);
+    }
+
+    /**
+     * Copies the neighbour counts and open faces of the simulation. Has to be called whenever they change.
+     */
+    void updateCellTypes(Simulation sim) {
+        int cells = sim.cols * sim.rows;
+        if (inverseNeighbourCounts == null || inverseNeighbourCounts.length != cells) {
+            inverseNeighbourCounts = new float[cells];
+            inverseOpenFaceCounts = new float[cells];
+            backtraceWeights = new float[cells * 2];
+        }
+        for (int i = 0; i < cells; i++) {
+            inverseNeighbourCounts[i] = (float) sim.inverseNeighbourCounts[i];
+            inverseOpenFaceCounts[i] = (float) sim.inverseOpenFaceCounts[i];
+        }
+    }
+
+    /**
+     * Same as the generic divergence kernel, including the per tile maximum and sum of squares.
+     */
+    void divergenceTile(Simulation sim, int tile, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] divergence = array(sim.divergence, 0);
+        int[] cellType = sim.cellType;
+        float max = 0;
+        double squared = 0;
+        for (int y = y0; y < y1; y++) {
+            float rowSquared = 0;
+            for (int x = x0, i = y * cols + x0; x < x1; x++, i++) {
+                float d = 0;
+                if (cellType[i] != Simulation.INFLOW_CELL) {
+                    float divergenceX = -flowX[i];
+                    float divergenceY = -flowY[i];
+                    if (x > 0)
+                        divergenceX += flowX[i - 1];
+                    if (y > 0)
+                        divergenceY += flowY[i - cols];
+                    d = FloatGridField.flushSubnormal(divergenceX + divergenceY);
+                }
+                divergence[i] = d;
+                max = Math.max(max, Math.abs(d));
+                rowSquared += d * d;
+            }
+            squared += rowSquared;
+        }
+        sim.tileMaxDivergence[tile] = max;
+        sim.tileSquaredDivergence[tile] = squared;
+    }
+
+    /**
+     * Same as calculateDivergenceSingle, for the cells the float kernels of VectorKernels leave to the scalar code.
+     *
+     * @return the new divergence of the cell.
+     */
+    float divergenceCell(Simulation sim, int x, int y) {
+        int i = y * sim.cols + x;
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        float d = 0;
+        if (sim.cellType[i] != Simulation.INFLOW_CELL) {
+            float divergenceX = -flowX[i];
+            float divergenceY = -flowY[i];
+            if (x > 0)
+                divergenceX += flowX[i - 1];
+            if (y > 0)
+                divergenceY += flowY[i - sim.cols];
+            d = FloatGridField.flushSubnormal(divergenceX + divergenceY);
+        }
+        array(sim.divergence, 0)[i] = d;
+        return d;
+    }
+
+    /**
+     * Same as running projectGaussSeidelCell on every cell of the tile.
+     */
+    void projectGaussSeidelTile(Simulation sim, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            projectGaussSeidelRow(sim, y * sim.cols + x0, y * sim.cols + x1);
+        }
+    }
+
+    /**
+     * Same as running projectGaussSeidelCell on the cells from start to end - 1.
+     */
+    void projectGaussSeidelRow(Simulation sim, int start, int end) {
+        int cols = sim.cols;
+        float[] oldFlowX = array(sim.oldFlows, Simulation.HORIZONTAL_FLOW);
+        float[] oldFlowY = array(sim.oldFlows, Simulation.VERTICAL_FLOW);
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] divergence = array(sim.divergence, 0);
+        float[] inverseCounts = inverseOpenFaceCounts;
+        int[] openFaces = sim.openFaces;
+        for (int i = start; i < end; i++) {
+            float horizontal = 0;
+            float vertical = 0;
+            int faces = openFaces[i]; //0 for every cell that is not fluid
+            if (faces != 0) {
+                float deltaVel = divergence[i] * inverseCounts[i];
+                if ((faces & Simulation.OPEN_RIGHT) != 0)
+                    horizontal = Math.min(oldFlowX[i] + (deltaVel - divergence[i + 1] * inverseCounts[i + 1]), 2);
+                if ((faces & Simulation.OPEN_DOWN) != 0) {
+                    float delta = 0;
+                    if (deltaVel < 0 || deltaVel > 0)
+                        delta = deltaVel - divergence[i + cols] * inverseCounts[i + cols];
+                    vertical = Math.min(oldFlowY[i] + delta, 2);
+                }
+            }
+            flowX[i] = FloatGridField.flushSubnormal(horizontal);
+            flowY[i] = FloatGridField.flushSubnormal(vertical);
+        }
+    }
+
+    /**
+     * Same as the generic diffuseRow of Simulation for one component stored as FLOAT.
+     */
+    void diffuseRow(Simulation sim, float[] source, float[] neighbourValues, float[] target, int start, int end, double keep) {
+        int cols = sim.cols;
+        int[] masks = sim.fluidNeighbourMasks;
+        int[] offsets = sim.neighbourOffsets;
+        float[] inverseCounts = inverseNeighbourCounts;
+        float keepOwn = (float) keep;
+        float share = (float) (1 - keep);
+        for (int i = start; i < end; i++) {
+            int mask = masks[i];
+            float sum = 0;
+            if (mask == Simulation.ALL_NEIGHBOURS_FLUID) {
+                int above = i - cols;
+                int below = i + cols;
+                sum += neighbourValues[above - 1];
+                sum += neighbourValues[above];
+                sum += neighbourValues[above + 1];
+                sum += neighbourValues[i - 1];
+                sum += neighbourValues[i + 1];
+                sum += neighbourValues[below - 1];
+                sum += neighbourValues[below];
+                sum += neighbourValues[below + 1];
+            } else {
+                for (int n = 0; n < 9; n++) {
+                    if ((mask & 1 << n) != 0)
+                        sum += neighbourValues[i + offsets[n]];
+                }
+            }
+            target[i] = FloatGridField.flushSubnormal(source[i] * keepOwn + sum * (share * inverseCounts[i]));
+        }
+    }
+
+    /**
+     * Same as calculateSummedFlowsTile, including the per tile maximum velocity.
+     */
+    void summedFlowsTile(Simulation sim, int tile, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] summedX = array(sim.summedFlows, Simulation.HORIZONTAL_FLOW);
+        float[] summedY = array(sim.summedFlows, Simulation.VERTICAL_FLOW);
+        float max = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0, i = y * cols + x0; x < x1; x++, i++) {
+                float dirX = flowX[i];
+                float dirY = flowY[i];
+                if (x > 0)
+                    dirX += flowX[i - 1];
+                if (y > 0)
+                    dirY += flowY[i - cols];
+                dirX = FloatGridField.flushSubnormal(dirX / -2);
+                dirY = FloatGridField.flushSubnormal(dirY / -2);
+                summedX[i] = dirX;
+                summedY[i] = dirY;
+                max = Math.max(max, Math.max(Math.abs(dirX), Math.abs(dirY)));
+            }
+        }
+        sim.tileMaxVelocity[tile] = max;
+    }
+
+    /**
+     * Same as calculateSummedOutflowsTile.
+     */
+    void summedOutflowsTile(Simulation sim, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] outflowX = array(sim.summedOutflows, Simulation.HORIZONTAL_FLOW);
+        float[] outflowY = array(sim.summedOutflows, Simulation.VERTICAL_FLOW);
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0, i = y * cols + x0; x < x1; x++, i++) {
+                float dirX = Math.max(flowX[i], 0);
+                float dirY = Math.max(flowY[i], 0);
+                if (x > 0)
+                    dirX += Math.min(flowX[i - 1], 0);
+                if (y > 0)
+                    dirY += Math.min(flowY[i - cols], 0);
+                outflowX[i] = FloatGridField.flushSubnormal(-dirX);
+                outflowY[i] = FloatGridField.flushSubnormal(-dirY);
+            }
+        }
+    }
+
+    /**
+     * Same as backtrace for the cells x0 to x1 - 1 of a row. The weights go into the float copy read by interpolateRow.
+     *
+     * @param doubleWeights Also stores the weights in Simulation.backtraceWeights, for fields advected by the generic code.
+     */
+    void backtraceRow(Simulation sim, int y, int x0, int x1, boolean doubleWeights) {
+        int cols = sim.cols;
+        float[] summedX = array(sim.summedFlows, Simulation.HORIZONTAL_FLOW);
+        float[] summedY = array(sim.summedFlows, Simulation.VERTICAL_FLOW);
+        int[] cellType = sim.cellType;
+        int[] cells = sim.backtraceCells;
+        float[] weights = backtraceWeights;
+        float dt = (float) sim.dt;
+        for (int x = x0, i = y * cols + x0; x < x1; x++, i++) {
+            if (cellType[i] == Simulation.OBSTACLE_CELL) {
+                cells[4 * i] = i;
+                cells[4 * i + 1] = i;
+                cells[4 * i + 2] = i;
+                cells[4 * i + 3] = i;
+                weights[2 * i] = 0;
+                weights[2 * i + 1] = 0;
+            } else {
+                float dirX = summedX[i] * dt;
+                float dirY = summedY[i] * dt;
+                //floor and ceil without going through double
+                int floorX = (int) dirX;
+                if (dirX < floorX)
+                    floorX--;
+                int floorY = (int) dirY;
+                if (dirY < floorY)
+                    floorY--;
+                int left = x + floorX;
+                int right = x + (dirX > floorX ? floorX + 1 : floorX);
+                int top = y + floorY;
+                int bottom = y + (dirY > floorY ? floorY + 1 : floorY);
+
+                cells[4 * i] = sim.isCellInGrid(left, top) ? top * cols + left : -1;
+                cells[4 * i + 1] = sim.isCellInGrid(right, top) ? top * cols + right : -1;
+                cells[4 * i + 2] = sim.isCellInGrid(left, bottom) ? bottom * cols + left : -1;
+                cells[4 * i + 3] = sim.isCellInGrid(right, bottom) ? bottom * cols + right : -1;
+                weights[2 * i] = (x + dirX) - left;
+                weights[2 * i + 1] = Math.abs((y + dirY) - bottom);
+            }
+            if (doubleWeights) {
+                sim.backtraceWeights[2 * i] = weights[2 * i];
+                sim.backtraceWeights[2 * i + 1] = weights[2 * i + 1];
+            }
+        }
+    }
+
+    /**
+     * Same as interpolateBacktrace for the cells from start to end - 1, writing the results into target.
+     * Uses the weights of the last backtraceRow.
+     *
+     * @param negate Stores the negated values, like the advected velocities.
+     */
+    void interpolateRow(Simulation sim, float[] source, float[] target, int start, int end, boolean negate) {
+        int[] cells = sim.backtraceCells;
+        float[] weights = backtraceWeights;
+        float sign = negate ? -1 : 1;
+        for (int i = start; i < end; i++) {
+            int tl = cells[4 * i];
+            int tr = cells[4 * i + 1];
+            int bl = cells[4 * i + 2];
+            int br = cells[4 * i + 3];
+            float tX = weights[2 * i];
+            float tY = weights[2 * i + 1];
+            //Simulation.twoDimensionLerp
+            float top = tX * (tr >= 0 ? source[tr] : 0) + (1 - tX) * (tl >= 0 ? source[tl] : 0);
+            float bottom = tX * (br >= 0 ? source[br] : 0) + (1 - tX) * (bl >= 0 ? source[bl] : 0);
+            target[i] = FloatGridField.flushSubnormal(sign * (tY * top + (1 - tY) * bottom));
+        }
+    }
+
+    /**
+     * Same as collectAdvectedFlowsTile.
+     */
+    void collectAdvectedFlowsTile(Simulation sim, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        int rows = sim.rows;
+        float[] advectedX = array(sim.advectedVelocities, Simulation.HORIZONTAL_FLOW);
+        float[] advectedY = array(sim.advectedVelocities, Simulation.VERTICAL_FLOW);
+        float[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        int[] openFaces = sim.openFaces;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0, i = y * cols + x0; x < x1; x++, i++) {
+                int faces = openFaces[i];
+                float flowRight = 0;
+                if ((faces & Simulation.OPEN_RIGHT) != 0)
+                    flowRight = advectedX[i] * (x > 0 ? 0.5f : 1) + advectedX[i + 1] * (x + 1 < cols - 1 ? 0.5f : 1);
+                float flowDown = 0;
+                if ((faces & Simulation.OPEN_DOWN) != 0)
+                    flowDown = advectedY[i] * (y > 0 ? 0.5f : 1) + advectedY[i + cols] * (y + 1 < rows - 1 ? 0.5f : 1);
+                flowX[i] = FloatGridField.flushSubnormal(flowRight);
+                flowY[i] = FloatGridField.flushSubnormal(flowDown);
+            }
+        }
+    }
+}
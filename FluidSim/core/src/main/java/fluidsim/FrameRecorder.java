@@ -0,0 +1,290 @@
+package fluidsim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Records the colors, and optionally the flows, of a Simulation every few steps into a compressed file.
+ * The simulation thread only copies the values into one of a few preallocated frames, a writer thread encodes,
+ * compresses and writes them. If the writer falls behind so far that no frame is free, the frame is dropped
+ * and counted instead of making the simulation wait.
+ * <p>
+ * The file starts with a header, followed by one deflated record per frame and an index of all frames at the end.
+ * The colors are stored as bytes clamped to 0 to 255, the flows as floats split into one plane per byte,
+ * both one plane per channel.
+ * Every keyframeInterval frames a keyframe stores the values themselves, the frames in between only the difference
+ * to the frame before, which deflates far better. FrameRecording reads the files.
+ */
+public final class FrameRecorder {
+    static final int MAGIC = 0x46535246; //"FSRF"
+    static final int INDEX_MAGIC = 0x46534958; //"FSIX"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * 7;
+    static final int INDEX_ENTRY_BYTES = 8 + 4 + 8 + 1; //Offset, length, step, keyframe
+    static final int FOOTER_BYTES = 8 + 4 + 4; //Index offset, frame count, magic
+
+    public final int cols;
+    public final int rows;
+    public final boolean recordFlows;
+    public final int recordEvery; //Steps between two frames
+    public final int keyframeInterval; //Frames between two keyframes
+
+    private final int cells;
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> queued;
+    private final Frame end = new Frame(0, false); //Tells the writer to finish
+    private final Thread writer;
+    private final FileChannel channel;
+    private volatile int recordedFrames;
+    private volatile int droppedFrames;
+    private volatile IOException writeError;
+    private boolean closed;
+
+    private Simulation source; //The simulation being captured, only set during capture
+    private Frame target;
+    private final TileScheduler.RangeKernel captureKernel = this::captureRows;
+
+    //Only used by the writer thread
+    private final byte[] previousColors;
+    private final int[] previousFlows;
+    private final byte[] payload;
+    private byte[] compressed;
+    private final Deflater deflater;
+    private long[] indexOffsets = new long[64];
+    private int[] indexLengths = new int[64];
+    private long[] indexSteps = new long[64];
+    private long position;
+
+    /**
+     * Creates the file and starts the writer thread.
+     *
+     * @param file             The file to write, it is replaced if it exists.
+     * @param cols             The width of the recorded simulations.
+     * @param rows             The height of the recorded simulations.
+     * @param recordFlows      Whether to record the flows as well as the colors.
+     * @param recordEvery      Steps between two frames.
+     * @param keyframeInterval Frames between two keyframes, seeking decodes at most this many frames.
+     * @param queueCapacity    Frames that can wait for the writer before new ones are dropped.
+     */
+    public FrameRecorder(Path file, int cols, int rows, boolean recordFlows, int recordEvery, int keyframeInterval, int queueCapacity) throws IOException {
+        if (recordEvery < 1 || keyframeInterval < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException("recordEvery, keyframeInterval and queueCapacity have to be at least 1");
+        this.cols = cols;
+        this.rows = rows;
+        this.recordFlows = recordFlows;
+        this.recordEvery = recordEvery;
+        this.keyframeInterval = keyframeInterval;
+        cells = cols * rows;
+        free = new ArrayBlockingQueue<>(queueCapacity);
+        queued = new ArrayBlockingQueue<>(queueCapacity + 1); //Room for the end marker
+        for (int i = 0; i < queueCapacity; i++) {
+            free.add(new Frame(cells, recordFlows));
+        }
+        previousColors = new byte[cells * 3];
+        previousFlows = recordFlows ? new int[cells * 2] : null;
+        payload = new byte[getPayloadBytes(cells, recordFlows)];
+        compressed = new byte[payload.length / 2 + 64];
+        deflater = new Deflater(Deflater.BEST_SPEED);
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(cols).putInt(rows).putInt(recordFlows ? 1 : 0)
+                .putInt(recordEvery).putInt(keyframeInterval).flip();
+        writeFully(header);
+
+        writer = new Thread(this::write, "frame recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records a frame if the step is one of every recordEvery steps. Call it from the thread that steps the simulation,
+     * after the step. It never waits for the writer.
+     *
+     * @param sim  The simulation, it has to have the size given to the constructor.
+     * @param step The number of steps done so far.
+     * @return whether a frame was queued, false if the step is skipped or the frame was dropped.
+     */
+    public boolean onStep(Simulation sim, long step) {
+        if (step % recordEvery != 0 || closed)
+            return false;
+        if (sim.cols != cols || sim.rows != rows)
+            throw new IllegalArgumentException("The recording is " + cols + "x" + rows + ", the simulation " + sim.cols + "x" + sim.rows);
+        Frame frame = free.poll();
+        if (frame == null) {
+            droppedFrames++;
+            return false;
+        }
+        frame.step = step;
+        source = sim;
+        target = frame;
+        sim.scheduler.forEachRange(rows, captureKernel);
+        source = null;
+        target = null;
+        queued.add(frame);
+        return true;
+    }
+
+    private void captureRows(int from, int to) {
+        GridField colors = source.colors.values;
+        GridField flows = source.flows;
+        byte[] frameColors = target.colors;
+        float[] frameFlows = target.flows;
+        for (int i = from * cols; i < to * cols; i++) {
+            for (int c = 0; c < 3; c++) {
+                frameColors[c * cells + i] = (byte) Math.max(Math.min(colors.get(c, i), 255), 0);
+            }
+        }
+        if (frameFlows == null)
+            return;
+        for (int i = from * cols; i < to * cols; i++) {
+            frameFlows[i] = (float) flows.get(Simulation.HORIZONTAL_FLOW, i);
+            frameFlows[cells + i] = (float) flows.get(Simulation.VERTICAL_FLOW, i);
+        }
+    }
+
+    /**
+     * Waits until the writer wrote all queued frames, then writes the index and closes the file.
+     * Call it from the thread that calls onStep.
+     *
+     * @throws IOException if writing any part of the file failed.
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        queued.add(end);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (writeError == null)
+                writeIndex();
+        } catch (IOException e) {
+            writeError = e;
+        } finally {
+            channel.close();
+            deflater.end();
+        }
+        if (writeError != null)
+            throw writeError;
+    }
+
+    public int getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    /**
+     * @return the frames left out because the writer was behind.
+     */
+    public int getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private void write() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = queued.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == end)
+                return;
+            try {
+                if (writeError == null)
+                    writeFrame(frame);
+            } catch (IOException e) {
+                writeError = e; //Reported by close, the remaining frames are only returned to the pool
+            }
+            free.add(frame);
+        }
+    }
+
+    private void writeFrame(Frame frame) throws IOException {
+        int index = recordedFrames;
+        boolean keyframe = index % keyframeInterval == 0;
+        byte[] colors = frame.colors;
+        for (int i = 0; i < colors.length; i++) {
+            payload[i] = keyframe ? colors[i] : (byte) (colors[i] - previousColors[i]);
+        }
+        System.arraycopy(colors, 0, previousColors, 0, colors.length);
+        if (recordFlows) {
+            //Bytes of the same significance go into the same plane, the sign and exponent planes are mostly repeats
+            float[] flows = frame.flows;
+            int base = colors.length;
+            int n = flows.length;
+            for (int i = 0; i < n; i++) {
+                int bits = Float.floatToRawIntBits(flows[i]);
+                int value = keyframe ? bits : bits ^ previousFlows[i]; //Unchanged flows give zeros
+                previousFlows[i] = bits;
+                payload[base + i] = (byte) (value >>> 24);
+                payload[base + n + i] = (byte) (value >>> 16);
+                payload[base + 2 * n + i] = (byte) (value >>> 8);
+                payload[base + 3 * n + i] = (byte) value;
+            }
+        }
+
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+
+        if (index == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, index * 2);
+            indexLengths = Arrays.copyOf(indexLengths, index * 2);
+            indexSteps = Arrays.copyOf(indexSteps, index * 2);
+        }
+        indexOffsets[index] = HEADER_BYTES + position;
+        indexLengths[index] = length;
+        indexSteps[index] = frame.step;
+        writeFully(ByteBuffer.wrap(compressed, 0, length));
+        position += length;
+        recordedFrames = index + 1;
+    }
+
+    private void writeIndex() throws IOException {
+        int frames = recordedFrames;
+        ByteBuffer index = ByteBuffer.allocate(frames * INDEX_ENTRY_BYTES + FOOTER_BYTES);
+        for (int i = 0; i < frames; i++) {
+            index.putLong(indexOffsets[i]).putInt(indexLengths[i]).putLong(indexSteps[i]).put((byte) (i % keyframeInterval == 0 ? 1 : 0));
+        }
+        index.putLong(HEADER_BYTES + position).putInt(frames).putInt(INDEX_MAGIC).flip();
+        writeFully(index);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static int getPayloadBytes(int cells, boolean flows) {
+        return cells * 3 + (flows ? cells * 2 * 4 : 0);
+    }
+
+    private static final class Frame {
+        long step;
+        final byte[] colors;
+        final float[] flows;
+
+        Frame(int cells, boolean flows) {
+            colors = new byte[cells * 3];
+            this.flows = flows ? new float[cells * 2] : null;
+        }
+    }
+}
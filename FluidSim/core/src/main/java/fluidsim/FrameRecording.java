@@ -0,0 +1,177 @@
+package fluidsim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a file written by FrameRecorder. The index at the end of the file gives the position of every frame,
+ * so any frame can be read directly: it decodes the keyframe before it and the frames up to it,
+ * or only the next frame when reading one after the other.
+ */
+public final class FrameRecording implements Closeable {
+    public final int cols;
+    public final int rows;
+    public final boolean hasFlows;
+    public final int recordEvery;
+    public final int keyframeInterval;
+
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long[] steps;
+    private final boolean[] keyframes;
+    private final int cells;
+    private final RecordedFrame decoded; //The state after the frame decodedIndex
+    private int decodedIndex = -1;
+    private final byte[] payload;
+    private ByteBuffer compressed = ByteBuffer.allocate(0);
+    private final Inflater inflater = new Inflater();
+
+    /**
+     * Opens a recording and reads its index.
+     *
+     * @throws IOException if the file cannot be read or is no complete recording.
+     */
+    public FrameRecording(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readAt(0, FrameRecorder.HEADER_BYTES);
+            if (header.getInt() != FrameRecorder.MAGIC)
+                throw new IOException("Not a frame recording: " + file);
+            int version = header.getInt();
+            if (version != FrameRecorder.VERSION)
+                throw new IOException("Unsupported recording version " + version + ": " + file);
+            cols = header.getInt();
+            rows = header.getInt();
+            hasFlows = header.getInt() != 0;
+            recordEvery = header.getInt();
+            keyframeInterval = header.getInt();
+
+            ByteBuffer footer = readAt(channel.size() - FrameRecorder.FOOTER_BYTES, FrameRecorder.FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            int frames = footer.getInt();
+            if (footer.getInt() != FrameRecorder.INDEX_MAGIC)
+                throw new IOException("The recording has no index, it was not closed: " + file);
+            ByteBuffer index = readAt(indexOffset, frames * FrameRecorder.INDEX_ENTRY_BYTES);
+            offsets = new long[frames];
+            lengths = new int[frames];
+            steps = new long[frames];
+            keyframes = new boolean[frames];
+            for (int i = 0; i < frames; i++) {
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                steps[i] = index.getLong();
+                keyframes[i] = index.get() != 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        cells = cols * rows;
+        decoded = new RecordedFrame(cols, rows, hasFlows);
+        payload = new byte[FrameRecorder.getPayloadBytes(cells, hasFlows)];
+    }
+
+    public int getFrameCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return the number of steps the simulation had done when the frame was recorded.
+     */
+    public long getStep(int index) {
+        return steps[index];
+    }
+
+    /**
+     * Decodes a frame. The returned frame is reused by the next call, copy what has to be kept.
+     *
+     * @param index From 0 to getFrameCount() - 1.
+     * @throws IOException if the file cannot be read or the frame is damaged.
+     */
+    public RecordedFrame readFrame(int index) throws IOException {
+        if (index < 0 || index >= offsets.length)
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + offsets.length);
+        if (index == decodedIndex)
+            return decoded;
+        int start = index;
+        while (!keyframes[start]) {
+            start--;
+        }
+        if (decodedIndex >= start && decodedIndex < index)
+            start = decodedIndex + 1; //Continues from the frame decoded last
+        for (int i = start; i <= index; i++) {
+            decode(i);
+        }
+        return decoded;
+    }
+
+    private void decode(int index) throws IOException {
+        decodedIndex = -1; //Stays invalid if decoding fails halfway
+        int length = lengths[index];
+        if (compressed.capacity() < length)
+            compressed = ByteBuffer.allocate(length);
+        compressed.clear().limit(length);
+        readFully(compressed, offsets[index]);
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, length);
+        try {
+            int read = 0;
+            while (read < payload.length && !inflater.finished()) {
+                int n = inflater.inflate(payload, read, payload.length - read);
+                if (n == 0 && inflater.needsInput())
+                    break;
+                read += n;
+            }
+            if (read != payload.length)
+                throw new IOException("Frame " + index + " is truncated");
+        } catch (DataFormatException e) {
+            throw new IOException("Frame " + index + " is damaged", e);
+        }
+
+        boolean keyframe = keyframes[index];
+        byte[] colors = decoded.colors;
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = keyframe ? payload[i] : (byte) (colors[i] + payload[i]);
+        }
+        if (hasFlows) {
+            float[] flows = decoded.flows;
+            int base = colors.length;
+            int n = flows.length;
+            for (int i = 0; i < n; i++) {
+                int bits = (payload[base + i] & 0xFF) << 24 | (payload[base + n + i] & 0xFF) << 16
+                        | (payload[base + 2 * n + i] & 0xFF) << 8 | payload[base + 3 * n + i] & 0xFF;
+                flows[i] = Float.intBitsToFloat(keyframe ? bits : bits ^ Float.floatToRawIntBits(flows[i]));
+            }
+        }
+        decoded.step = steps[index];
+        decodedIndex = index;
+    }
+
+    private ByteBuffer readAt(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, position);
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new IOException("Unexpected end of the recording");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+}
@@ -0,0 +1,189 @@
+package fluidsim;
+
+/**
+ * Copy of what a viewer shows of a Simulation after a step, published by SimulationThread.
+ * Only the simulation thread writes a snapshot, through capture, and only while no reader holds it,
+ * so readers can use all fields without any synchronization.
+ * The colors and a few values of one inspected cell are always copied, the fields the debug overlays draw
+ * and the particles only when asked for, they are null until then.
+ */
+public final class FrameSnapshot {
+    private static final SimulationPhase[] PHASES = SimulationPhase.values();
+
+    public int cols;
+    public int rows;
+    public long step; //Steps the simulation did up to this snapshot
+    public double fps;
+    public int projectionIterations;
+    public double projectionResidual;
+    public int substeps;
+    public double cfl; //Simulation.stepCfl
+    public double dt;
+    public int awakeTiles;
+    public boolean timingsEnabled; //Whether the simulation records its PhaseTimings, the percentiles are 0 otherwise
+    public final long[] phaseP50 = new long[PHASES.length]; //Per SimulationPhase the median duration in nanoseconds
+    public final long[] phaseP99 = new long[PHASES.length];
+
+    public int[] colorPixels; //Per cell the color as 0xRRGGBB, each channel clamped to 0 to 255
+    public boolean[] obstacles; //Per cell whether it is an obstacle, null while the grid has none
+    private int obstacleVersion = -1; //The version of the simulation's obstacles copied into obstacles
+
+    public int inspectedX; //The cell the values below belong to
+    public int inspectedY;
+    public double inspectedFlowTop; //Flows into the cell are positive
+    public double inspectedFlowLeft;
+    public double inspectedFlowRight; //Flows out of the cell are positive
+    public double inspectedFlowDown;
+    public double inspectedDivergence;
+    public double inspectedPressure;
+    public double[] inspectedColor = new double[3];
+    public int inspectedNeighbours;
+
+    public GridField flows; //Debug fields, only copied if asked for
+    public GridField divergence;
+    public GridField summedFlows;
+    public GridField summedOutflows;
+    public int particleCount; //The particles are only copied if asked for, their arrays are null until then
+    //The ambient particles first and then the emitted ones from oldest to newest, the arrays are as long as the capacity
+    public double[] particleX;
+    public double[] particleY;
+    public float[] particleVelX;
+    public float[] particleVelY;
+    public float[] particleLifetime;
+
+    private Simulation source; //The simulation being captured, only set during capture
+    private boolean copyDebugFields;
+    private final TileScheduler.RangeKernel rowsKernel = this::captureRows;
+    private final TileScheduler.RangeKernel particlesKernel = this::captureParticles;
+
+    /**
+     * Copies the current state of the simulation, using its scheduler to split the work.
+     * Buffers are only allocated the first time and when the size of the grid changes.
+     *
+     * @param sim           The simulation, it must not step while being captured.
+     * @param step          The number of steps done so far.
+     * @param debugFields   Whether to copy flows, divergence and the summed flows for the debug overlays.
+     * @param copyParticles Whether to copy the particles.
+     * @param inspectX      The horizontal position of the inspected cell, clamped to the grid.
+     * @param inspectY      The vertical position of the inspected cell, clamped to the grid.
+     */
+    void capture(Simulation sim, long step, boolean debugFields, boolean copyParticles, int inspectX, int inspectY) {
+        cols = sim.cols;
+        rows = sim.rows;
+        this.step = step;
+        fps = sim.fps;
+        projectionIterations = sim.projectionIterations;
+        projectionResidual = sim.projectionResidual;
+        substeps = sim.substeps;
+        cfl = sim.stepCfl;
+        dt = sim.dt;
+        awakeTiles = sim.getAwakeTileCount();
+        timingsEnabled = sim.timings.enabled;
+        for (SimulationPhase phase : PHASES) {
+            phaseP50[phase.ordinal()] = timingsEnabled ? sim.timings.getPercentile(phase, 50) : 0;
+            phaseP99[phase.ordinal()] = timingsEnabled ? sim.timings.getPercentile(phase, 99) : 0;
+        }
+
+        int cells = cols * rows;
+        if (colorPixels == null || colorPixels.length != cells)
+            colorPixels = new int[cells];
+        if (debugFields && (flows == null || flows.cols != cols || flows.rows != rows)) {
+            flows = GridField.create(cols, rows, 2, sim.precision);
+            divergence = GridField.create(cols, rows, 1, sim.precision);
+            summedFlows = GridField.create(cols, rows, 2, sim.precision);
+            summedOutflows = GridField.create(cols, rows, 2, sim.precision);
+        }
+        if (sim.getObstacleVersion() != obstacleVersion) {
+            //Only copied when they change, painting obstacles changes them at most once per step
+            obstacleVersion = sim.getObstacleVersion();
+            if (!sim.hasObstacles()) {
+                obstacles = null;
+            } else {
+                if (obstacles == null || obstacles.length != cells)
+                    obstacles = new boolean[cells];
+                for (int i = 0; i < cells; i++) {
+                    obstacles[i] = sim.cellType[i] == Simulation.OBSTACLE_CELL;
+                }
+            }
+        }
+        source = sim;
+        copyDebugFields = debugFields;
+        sim.scheduler.forEachRange(rows, rowsKernel);
+        if (copyParticles) {
+            particleCount = sim.particles.size();
+            int capacity = sim.particles.capacity; //The number in use changes with the emitters, the capacity does not
+            if (particleX == null || particleX.length != capacity) {
+                particleX = new double[capacity];
+                particleY = new double[capacity];
+                particleVelX = new float[capacity];
+                particleVelY = new float[capacity];
+                particleLifetime = new float[capacity];
+            }
+            sim.scheduler.forEachRange(particleCount, particlesKernel);
+        }
+        source = null;
+
+        inspectedX = Math.max(0, Math.min(inspectX, cols - 1));
+        inspectedY = Math.max(0, Math.min(inspectY, rows - 1));
+        int x = inspectedX;
+        int y = inspectedY;
+        inspectedFlowRight = sim.flows.get(x, y, Simulation.HORIZONTAL_FLOW);
+        inspectedFlowDown = sim.flows.get(x, y, Simulation.VERTICAL_FLOW);
+        inspectedFlowLeft = x > 0 ? -sim.flows.get(x - 1, y, Simulation.HORIZONTAL_FLOW) : 0;
+        inspectedFlowTop = y > 0 ? -sim.flows.get(x, y - 1, Simulation.VERTICAL_FLOW) : 0;
+        inspectedDivergence = sim.divergence.get(x, y, 0);
+        inspectedPressure = sim.pressure.get(x, y, 0);
+        for (int c = 0; c < 3; c++) {
+            inspectedColor[c] = sim.colors.get(x, y, c);
+        }
+        inspectedNeighbours = sim.neighbours[y * cols + x];
+    }
+
+    private void captureRows(int from, int to) {
+        Simulation sim = source;
+        GridField colors = sim.colors.values;
+        for (int i = from * cols; i < to * cols; i++) {
+            colorPixels[i] = toChannel(colors.get(0, i)) << 16 | toChannel(colors.get(1, i)) << 8 | toChannel(colors.get(2, i));
+        }
+        if (!copyDebugFields)
+            return;
+        for (int i = from * cols; i < to * cols; i++) {
+            for (int c = 0; c < 2; c++) {
+                flows.set(c, i, sim.flows.get(c, i));
+                summedFlows.set(c, i, sim.summedFlows.get(c, i));
+                summedOutflows.set(c, i, sim.summedOutflows.get(c, i));
+            }
+            divergence.set(0, i, sim.divergence.get(0, i));
+        }
+    }
+
+    private void captureParticles(int from, int to) {
+        ParticleSystem original = source.particles;
+        for (int i = from; i < to; i++) {
+            int slot = original.getSlot(i);
+            particleX[i] = original.x[slot];
+            particleY[i] = original.y[slot];
+            particleVelX[i] = original.velX[slot];
+            particleVelY[i] = original.velY[slot];
+            particleLifetime[i] = original.lifetime[slot];
+        }
+    }
+
+    private static int toChannel(double value) {
+        return (int) Math.max(Math.min(value, 255), 0);
+    }
+
+    /**
+     * Same as Simulation.getVelAtPoint, 0 if the debug fields were not copied.
+     */
+    public double getVelAtPoint(double x, double y, int flowDir) {
+        return summedOutflows != null ? Simulation.getVelAtPoint(summedOutflows, x, y, flowDir) : 0;
+    }
+
+    /**
+     * Same as Simulation.getAdvectionDeltas, needs the debug fields.
+     */
+    public AdvectionInterpolationInfo getAdvectionDeltas(int x, int y, boolean forward) {
+        return Simulation.getAdvectionDeltas(summedFlows, dt, x, y, forward);
+    }
+}
@@ -0,0 +1,89 @@
+package fluidsim;
+
+/**
+ * Stores one or more components for every cell of a grid.
+ * Each component is kept in its own contiguous array in row-major order (index = y * cols + x),
+ * so a sweep over the grid walks linearly through memory instead of chasing a pointer per cell.
+ * The storage type depends on the FieldPrecision the field was created with, the accessors always use double.
+ */
+public abstract class GridField {
+    public final int cols;
+    public final int rows;
+    public final int components;
+
+    protected GridField(int cols, int rows, int components) {
+        this.cols = cols;
+        this.rows = rows;
+        this.components = components;
+    }
+
+    /**
+     * Allocates a zeroed field.
+     *
+     * @param cols       The horizontal size of the grid.
+     * @param rows       The vertical size of the grid.
+     * @param components The number of values stored per cell.
+     * @param precision  How the values are stored.
+     * @return the new field.
+     */
+    public static GridField create(int cols, int rows, int components, FieldPrecision precision) {
+        switch (precision) {
+            case FLOAT:
+                return new FloatGridField(cols, rows, components);
+            case PACKED:
+                return new PackedGridField(cols, rows, components);
+            default:
+                return new DoubleGridField(cols, rows, components);
+        }
+    }
+
+    public abstract FieldPrecision getPrecision();
+
+    /**
+     * Converts a cell position into the flat index used by the index based accessors.
+     *
+     * @param x The cells horizontal position.
+     * @param y The cells vertical position.
+     * @return the flat index of the cell.
+     */
+    public int index(int x, int y) {
+        return y * cols + x;
+    }
+
+    public double get(int x, int y, int component) {
+        return get(component, y * cols + x);
+    }
+
+    public void set(int x, int y, int component, double value) {
+        set(component, y * cols + x, value);
+    }
+
+    public abstract double get(int component, int index);
+
+    public abstract void set(int component, int index, double value);
+
+    public abstract void add(int component, int index, double value);
+
+    /**
+     * Sets every value of a component.
+     *
+     * @param component The component to fill.
+     * @param value     The value to write into every cell.
+     */
+    public abstract void fill(int component, double value);
+
+    /**
+     * Copies all components of another field with the same dimensions into this one.
+     * Fields of the same precision are copied directly, otherwise every value is converted.
+     *
+     * @param other The field to copy from.
+     */
+    public void copyFrom(GridField other) {
+        int cells = cols * rows;
+        for (int c = 0; c < components; c++) {
+            for (int i = 0; i < cells; i++) {
+                set(c, i, other.get(c, i));
+            }
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package fluidsim;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Runs a Simulation without any window, for profiling and for comparing runs on different machines.
+ * Prints the time of every step and a summary with the throughput in cells per second.
+ * With --compare-precision it instead runs every preset with double and with reduced precision storage
+ * and fails if the results drift apart further than the given tolerance.
+ * --scene-file with a directory runs every scene file in it and prints one line per scene.
+ * <p>
+ * Usage: java fluidsim.HeadlessRunner [--scene name] [--scene-file file or directory] [--size colsxrows] [--steps n] [--warmup n] [--threads n]
+ * [--tile n] [--projection method] [--diffusion method] [--diffusion-iterations n] [--velocity-diffusion c]
+ * [--color-diffusion c] [--precision p] [--color-precision p] [--rate steps per second] [--quiet]
+ * [--no-timings] [--scalar] [--all-tiles] [--time-step t] [--cfl n] [--max-substeps n] [--particles n] [--particle-budget n]
+ * [--emit particles per step] [--record file] [--record-every n] [--record-flows] [--seed n]
+ * [--replay input log] [--compare-precision tolerance] [--help]
+ */
+public class HeadlessRunner {
+    private static final long COMPARISON_SEED = 42;
+
+    public String sceneName = "waterFallScene";
+    private boolean explicitScene = false; //The precision comparison runs all presets unless a scene was given
+    public String sceneFile; //A scene file or a directory of them, replaces sceneName
+    public int cols = -1; //-1 keeps the size of the scene
+    public int rows = -1;
+    public int steps = 100;
+    private boolean explicitSteps = false; //A replay runs the steps of its log unless they were given
+    public int warmupSteps = 0;
+    public int threads = Runtime.getRuntime().availableProcessors();
+    public int tileSize = TileScheduler.DEFAULT_TILE_SIZE;
+    public ProjectionMethod projectionMethod; //null keeps the default of the simulation
+    public DiffusionMethod diffusionMethod; //null keeps the setting of the scene
+    public int diffusionIterations = -1; //Negative values keep the settings of the scene
+    public double velocityDiffusion = -1;
+    public double colorDiffusion = -1;
+    public double stepsPerSecond = 0; //0 runs as fast as possible
+    public boolean quiet = false;
+    public boolean phaseTimings = true;
+    public boolean vectorKernels = true;
+    public boolean skipQuietTiles = true;
+    public double timeStep = -1; //Negative values keep the defaults of the simulation
+    public double cflNumber = -1;
+    public int maxSubsteps = -1;
+    public int particleCount = -1; //Negative values keep the settings of the scene
+    public int particleBudget = -1;
+    public double emitRate = -1;
+    public String recordFile; //null records nothing
+    public int recordEvery = 1;
+    public boolean recordFlows = false;
+    public Long seed; //null uses a new seed for every run
+    public String replayFile; //An InputLog whose simulation and inputs replace the scene and settings
+    public FieldPrecision precision = FieldPrecision.DOUBLE;
+    public FieldPrecision colorPrecision; //null uses the same as precision
+    public double comparisonTolerance = -1; //Negative values run the benchmark instead of the precision comparison
+
+    public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--help")) {
+            printUsage();
+            return;
+        }
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        if (runner.comparisonTolerance >= 0) {
+            boolean passed = runner.comparePrecision();
+            System.exit(passed ? 0 : 1);
+        }
+        runner.run();
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java fluidsim.HeadlessRunner [options]");
+        System.err.println("  --scene <name>          One of " + String.join(", ", SimulationSceneInfo.getPresetNames()));
+        System.err.println("  --scene-file <path>     A scene file, or a directory whose " + SceneLoader.EXTENSION + " files are run one after the other");
+        System.err.println("  --size <cols>x<rows>    Overrides the grid size of the scene");
+        System.err.println("  --steps <n>             Number of measured steps (default 100)");
+        System.err.println("  --warmup <n>            Number of steps to run before measuring (default 0)");
+        System.err.println("  --threads <n>           Worker threads (default: number of processors)");
+        System.err.println("  --tile <n>              Tile edge length in cells (default " + TileScheduler.DEFAULT_TILE_SIZE + ")");
+        System.err.println("  --projection <method>   " + Arrays.toString(ProjectionMethod.values()));
+        System.err.println("  --diffusion <method>    " + Arrays.toString(DiffusionMethod.values()) + " (default: the scene's or EXPLICIT)");
+        System.err.println("  --diffusion-iterations <n> Jacobi iterations per substep of IMPLICIT diffusion (default 8)");
+        System.err.println("  --velocity-diffusion <c> Part of its velocity a cell keeps when diffusing for a time of 1 (default 0.8)");
+        System.err.println("  --color-diffusion <c>   The same for the colors (default 0.8)");
+        System.err.println("  --precision <p>         Storage of flows, divergence and pressure: DOUBLE or FLOAT");
+        System.err.println("  --color-precision <p>   Storage of the colors: DOUBLE, FLOAT or PACKED (default: same as --precision)");
+        System.err.println("  --rate <steps/s>        Runs at a fixed rate instead of as fast as possible");
+        System.err.println("  --quiet                 Only prints the summary");
+        System.err.println("  --no-timings            Disables the per-phase timings of the simulation");
+        System.err.println("  --scalar                Uses the scalar kernels even if the Vector API is available");
+        System.err.println("                          (start the JVM with --add-modules jdk.incubator.vector to enable it)");
+        System.err.println("  --all-tiles             Processes every tile, also the quiet ones");
+        System.err.println("  --time-step <t>         Simulated time per step, velocities are in cells per 1 (default 1)");
+        System.err.println("  --cfl <n>               Cells a backtrace may cross before the step is split into substeps (default 5)");
+        System.err.println("  --max-substeps <n>      Upper limit of substeps per step, steps needing more exceed --cfl (default 8)");
+        System.err.println("  --particles <n>         Ambient particles spread over the grid (default one per cell)");
+        System.err.println("  --particle-budget <n>   Particles that may exist at the same time (default: what the scene needs)");
+        System.err.println("  --emit <n>              Attaches an emitter releasing n particles per step to every inflow");
+        System.err.println("  --record <file>         Records the colors of the measured steps into a compressed file");
+        System.err.println("  --record-every <n>      Steps between two recorded frames (default 1)");
+        System.err.println("  --record-flows          Also records the flows");
+        System.err.println("  --seed <n>              Seeds everything random, the same seed gives the same state hash");
+        System.err.println("  --replay <file>         Replays an input log recorded in the viewer, with its scene, settings and seed");
+        System.err.println("  --compare-precision <t> Runs every preset (or --scene, --scene-file) for --steps steps with DOUBLE and with the");
+        System.err.println("                          chosen precision and fails if they differ by more than t (relative)");
+    }
+
+    public void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--quiet")) {
+                quiet = true;
+                continue;
+            }
+            if (arg.equals("--no-timings")) {
+                phaseTimings = false;
+                continue;
+            }
+            if (arg.equals("--scalar")) {
+                vectorKernels = false;
+                continue;
+            }
+            if (arg.equals("--all-tiles")) {
+                skipQuietTiles = false;
+                continue;
+            }
+            if (arg.equals("--record-flows")) {
+                recordFlows = true;
+                continue;
+            }
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("Missing value for " + arg);
+            String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--scene":
+                        sceneName = value;
+                        explicitScene = true;
+                        break;
+                    case "--scene-file":
+                        sceneFile = value;
+                        break;
+                    case "--size":
+                        String[] size = value.toLowerCase().split("x");
+                        if (size.length != 2)
+                            throw new IllegalArgumentException("Size has to look like 128x128: " + value);
+                        cols = Integer.parseInt(size[0]);
+                        rows = Integer.parseInt(size[1]);
+                        if (cols < 2 || rows < 2)
+                            throw new IllegalArgumentException("The grid needs at least 2x2 cells: " + value);
+                        break;
+                    case "--steps":
+                        steps = Integer.parseInt(value);
+                        explicitSteps = true;
+                        break;
+                    case "--warmup":
+                        warmupSteps = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--tile":
+                        tileSize = Integer.parseInt(value);
+                        break;
+                    case "--projection":
+                        projectionMethod = ProjectionMethod.valueOf(value.toUpperCase());
+                        break;
+                    case "--diffusion":
+                        diffusionMethod = DiffusionMethod.valueOf(value.toUpperCase());
+                        break;
+                    case "--diffusion-iterations":
+                        diffusionIterations = Integer.parseInt(value);
+                        break;
+                    case "--velocity-diffusion":
+                        velocityDiffusion = Double.parseDouble(value);
+                        break;
+                    case "--color-diffusion":
+                        colorDiffusion = Double.parseDouble(value);
+                        break;
+                    case "--precision":
+                        precision = FieldPrecision.valueOf(value.toUpperCase());
+                        break;
+                    case "--color-precision":
+                        colorPrecision = FieldPrecision.valueOf(value.toUpperCase());
+                        break;
+                    case "--compare-precision":
+                        comparisonTolerance = Double.parseDouble(value);
+                        break;
+                    case "--time-step":
+                        timeStep = Double.parseDouble(value);
+                        break;
+                    case "--cfl":
+                        cflNumber = Double.parseDouble(value);
+                        break;
+                    case "--max-substeps":
+                        maxSubsteps = Integer.parseInt(value);
+                        break;
+                    case "--particles":
+                        particleCount = Integer.parseInt(value);
+                        break;
+                    case "--particle-budget":
+                        particleBudget = Integer.parseInt(value);
+                        break;
+                    case "--emit":
+                        emitRate = Double.parseDouble(value);
+                        break;
+                    case "--record":
+                        recordFile = value;
+                        break;
+                    case "--record-every":
+                        recordEvery = Integer.parseInt(value);
+                        if (recordEvery < 1)
+                            throw new IllegalArgumentException("--record-every has to be at least 1: " + value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--replay":
+                        replayFile = value;
+                        break;
+                    case "--rate":
+                        stepsPerSecond = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+            }
+        }
+        if (SimulationSceneInfo.getPreset(sceneName) == null)
+            throw new IllegalArgumentException("Unknown scene " + sceneName);
+        if (precision == FieldPrecision.PACKED)
+            throw new IllegalArgumentException("PACKED is only supported for --color-precision");
+    }
+
+    public void run() {
+        InputLog inputLog = null;
+        Simulation sim;
+        if (replayFile != null) {
+            try {
+                inputLog = InputLog.load(Paths.get(replayFile));
+            } catch (IOException e) {
+                System.err.println("Cannot replay " + replayFile + ": " + e.getMessage());
+                return;
+            }
+            sim = inputLog.createSimulation(threads);
+            sim.useVectorKernels = vectorKernels;
+            sceneName = inputLog.sceneFile != null ? inputLog.sceneFile : inputLog.sceneName;
+            if (!explicitSteps)
+                steps = (int) Math.max(0, inputLog.steps - warmupSteps);
+            System.out.println("replaying " + inputLog.getEventCount() + " inputs over " + inputLog.steps + " steps from " + replayFile);
+        } else {
+            SimulationSceneInfo sceneInfo;
+            if (sceneFile != null) {
+                Path[] files = getSceneFiles();
+                if (files == null)
+                    return;
+                if (Files.isDirectory(Paths.get(sceneFile))) {
+                    runBatch(files);
+                    return;
+                }
+                sceneInfo = loadScene(files[0]);
+                if (sceneInfo == null)
+                    return;
+                sceneName = sceneFile;
+            } else {
+                sceneInfo = SimulationSceneInfo.getPreset(sceneName);
+            }
+            if (cols > 0)
+                sceneInfo = sceneInfo.resized(cols, rows);
+            sim = createSimulation(sceneInfo, precision, getColorPrecision());
+        }
+        sim.timings.enabled = phaseTimings;
+        int nextEvent = 0;
+        long cells = (long) sim.cols * sim.rows;
+
+        System.out.println("scene " + sceneName + ", " + sim.cols + "x" + sim.rows + " cells, "
+                + sim.scheduler.parallelism + " threads, tile " + sim.scheduler.tileSize + ", " + sim.projectionMethod
+                + ", " + sim.diffusionMethod + " diffusion"
+                + ", " + sim.precision + " / " + sim.colorPrecision + " colors, "
+                + (sim.useVectorKernels && sim.vectorKernelsAvailable() ? "vector" : "scalar") + " kernels, "
+                + sim.particles.ambientCount + " of " + sim.particles.capacity + " particles ambient");
+
+        for (int i = 0; i < warmupSteps; i++) {
+            if (inputLog != null)
+                nextEvent = inputLog.applyEvents(sim, i, nextEvent);
+            sim.SimulationStep();
+        }
+        sim.timings.reset();
+
+        FrameRecorder recorder = null;
+        if (recordFile != null) {
+            try {
+                recorder = new FrameRecorder(Paths.get(recordFile), sim.cols, sim.rows, recordFlows, recordEvery, 30, 8);
+            } catch (IOException e) {
+                System.err.println("Cannot record to " + recordFile + ": " + e.getMessage());
+                sim.clean();
+                return;
+            }
+        }
+        long recordNanos = 0;
+
+        //Allocations are only counted on this thread, the worker threads of the scheduler are not included
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = threadBean instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threadBean : null;
+        long threadId = Thread.currentThread().getId();
+
+        long[] stepNanos = new long[steps];
+        long allocatedBytes = 0;
+        long awakeTiles = 0;
+        long substeps = 0;
+        int clampedSteps = 0;
+        double maxCfl = 0;
+        long particles = 0;
+        long periodNanos = stepsPerSecond > 0 ? (long) (1e9 / stepsPerSecond) : 0;
+        long nextStart = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            if (periodNanos > 0) {
+                long wait = nextStart - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                nextStart += periodNanos;
+            }
+
+            if (inputLog != null)
+                nextEvent = inputLog.applyEvents(sim, warmupSteps + i, nextEvent);
+            long allocatedBefore = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+            long start = System.nanoTime();
+            sim.SimulationStep();
+            stepNanos[i] = System.nanoTime() - start;
+            if (allocationBean != null)
+                allocatedBytes += allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            awakeTiles += sim.getAwakeTileCount();
+            substeps += sim.substeps;
+            boolean clamped = sim.substeps == sim.maxSubsteps && sim.stepCfl > sim.cflNumber;
+            if (clamped)
+                clampedSteps++;
+            maxCfl = Math.max(maxCfl, sim.stepCfl);
+            particles += sim.particles.size();
+
+            if (recorder != null) {
+                long recordStart = System.nanoTime();
+                recorder.onStep(sim, warmupSteps + i + 1);
+                recordNanos += System.nanoTime() - recordStart;
+            }
+
+            if (!quiet) {
+                System.out.printf("step %5d  %9.3f ms  %10.4g cells/s  projection %4d iterations, residual %.3g  %d/%d tiles  %d substeps, cfl %.2f%s%n",
+                        i, stepNanos[i] / 1e6, cells * 1e9 / stepNanos[i], sim.projectionIterations, sim.projectionResidual,
+                        sim.getAwakeTileCount(), sim.scheduler.getTileCount(), sim.substeps, sim.stepCfl, clamped ? " (clamped)" : "");
+            }
+        }
+        if (inputLog != null)
+            inputLog.applyEvents(sim, warmupSteps + steps, nextEvent); //The state hash includes the inputs after the last step
+        sim.clean();
+        if (recorder != null) {
+            try {
+                recorder.close();
+                System.out.printf("recorded %d frames to %s, %d dropped, %.3f ms per step on the stepping thread%n",
+                        recorder.getRecordedFrames(), recordFile, recorder.getDroppedFrames(), steps > 0 ? recordNanos / 1e6 / steps : 0);
+            } catch (IOException e) {
+                System.err.println("Recording to " + recordFile + " failed: " + e.getMessage());
+            }
+        }
+
+        printSummary(stepNanos, cells, allocationBean != null ? allocatedBytes : -1);
+        if (steps > 0)
+            System.out.printf("%.1f%% of the tiles processed per step, %.2f substeps per step, %.0f particles per step%n",
+                    100.0 * awakeTiles / steps / sim.scheduler.getTileCount(), (double) substeps / steps, (double) particles / steps);
+        if (clampedSteps > 0)
+            System.out.printf("%d steps needed more than %d substeps and exceeded the cfl number %.3g, up to %.3g%n",
+                    clampedSteps, sim.maxSubsteps, sim.cflNumber, maxCfl);
+        if (phaseTimings)
+            printPhases(sim.timings);
+        if (seed != null || inputLog != null)
+            System.out.printf("state hash %016x after %d steps, seed %d%n", hashState(sim), warmupSteps + steps, sim.seed);
+    }
+
+    /**
+     * Runs every scene for warmupSteps and steps steps with the settings of this runner, one after the other,
+     * and prints a line per scene. Scenes that cannot be loaded are reported and skipped.
+     */
+    private void runBatch(Path[] files) {
+        System.out.printf("%d scenes from %s, %d steps each after %d warmup steps, %d threads%n",
+                files.length, sceneFile, steps, warmupSteps, threads);
+        System.out.printf("%-32s %11s %10s %12s %10s%s%n", "scene", "cells", "mean ms", "cells/s", "tiles", seed != null ? "  state hash" : "");
+        int failed = 0;
+        long totalNanos = 0;
+        for (Path file : files) {
+            SimulationSceneInfo sceneInfo = loadScene(file);
+            if (sceneInfo == null) {
+                failed++;
+                continue;
+            }
+            if (cols > 0)
+                sceneInfo = sceneInfo.resized(cols, rows);
+            Simulation sim = createSimulation(sceneInfo, precision, getColorPrecision());
+            sim.timings.enabled = false;
+            for (int i = 0; i < warmupSteps; i++) {
+                sim.SimulationStep();
+            }
+            long awakeTiles = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                sim.SimulationStep();
+                awakeTiles += sim.getAwakeTileCount();
+            }
+            long nanos = System.nanoTime() - start;
+            sim.clean();
+            totalNanos += nanos;
+            long cells = (long) sim.cols * sim.rows;
+            double mean = steps > 0 ? (double) nanos / steps : 0;
+            System.out.printf("%-32s %11s %10.3f %12.4g %9.1f%%%s%n", file.getFileName(), sim.cols + "x" + sim.rows, mean / 1e6,
+                    mean > 0 ? cells * 1e9 / mean : 0, steps > 0 ? 100.0 * awakeTiles / steps / sim.scheduler.getTileCount() : 0,
+                    seed != null ? String.format("  %016x", hashState(sim)) : "");
+        }
+        System.out.printf("%d scenes in %.3f s, %d failed to load%n", files.length - failed, totalNanos / 1e9, failed);
+    }
+
+    /**
+     * @return sceneFile itself or the scene files in that directory sorted by name, null if there are none.
+     */
+    private Path[] getSceneFiles() {
+        Path path = Paths.get(sceneFile);
+        if (!Files.isDirectory(path))
+            return new Path[]{path};
+        try (Stream<Path> files = Files.list(path)) {
+            Path[] scenes = files.filter(file -> file.getFileName().toString().endsWith(SceneLoader.EXTENSION)).sorted().toArray(Path[]::new);
+            if (scenes.length > 0)
+                return scenes;
+            System.err.println("No " + SceneLoader.EXTENSION + " files in " + sceneFile);
+        } catch (IOException e) {
+            System.err.println("Cannot list " + sceneFile + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * @return the scene or null if it cannot be loaded, the reason is printed.
+     */
+    private static SimulationSceneInfo loadScene(Path file) {
+        try {
+            return SceneLoader.load(file);
+        } catch (IOException e) {
+            System.err.println("Cannot load " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return a hash of the flows, pressure, scalar fields and particles, equal for bit identical states.
+     */
+    static long hashState(Simulation sim) {
+        long hash = 0xCBF29CE484222325L;
+        ScalarField[] scalarFields = sim.getScalarFields();
+        GridField[] fields = new GridField[scalarFields.length + 2];
+        fields[0] = sim.flows;
+        fields[1] = sim.pressure;
+        for (int i = 2; i < fields.length; i++) {
+            fields[i] = scalarFields[i - 2].values;
+        }
+        for (GridField field : fields) {
+            for (int c = 0; c < field.components; c++) {
+                for (int i = 0; i < field.cols * field.rows; i++) {
+                    hash = (hash ^ Double.doubleToLongBits(field.get(c, i))) * 0x100000001B3L;
+                }
+            }
+        }
+        ParticleSystem particles = sim.particles;
+        for (int i = 0; i < particles.size(); i++) {
+            int slot = particles.getSlot(i);
+            hash = (hash ^ Double.doubleToLongBits(particles.x[slot])) * 0x100000001B3L;
+            hash = (hash ^ Double.doubleToLongBits(particles.y[slot])) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private void printSummary(long[] stepNanos, long cells, long allocatedBytes) {
+        if (stepNanos.length == 0)
+            return;
+        long[] sorted = stepNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        double mean = (double) total / sorted.length;
+        System.out.printf("%d steps in %.3f s%n", sorted.length, total / 1e9);
+        System.out.printf("step time  mean %.3f ms, min %.3f ms, median %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                mean / 1e6, sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6,
+                sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.99))] / 1e6, sorted[sorted.length - 1] / 1e6);
+        System.out.printf("throughput %.4g cells/s, %.1f steps/s%n", cells * 1e9 / mean, 1e9 / mean);
+        if (allocatedBytes >= 0)
+            System.out.printf("allocated %.1f bytes/step on the stepping thread%n", (double) allocatedBytes / sorted.length);
+    }
+
+    private static void printPhases(PhaseTimings timings) {
+        System.out.printf("%-18s %10s %10s %10s %10s%n", "phase", "mean ms", "p50 ms", "p99 ms", "max ms");
+        for (SimulationPhase phase : SimulationPhase.values()) {
+            TimingHistogram histogram = timings.getHistogram(phase);
+            System.out.printf("%-18s %10.3f %10.3f %10.3f %10.3f%n", phase.name().toLowerCase(), histogram.getMean() / 1e6,
+                    histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6);
+        }
+    }
+
+    private FieldPrecision getColorPrecision() {
+        return colorPrecision != null ? colorPrecision : precision;
+    }
+
+    private Simulation createSimulation(SimulationSceneInfo sceneInfo, FieldPrecision precision, FieldPrecision colorPrecision) {
+        if (particleCount >= 0 || particleBudget >= 0 || emitRate >= 0 || seed != null || timeStep > 0) {
+            sceneInfo = sceneInfo.copy(); //Leaves the preset as it is
+            if (seed != null)
+                sceneInfo.seed = seed;
+            if (timeStep > 0)
+                sceneInfo.timeStep = timeStep; //Before the particle budget is sized for it
+            if (particleCount >= 0)
+                sceneInfo.particleCount = particleCount;
+            if (particleBudget >= 0)
+                sceneInfo.particleBudget = particleBudget;
+            if (emitRate >= 0) {
+                for (InflowInfo inflow : sceneInfo.inflowInfos) {
+                    inflow.emitter = new ParticleEmitter(emitRate, 1);
+                }
+            }
+        }
+        Simulation sim = new Simulation(sceneInfo, tileSize, threads, precision, colorPrecision);
+        if (projectionMethod != null)
+            sim.projectionMethod = projectionMethod;
+        if (diffusionMethod != null)
+            sim.diffusionMethod = diffusionMethod;
+        if (diffusionIterations > 0)
+            sim.diffusionIterations = diffusionIterations;
+        if (velocityDiffusion >= 0)
+            sim.velocityDiffuseCoefficient = velocityDiffusion;
+        if (colorDiffusion >= 0)
+            sim.colors.diffuseCoefficient = colorDiffusion;
+        sim.useVectorKernels = vectorKernels;
+        sim.skipQuietTiles = skipQuietTiles;
+        if (cflNumber >= 0)
+            sim.cflNumber = cflNumber;
+        if (maxSubsteps >= 0)
+            sim.maxSubsteps = maxSubsteps;
+        return sim;
+    }
+
+    /**
+     * Runs the scene (or every preset if no scene was given, or every file of --scene-file) once with double precision
+     * and once with the chosen precision, starting from the same random seed, and compares the final flows and colors.
+     * The flow error is relative to the largest flow of the double run, the color error relative to 255.
+     *
+     * @return whether all scenes stayed within comparisonTolerance.
+     */
+    public boolean comparePrecision() {
+        String[] names;
+        SimulationSceneInfo[] scenes;
+        if (sceneFile != null) {
+            Path[] files = getSceneFiles();
+            if (files == null)
+                return false;
+            names = new String[files.length];
+            scenes = new SimulationSceneInfo[files.length];
+            for (int i = 0; i < files.length; i++) {
+                names[i] = files[i].getFileName().toString();
+                scenes[i] = loadScene(files[i]);
+                if (scenes[i] == null)
+                    return false;
+                if (cols > 0)
+                    scenes[i] = scenes[i].resized(cols, rows);
+            }
+        } else {
+            names = explicitScene ? new String[]{sceneName} : SimulationSceneInfo.getPresetNames();
+            //Copies are taken before anything runs, the presets' inflows change their state while ticking
+            scenes = new SimulationSceneInfo[names.length];
+            for (int i = 0; i < names.length; i++) {
+                scenes[i] = cols > 0 ? SimulationSceneInfo.getPreset(names[i]).resized(cols, rows) : SimulationSceneInfo.getPreset(names[i]).copy();
+            }
+        }
+
+        System.out.printf("%d steps, DOUBLE against %s / %s colors, tolerance %.3g%n", steps, precision, getColorPrecision(), comparisonTolerance);
+        System.out.printf("%-22s %14s %14s%n", "scene", "flow error", "color error");
+        boolean passed = true;
+        for (int i = 0; i < names.length; i++) {
+            Simulation reference = runSeeded(scenes[i].copy(), FieldPrecision.DOUBLE, FieldPrecision.DOUBLE);
+            Simulation reduced = runSeeded(scenes[i].copy(), precision, getColorPrecision());
+
+            double flowError = getFlowError(reference, reduced);
+            double colorError = getColorError(reference, reduced);
+            boolean scenePassed = flowError <= comparisonTolerance && colorError <= comparisonTolerance;
+            passed &= scenePassed;
+            System.out.printf("%-22s %14.3e %14.3e %s%n", names[i], flowError, colorError, scenePassed ? "" : "FAILED");
+        }
+        System.out.println(passed ? "passed" : "failed");
+        return passed;
+    }
+
+    /**
+     * @return the largest difference between the flows of two simulations of the same size,
+     * relative to the largest flow of the reference.
+     */
+    static double getFlowError(Simulation reference, Simulation other) {
+        double maxFlow = 0;
+        double error = 0;
+        int cells = reference.cols * reference.rows;
+        for (int index = 0; index < cells; index++) {
+            for (int c = 0; c < reference.flows.components; c++) {
+                maxFlow = Math.max(maxFlow, Math.abs(reference.flows.get(c, index)));
+                error = Math.max(error, Math.abs(reference.flows.get(c, index) - other.flows.get(c, index)));
+            }
+        }
+        return maxFlow > 0 ? error / maxFlow : error;
+    }
+
+    /**
+     * @return the largest difference between the colors of two simulations of the same size, relative to 255.
+     */
+    static double getColorError(Simulation reference, Simulation other) {
+        double error = 0;
+        int cells = reference.cols * reference.rows;
+        for (int index = 0; index < cells; index++) {
+            for (int c = 0; c < reference.colors.channels; c++) {
+                error = Math.max(error, Math.abs(reference.colors.values.get(c, index) - other.colors.values.get(c, index)));
+            }
+        }
+        return error / 255;
+    }
+
+    private Simulation runSeeded(SimulationSceneInfo sceneInfo, FieldPrecision precision, FieldPrecision colorPrecision) {
+        sceneInfo.seed = seed != null ? seed : COMPARISON_SEED;
+        Simulation sim = createSimulation(sceneInfo, precision, colorPrecision);
+        sim.timings.enabled = false;
+        for (int i = 0; i < steps; i++) {
+            sim.SimulationStep();
+        }
+        sim.clean();
+        return sim;
+    }
+}
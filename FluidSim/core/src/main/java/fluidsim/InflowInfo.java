@@ -0,0 +1,59 @@
+package fluidsim;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+public class InflowInfo {
+    public int x;
+    public int y;
+    public double dirX;
+    public double dirY;
+    public double[] color;
+    public boolean noise;
+    public double mouseX, mouseY;
+    private final Consumer<InflowInfo> action;
+    public int tick;
+    public ParticleEmitter emitter; //null if the inflow releases no particles
+    public final Random random = new Random(); //For actions that move the inflow randomly, seeded by the Simulation
+
+    public InflowInfo(int x, int y, double dirX, double dirY, double[] color, boolean noise, Consumer<InflowInfo> action) {
+        this.x = x;
+        this.y = y;
+        this.dirX = dirX;
+        this.dirY = dirY;
+        this.color = color;
+        this.noise = noise;
+        this.action = action;
+    }
+
+    public void tick(double mouseX, double mouseY)
+    {
+        tick++;
+        this.mouseX = mouseX;
+        this.mouseY = mouseY;
+        action.accept(this);
+    }
+
+    /**
+     * Attaches an emitter that releases particles at the position of this inflow.
+     *
+     * @return this inflow, so presets can attach emitters where they create their inflows.
+     */
+    public InflowInfo withEmitter(ParticleEmitter emitter) {
+        this.emitter = emitter;
+        return this;
+    }
+
+    /**
+     * @return an independent copy with the same position, direction, color, action, tick and emitter.
+     * Its random numbers do not continue those of this inflow until both are seeded the same.
+     */
+    public InflowInfo copy() {
+        InflowInfo copy = new InflowInfo(x, y, dirX, dirY, color.clone(), noise, action);
+        copy.mouseX = mouseX;
+        copy.mouseY = mouseY;
+        copy.tick = tick;
+        copy.emitter = emitter != null ? emitter.copy() : null;
+        return copy;
+    }
+}
@@ -0,0 +1,74 @@
+package fluidsim;
+
+import java.util.function.Consumer;
+
+/**
+ * Parametric inflow actions for scenes that are not written in code, see SceneLoader.
+ * Each one runs once per step like the lambdas of the presets and only depends on the tick and the mouse,
+ * so they can be shared between copies of an InflowInfo.
+ */
+public final class InflowMotion {
+    /**
+     * The action of an inflow that stays where it is.
+     */
+    public static final Consumer<InflowInfo> FIXED = info -> {
+    };
+
+    private InflowMotion() {
+    }
+
+    /**
+     * Moves the inflow back and forth along one axis.
+     *
+     * @param vertical  Moves along y instead of x.
+     * @param center    The cell the inflow swings around.
+     * @param amplitude The largest distance from the center in cells.
+     * @param period    Ticks per radian, the inflow gets back after 2 * PI * period ticks.
+     * @param phase     The angle at tick 0.
+     */
+    public static Consumer<InflowInfo> sine(boolean vertical, double center, double amplitude, double period, double phase) {
+        return info -> {
+            int position = (int) (Math.sin(info.tick / period + phase) * amplitude + center);
+            if (vertical)
+                info.y = position;
+            else
+                info.x = position;
+        };
+    }
+
+    /**
+     * Moves the inflow on a circle, like the inflows of the shootCircle preset.
+     *
+     * @param centerX The horizontal center of the circle in cells.
+     * @param centerY The vertical center of the circle in cells.
+     * @param radius  The radius in cells.
+     * @param period  Ticks per radian, negative values go the other way around.
+     * @param phase   The angle at tick 0, 0 starts below the center.
+     * @param aim     Points the inflow at the center with this factor times the distance, 0 keeps its direction.
+     */
+    public static Consumer<InflowInfo> circle(double centerX, double centerY, double radius, double period, double phase, double aim) {
+        return info -> {
+            double angle = info.tick / period + phase;
+            double x = Math.sin(angle) * radius + centerX;
+            double y = Math.cos(angle) * radius + centerY;
+            info.x = (int) x;
+            info.y = (int) y;
+            if (aim != 0) {
+                info.dirX = (centerX - x) * aim;
+                info.dirY = (centerY - y) * aim;
+            }
+        };
+    }
+
+    /**
+     * Points the inflow at the mouse, like the inflows of the shootMouse preset.
+     *
+     * @param scale The direction is the distance to the mouse in cells times this.
+     */
+    public static Consumer<InflowInfo> followMouse(double scale) {
+        return info -> {
+            info.dirX = (info.mouseX - info.x) * scale;
+            info.dirY = (info.mouseY - info.y) * scale;
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package fluidsim;
+
+import java.util.function.Consumer;
+
+/**
+ * An interaction with a Simulation from outside, as a command for SimulationThread.submit.
+ * Unlike other commands these are written to the InputLog while inputs are recorded, so a run can be replayed exactly.
+ */
+public final class InputEvent implements Consumer<Simulation> {
+    public enum Type {
+        FORCE, //Simulation.addNewForceBetweenCells
+        MOUSE, //Mouse position and inflow direction, read by the inflows of the scene
+        OBSTACLE //Simulation.setObstacles, cell1 is the top left cell and cell2 the size of the rectangle
+    }
+
+    public final Type type;
+    public final int cell1X, cell1Y, cell2X, cell2Y;
+    public final int dirX, dirY;
+    public final boolean random;
+    public final double mouseX, mouseY;
+    public final double inflowDirX, inflowDirY;
+
+    private InputEvent(Type type, int cell1X, int cell1Y, int cell2X, int cell2Y, int dirX, int dirY, boolean random,
+                       double mouseX, double mouseY, double inflowDirX, double inflowDirY) {
+        this.type = type;
+        this.cell1X = cell1X;
+        this.cell1Y = cell1Y;
+        this.cell2X = cell2X;
+        this.cell2Y = cell2Y;
+        this.dirX = dirX;
+        this.dirY = dirY;
+        this.random = random;
+        this.mouseX = mouseX;
+        this.mouseY = mouseY;
+        this.inflowDirX = inflowDirX;
+        this.inflowDirY = inflowDirY;
+    }
+
+    /**
+     * Same parameters as Simulation.addNewForceBetweenCells.
+     */
+    public static InputEvent force(int cell1X, int cell1Y, int cell2X, int cell2Y, int dirX, int dirY, boolean random) {
+        return new InputEvent(Type.FORCE, cell1X, cell1Y, cell2X, cell2Y, dirX, dirY, random, 0, 0, 0, 0);
+    }
+
+    /**
+     * Same parameters as Simulation.setObstacles.
+     */
+    public static InputEvent obstacles(int x, int y, int width, int height, boolean obstacle) {
+        return new InputEvent(Type.OBSTACLE, x, y, width, height, 0, 0, obstacle, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param mouseX     The horizontal mouse position in cells.
+     * @param mouseY     The vertical mouse position in cells.
+     * @param inflowDirX The horizontal direction for inflows following the mouse.
+     * @param inflowDirY The vertical direction for inflows following the mouse.
+     */
+    public static InputEvent mouse(double mouseX, double mouseY, double inflowDirX, double inflowDirY) {
+        return new InputEvent(Type.MOUSE, 0, 0, 0, 0, 0, 0, false, mouseX, mouseY, inflowDirX, inflowDirY);
+    }
+
+    @Override
+    public void accept(Simulation sim) {
+        if (type == Type.FORCE) {
+            sim.addNewForceBetweenCells(cell1X, cell1Y, cell2X, cell2Y, dirX, dirY, random);
+        } else if (type == Type.OBSTACLE) {
+            sim.setObstacles(cell1X, cell1Y, cell2X, cell2Y, random);
+        } else {
+            sim.mouseX = mouseX;
+            sim.mouseY = mouseY;
+            sim.inflowDirX = inflowDirX;
+            sim.inflowDirY = inflowDirY;
+        }
+    }
+
+    /**
+     * @return the event as one line of an input log, doubles are written so they read back exactly.
+     */
+    @Override
+    public String toString() {
+        if (type == Type.FORCE)
+            return "force " + cell1X + " " + cell1Y + " " + cell2X + " " + cell2Y + " " + dirX + " " + dirY + " " + random;
+        if (type == Type.OBSTACLE)
+            return "obstacle " + cell1X + " " + cell1Y + " " + cell2X + " " + cell2Y + " " + random;
+        return "mouse " + mouseX + " " + mouseY + " " + inflowDirX + " " + inflowDirY;
+    }
+
+    /**
+     * Reads an event written by toString.
+     *
+     * @throws IllegalArgumentException if the text is no event.
+     */
+    public static InputEvent parse(String text) {
+        String[] parts = text.trim().split("\\s+");
+        try {
+            if (parts[0].equals("force") && parts.length == 8)
+                return force(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                        Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), Boolean.parseBoolean(parts[7]));
+            if (parts[0].equals("obstacle") && parts.length == 6)
+                return obstacles(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]),
+                        Boolean.parseBoolean(parts[5]));
+            if (parts[0].equals("mouse") && parts.length == 5)
+                return mouse(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not an input event: " + text);
+        }
+        throw new IllegalArgumentException("Not an input event: " + text);
+    }
+}
@@ -0,0 +1,258 @@
+package fluidsim;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The inputs of a run together with everything needed to start the same simulation again, so the run can be replayed
+ * headlessly with bit identical results, for example as a benchmark workload that includes interaction.
+ * Every InputEvent is stored with the number of steps done before it, a replay applies it right before the next step.
+ * <p>
+ * The file is text: a header with one setting per line, a line "events" and then one line per event,
+ * starting with its step.
+ */
+public final class InputLog {
+    private static final String FORMAT = "fluidsim-inputs 1";
+
+    public String sceneName; //A preset of SimulationSceneInfo, null if the scene came from sceneFile
+    public String sceneFile; //A file read by SceneLoader, null for presets. Relative paths are relative to the log file
+    public int cols;
+    public int rows;
+    public long seed;
+    public int tileSize;
+    public FieldPrecision precision;
+    public FieldPrecision colorPrecision;
+    public ProjectionMethod projectionMethod;
+    public DiffusionMethod diffusionMethod = DiffusionMethod.EXPLICIT; //Logs from before diffusion settings were recorded have none
+    public int diffusionIterations = -1;
+    public double velocityDiffusion = -1; //-1 keeps the coefficients of the scene
+    public double colorDiffusion = -1;
+    public double timeStep;
+    public double cflNumber;
+    public int maxSubsteps;
+    public boolean skipQuietTiles;
+    public int particleCount;
+    public int particleBudget;
+    public long steps; //Steps of the recorded run
+
+    private long[] eventSteps = new long[64];
+    private InputEvent[] events = new InputEvent[64];
+    private int eventCount;
+
+    private SimulationSceneInfo scene; //The preset or the scene read from sceneFile
+
+    private InputLog() {
+    }
+
+    /**
+     * Starts a log for a simulation that has not done any step yet, taking over its scene and settings.
+     *
+     * @throws IllegalArgumentException if the scene is neither a preset nor from a scene file, it could not be created again.
+     */
+    public static InputLog start(Simulation sim) {
+        InputLog log = new InputLog();
+        if (sim.sceneInfo.file != null) {
+            log.sceneFile = Paths.get(sim.sceneInfo.file).toAbsolutePath().toString(); //Replays may run in another directory
+        } else if (sim.sceneInfo.name != null && SimulationSceneInfo.getPreset(sim.sceneInfo.name) != null) {
+            log.sceneName = sim.sceneInfo.name;
+        } else {
+            throw new IllegalArgumentException("Only simulations of a preset or a scene file can be replayed");
+        }
+        log.scene = sim.sceneInfo.copy();
+        log.cols = sim.cols;
+        log.rows = sim.rows;
+        log.seed = sim.seed;
+        log.tileSize = sim.scheduler.tileSize;
+        log.precision = sim.precision;
+        log.colorPrecision = sim.colorPrecision;
+        log.projectionMethod = sim.projectionMethod;
+        log.diffusionMethod = sim.diffusionMethod;
+        log.diffusionIterations = sim.diffusionIterations;
+        log.velocityDiffusion = sim.velocityDiffuseCoefficient;
+        log.colorDiffusion = sim.colors.diffuseCoefficient;
+        log.timeStep = sim.timeStep;
+        log.cflNumber = sim.cflNumber;
+        log.maxSubsteps = sim.maxSubsteps;
+        log.skipQuietTiles = sim.skipQuietTiles;
+        log.particleCount = sim.particles.ambientCount;
+        log.particleBudget = sim.particles.capacity;
+        return log;
+    }
+
+    /**
+     * Adds an event that is applied after the given number of steps. Events have to be added in the order of their steps.
+     */
+    public void add(long step, InputEvent event) {
+        if (eventCount > 0 && step < eventSteps[eventCount - 1])
+            throw new IllegalArgumentException("Event at step " + step + " after one at step " + eventSteps[eventCount - 1]);
+        if (eventCount == events.length) {
+            eventSteps = Arrays.copyOf(eventSteps, eventCount * 2);
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        eventSteps[eventCount] = step;
+        events[eventCount] = event;
+        eventCount++;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Creates the simulation the log was recorded with, in the state before its first step.
+     *
+     * @param parallelism The number of threads, it does not change the results.
+     */
+    public Simulation createSimulation(int parallelism) {
+        SimulationSceneInfo sceneInfo = scene.resized(cols, rows);
+        sceneInfo.seed = seed;
+        sceneInfo.particleCount = particleCount;
+        sceneInfo.particleBudget = particleBudget;
+        sceneInfo.diffusionMethod = diffusionMethod;
+        sceneInfo.diffusionIterations = diffusionIterations;
+        sceneInfo.timeStep = timeStep;
+        if (velocityDiffusion >= 0)
+            sceneInfo.velocityDiffusion = velocityDiffusion;
+        if (colorDiffusion >= 0)
+            sceneInfo.colorDiffusion = colorDiffusion;
+        Simulation sim = new Simulation(sceneInfo, tileSize, parallelism, precision, colorPrecision);
+        sim.projectionMethod = projectionMethod;
+        sim.cflNumber = cflNumber;
+        sim.maxSubsteps = maxSubsteps;
+        sim.skipQuietTiles = skipQuietTiles;
+        return sim;
+    }
+
+    /**
+     * Applies the events recorded after the given number of steps.
+     *
+     * @param step      The steps done so far.
+     * @param nextEvent The index of the first event not applied yet, 0 at the start.
+     * @return the index of the first event not applied yet, for the next call.
+     */
+    public int applyEvents(Simulation sim, long step, int nextEvent) {
+        while (nextEvent < eventCount && eventSteps[nextEvent] <= step) {
+            events[nextEvent].accept(sim);
+            nextEvent++;
+        }
+        return nextEvent;
+    }
+
+    /**
+     * Does all recorded steps with their events on a simulation from createSimulation,
+     * including the events that came after the last step.
+     */
+    public void replay(Simulation sim) {
+        int nextEvent = 0;
+        for (long step = 0; step < steps; step++) {
+            nextEvent = applyEvents(sim, step, nextEvent);
+            sim.SimulationStep();
+        }
+        applyEvents(sim, steps, nextEvent);
+    }
+
+    public void save(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(FORMAT + "\n");
+            writer.write(sceneFile != null ? "scene-file " + sceneFile + "\n" : "scene " + sceneName + "\n");
+            writer.write("size " + cols + " " + rows + "\n");
+            writer.write("seed " + seed + "\n");
+            writer.write("tile " + tileSize + "\n");
+            writer.write("precision " + precision + "\n");
+            writer.write("color-precision " + colorPrecision + "\n");
+            writer.write("projection " + projectionMethod + "\n");
+            writer.write("diffusion " + diffusionMethod + " " + diffusionIterations + "\n");
+            writer.write("velocity-diffusion " + velocityDiffusion + "\n");
+            writer.write("color-diffusion " + colorDiffusion + "\n");
+            writer.write("time-step " + timeStep + "\n");
+            writer.write("cfl " + cflNumber + "\n");
+            writer.write("max-substeps " + maxSubsteps + "\n");
+            writer.write("skip-quiet-tiles " + skipQuietTiles + "\n");
+            writer.write("particles " + particleCount + "\n");
+            writer.write("particle-budget " + particleBudget + "\n");
+            writer.write("steps " + steps + "\n");
+            writer.write("events\n");
+            for (int i = 0; i < eventCount; i++) {
+                writer.write(eventSteps[i] + " " + events[i] + "\n");
+            }
+        }
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or is no input log.
+     */
+    public static InputLog load(Path file) throws IOException {
+        InputLog log = new InputLog();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!FORMAT.equals(reader.readLine()))
+                throw new IOException("Not an input log: " + file);
+            String line;
+            boolean events = false;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty())
+                    continue;
+                try {
+                    if (events) {
+                        int split = line.indexOf(' ');
+                        log.add(Long.parseLong(line.substring(0, Math.max(split, 0))), InputEvent.parse(line.substring(split + 1)));
+                        continue;
+                    }
+                    if (line.equals("events")) {
+                        events = true;
+                        continue;
+                    }
+                    String[] parts = line.split(" ");
+                    String value = parts.length > 1 ? parts[1] : "";
+                    switch (parts[0]) {
+                        case "scene": log.sceneName = value; break;
+                        case "scene-file": log.sceneFile = line.substring(line.indexOf(' ') + 1); break;
+                        case "size":
+                            log.cols = Integer.parseInt(value);
+                            log.rows = Integer.parseInt(parts[2]);
+                            break;
+                        case "seed": log.seed = Long.parseLong(value); break;
+                        case "tile": log.tileSize = Integer.parseInt(value); break;
+                        case "precision": log.precision = FieldPrecision.valueOf(value); break;
+                        case "color-precision": log.colorPrecision = FieldPrecision.valueOf(value); break;
+                        case "projection": log.projectionMethod = ProjectionMethod.valueOf(value); break;
+                        case "diffusion":
+                            log.diffusionMethod = DiffusionMethod.valueOf(value);
+                            log.diffusionIterations = Integer.parseInt(parts[2]);
+                            break;
+                        case "velocity-diffusion": log.velocityDiffusion = Double.parseDouble(value); break;
+                        case "color-diffusion": log.colorDiffusion = Double.parseDouble(value); break;
+                        case "time-step": log.timeStep = Double.parseDouble(value); break;
+                        case "cfl": log.cflNumber = Double.parseDouble(value); break;
+                        case "max-substeps": log.maxSubsteps = Integer.parseInt(value); break;
+                        case "skip-quiet-tiles": log.skipQuietTiles = Boolean.parseBoolean(value); break;
+                        case "particles": log.particleCount = Integer.parseInt(value); break;
+                        case "particle-budget": log.particleBudget = Integer.parseInt(value); break;
+                        case "steps": log.steps = Long.parseLong(value); break;
+                        default: throw new IllegalArgumentException("Unknown setting " + parts[0]);
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Line " + lineNumber + " of " + file + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        if (log.sceneFile != null) {
+            log.scene = SceneLoader.load(file.resolveSibling(log.sceneFile));
+        } else if (log.sceneName != null && SimulationSceneInfo.getPreset(log.sceneName) != null) {
+            log.scene = SimulationSceneInfo.getPreset(log.sceneName);
+        } else {
+            throw new IOException("Unknown scene " + log.sceneName + " in " + file);
+        }
+        if (log.cols < 2 || log.tileSize < 1 || log.precision == null || log.colorPrecision == null || log.projectionMethod == null
+                || log.diffusionMethod == null)
+            throw new IOException("Settings are missing in " + file);
+        return log;
+    }
+}
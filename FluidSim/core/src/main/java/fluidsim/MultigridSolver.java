@@ -0,0 +1,340 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * Geometric multigrid solver for the pressure of a Simulation.
+ * Solves A p = divergence on the cell centred grid, where (A p)[i] is the pressure of a cell times its number
+ * of open neighbours minus the pressures of those neighbours. Subtracting the pressure difference of two cells
+ * from the flow between them then cancels the divergence.
+ * Only default cells take part, cells outside the grid and other cell types act as closed walls,
+ * the same way getDeltaVel stops counting them as neighbours. Every connected region of default cells is a closed domain,
+ * its divergence has to sum up to zero for a solution to exist, so the mean of each region is removed first.
+ */
+public class MultigridSolver {
+    private static final int DEFAULT_CELL = 0;
+    private static final int PRE_SMOOTHING_STEPS = 2;
+    private static final int POST_SMOOTHING_STEPS = 2;
+    private static final int COARSEST_SMOOTHING_STEPS = 50;
+    private static final int PARALLEL_THRESHOLD = 64 * 64; //Smaller levels are cheaper to do on the calling thread
+
+    private final Level[] levels;
+    private final TileScheduler scheduler;
+    private int[] fluidRegions; //The simulation's connected regions of default cells, -1 for other cells
+    private double[] regionMeans = new double[0];
+    private int[] regionCells = new int[0];
+    private int fluidCells;
+
+    //The level and color the row kernels currently work on
+    private Level currentLevel;
+    private Level currentCoarseLevel;
+    private int currentColor;
+    private final TileScheduler.RangeKernel smoothKernel = (from, to) -> smoothRows(currentLevel, currentColor, from, to);
+    private final TileScheduler.RangeKernel residualKernel = (from, to) -> calculateResidualRows(currentLevel, from, to);
+    private final TileScheduler.RangeKernel prolongateKernel = (from, to) -> prolongateRows(currentCoarseLevel, currentLevel, from, to);
+
+    /**
+     * One grid of the hierarchy. Level 0 has the simulation's resolution, every following level half of it.
+     */
+    private static final class Level {
+        final int cols;
+        final int rows;
+        final double[] pressure;
+        final double[] rhs;
+        final double[] residual;
+        final boolean[] fluid;
+        final int[] openNeighbours;
+
+        Level(int cols, int rows) {
+            this.cols = cols;
+            this.rows = rows;
+            pressure = new double[cols * rows];
+            rhs = new double[cols * rows];
+            residual = new double[cols * rows];
+            fluid = new boolean[cols * rows];
+            openNeighbours = new int[cols * rows];
+        }
+
+        void updateOpenNeighbours() {
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    int i = y * cols + x;
+                    int n = 0;
+                    if (x > 0 && fluid[i - 1]) n++;
+                    if (x < cols - 1 && fluid[i + 1]) n++;
+                    if (y > 0 && fluid[i - cols]) n++;
+                    if (y < rows - 1 && fluid[i + cols]) n++;
+                    openNeighbours[i] = n;
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates all levels for a grid of the given size.
+     *
+     * @param cols         The horizontal size of the simulation.
+     * @param rows         The vertical size of the simulation.
+     * @param cellType     The simulation's cell types (row-major).
+     * @param fluidRegions The connected region of every default cell, -1 for the other cells.
+     * @param regionCount  The number of regions.
+     * @param scheduler    Runs the larger levels in parallel.
+     */
+    public MultigridSolver(int cols, int rows, int[] cellType, int[] fluidRegions, int regionCount, TileScheduler scheduler) {
+        this.scheduler = scheduler;
+        int levelCount = 1;
+        for (int c = cols, r = rows; c > 2 && r > 2; c = (c + 1) / 2, r = (r + 1) / 2) {
+            levelCount++;
+        }
+        levels = new Level[levelCount];
+        for (int l = 0, c = cols, r = rows; l < levelCount; l++, c = (c + 1) / 2, r = (r + 1) / 2) {
+            levels[l] = new Level(c, r);
+        }
+        updateCellTypes(cellType, fluidRegions, regionCount);
+    }
+
+    /**
+     * Rebuilds the fluid masks of all levels. Has to be called whenever cells change their type.
+     * A coarse cell is fluid if any of the fine cells it covers is.
+     *
+     * @param cellType     The simulation's cell types (row-major).
+     * @param fluidRegions The connected region of every default cell, -1 for the other cells.
+     * @param regionCount  The number of regions.
+     */
+    public void updateCellTypes(int[] cellType, int[] fluidRegions, int regionCount) {
+        this.fluidRegions = fluidRegions;
+        if (regionMeans.length < regionCount) {
+            regionMeans = new double[regionCount];
+            regionCells = new int[regionCount];
+        }
+        Arrays.fill(regionCells, 0);
+        Level fine = levels[0];
+        fluidCells = 0;
+        for (int i = 0; i < fine.fluid.length; i++) {
+            fine.fluid[i] = cellType[i] == DEFAULT_CELL;
+            if (fine.fluid[i]) {
+                regionCells[fluidRegions[i]]++;
+                fluidCells++;
+            }
+        }
+        fine.updateOpenNeighbours();
+        for (int l = 1; l < levels.length; l++) {
+            Level coarse = levels[l];
+            for (int y = 0; y < coarse.rows; y++) {
+                for (int x = 0; x < coarse.cols; x++) {
+                    boolean fluid = false;
+                    for (int fy = 2 * y; fy < Math.min(2 * y + 2, fine.rows); fy++) {
+                        for (int fx = 2 * x; fx < Math.min(2 * x + 2, fine.cols); fx++) {
+                            fluid |= fine.fluid[fy * fine.cols + fx];
+                        }
+                    }
+                    coarse.fluid[y * coarse.cols + x] = fluid;
+                }
+            }
+            coarse.updateOpenNeighbours();
+            fine = coarse;
+        }
+    }
+
+    /**
+     * Solves for the pressure that cancels the given divergence.
+     * The pressure already stored in the field is used as the initial guess, so reusing the field between steps
+     * starts every solve from last step's solution.
+     *
+     * The residual of the solve is the divergence that is left after subtracting the pressure gradient,
+     * so the tolerance can be given in the same units as for the other projection methods.
+     *
+     * @param divergence The divergence per cell, as calculated by Simulation.
+     * @param pressure   The pressure per cell, read as initial guess and overwritten with the result.
+     * @param maxCycles  The maximum number of V-cycles to run.
+     * @param tolerance  Stops once the residual is below this value. 0 always runs maxCycles.
+     * @param useL2      Compares the root mean square instead of the maximum of the residual with the tolerance.
+     * @return the number of V-cycles that ran.
+     */
+    public int solve(GridField divergence, GridField pressure, int maxCycles, double tolerance, boolean useL2) {
+        Level fine = levels[0];
+        Arrays.fill(regionMeans, 0);
+        for (int i = 0; i < fine.rhs.length; i++) {
+            if (fine.fluid[i]) {
+                fine.rhs[i] = divergence.get(0, i);
+                fine.pressure[i] = pressure.get(0, i);
+                regionMeans[fluidRegions[i]] += fine.rhs[i];
+            } else {
+                fine.rhs[i] = 0;
+                fine.pressure[i] = 0;
+            }
+        }
+        //A closed domain only has a solution if the divergence sums up to zero, in each region on its own
+        for (int r = 0; r < regionMeans.length; r++) {
+            if (regionCells[r] > 0)
+                regionMeans[r] /= regionCells[r];
+        }
+        for (int i = 0; i < fine.rhs.length; i++) {
+            if (fine.fluid[i])
+                fine.rhs[i] -= regionMeans[fluidRegions[i]];
+        }
+
+        int cycles = 0;
+        while (cycles < maxCycles) {
+            if (tolerance > 0 && residualNorm(fine, useL2) < tolerance)
+                break;
+            vCycle(0);
+            cycles++;
+        }
+
+        for (int i = 0; i < fine.pressure.length; i++) {
+            pressure.set(0, i, fine.pressure[i]);
+        }
+        return cycles;
+    }
+
+    private double residualNorm(Level level, boolean useL2) {
+        calculateResidual(level);
+        double max = 0;
+        double squared = 0;
+        for (double r : level.residual) {
+            max = Math.max(max, Math.abs(r));
+            squared += r * r;
+        }
+        return useL2 ? Math.sqrt(squared / Math.max(fluidCells, 1)) : max; //Obstacles have no residual, they do not count
+    }
+
+    private void vCycle(int l) {
+        Level level = levels[l];
+        if (l == levels.length - 1) {
+            smooth(level, COARSEST_SMOOTHING_STEPS);
+            return;
+        }
+        smooth(level, PRE_SMOOTHING_STEPS);
+        calculateResidual(level);
+        Level coarse = levels[l + 1];
+        restrict(level, coarse);
+        Arrays.fill(coarse.pressure, 0);
+        vCycle(l + 1);
+        prolongate(coarse, level);
+        smooth(level, POST_SMOOTHING_STEPS);
+    }
+
+    /**
+     * Runs a row kernel on all rows of a level, in parallel if the level is large enough.
+     */
+    private void forEachRow(Level level, TileScheduler.RangeKernel kernel) {
+        if (level.cols * level.rows < PARALLEL_THRESHOLD)
+            kernel.run(0, level.rows);
+        else
+            scheduler.forEachRange(level.rows, kernel);
+    }
+
+    /**
+     * Red-black Gauss-Seidel sweeps. All cells of one color only depend on cells of the other color,
+     * so the rows of one color can be smoothed in parallel as long as the colors are done one after another.
+     */
+    private void smooth(Level level, int steps) {
+        currentLevel = level;
+        for (int s = 0; s < steps; s++) {
+            for (int color = 0; color < 2; color++) {
+                currentColor = color;
+                forEachRow(level, smoothKernel);
+            }
+        }
+    }
+
+    private void smoothRows(Level level, int color, int fromRow, int toRow) {
+        final int cols = level.cols;
+        final int rows = level.rows;
+        final double[] p = level.pressure;
+        for (int y = fromRow; y < toRow; y++) {
+            for (int x = (y + color) % 2; x < cols; x += 2) {
+                int i = y * cols + x;
+                int n = level.openNeighbours[i];
+                if (!level.fluid[i] || n == 0)
+                    continue;
+                double sum = level.rhs[i];
+                if (x > 0 && level.fluid[i - 1]) sum += p[i - 1];
+                if (x < cols - 1 && level.fluid[i + 1]) sum += p[i + 1];
+                if (y > 0 && level.fluid[i - cols]) sum += p[i - cols];
+                if (y < rows - 1 && level.fluid[i + cols]) sum += p[i + cols];
+                p[i] = sum / n;
+            }
+        }
+    }
+
+    private void calculateResidual(Level level) {
+        currentLevel = level;
+        forEachRow(level, residualKernel);
+    }
+
+    private void calculateResidualRows(Level level, int fromRow, int toRow) {
+        final int cols = level.cols;
+        final int rows = level.rows;
+        final double[] p = level.pressure;
+        for (int y = fromRow; y < toRow; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                if (!level.fluid[i]) {
+                    level.residual[i] = 0;
+                    continue;
+                }
+                double ap = level.openNeighbours[i] * p[i];
+                if (x > 0 && level.fluid[i - 1]) ap -= p[i - 1];
+                if (x < cols - 1 && level.fluid[i + 1]) ap -= p[i + 1];
+                if (y > 0 && level.fluid[i - cols]) ap -= p[i - cols];
+                if (y < rows - 1 && level.fluid[i + cols]) ap -= p[i + cols];
+                level.residual[i] = level.rhs[i] - ap;
+            }
+        }
+    }
+
+    /**
+     * Sums the residuals of the up to four fine cells covered by each coarse cell.
+     * The operator has no 1/h^2 factor, so doubling the cell size scales the right hand side by four,
+     * which makes the sum (four times the average) the matching coarse right hand side.
+     */
+    private void restrict(Level fine, Level coarse) {
+        for (int y = 0; y < coarse.rows; y++) {
+            for (int x = 0; x < coarse.cols; x++) {
+                double sum = 0;
+                for (int fy = 2 * y; fy < Math.min(2 * y + 2, fine.rows); fy++) {
+                    for (int fx = 2 * x; fx < Math.min(2 * x + 2, fine.cols); fx++) {
+                        sum += fine.residual[fy * fine.cols + fx];
+                    }
+                }
+                coarse.rhs[y * coarse.cols + x] = sum;
+            }
+        }
+    }
+
+    /**
+     * Adds the bilinearly interpolated coarse correction to the fine pressure.
+     * Each fine cell is weighted 9/16 by its parent, 3/16 by the two coarse cells next to it and 1/16 by the diagonal one.
+     * Coarse neighbours outside the grid or outside the fluid are replaced by the parent.
+     */
+    private void prolongate(Level coarse, Level fine) {
+        currentCoarseLevel = coarse;
+        currentLevel = fine;
+        forEachRow(fine, prolongateKernel);
+    }
+
+    private void prolongateRows(Level coarse, Level fine, int fromRow, int toRow) {
+        final double[] e = coarse.pressure;
+        for (int y = fromRow; y < toRow; y++) {
+            int cy = y / 2;
+            int ny = (y % 2 == 0) ? cy - 1 : cy + 1;
+            boolean validY = ny >= 0 && ny < coarse.rows;
+            for (int x = 0; x < fine.cols; x++) {
+                int i = y * fine.cols + x;
+                if (!fine.fluid[i])
+                    continue;
+                int cx = x / 2;
+                int nx = (x % 2 == 0) ? cx - 1 : cx + 1;
+                boolean validX = nx >= 0 && nx < coarse.cols;
+                int parent = cy * coarse.cols + cx;
+                double center = e[parent];
+                double sideX = validX && coarse.fluid[cy * coarse.cols + nx] ? e[cy * coarse.cols + nx] : center;
+                double sideY = validY && coarse.fluid[ny * coarse.cols + cx] ? e[ny * coarse.cols + cx] : center;
+                double diagonal = validX && validY && coarse.fluid[ny * coarse.cols + nx] ? e[ny * coarse.cols + nx] : center;
+                fine.pressure[i] += (9 * center + 3 * sideX + 3 * sideY + diagonal) / 16.0;
+            }
+        }
+    }
+}
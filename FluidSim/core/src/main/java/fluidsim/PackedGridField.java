@@ -0,0 +1,59 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * GridField storing its values as unsigned 16 bit fixed point numbers, see FieldPrecision.PACKED.
+ */
+final class PackedGridField extends GridField {
+    private static final double SCALE = 64; //Steps per unit
+    private static final double MAX = 0xFFFF / SCALE;
+
+    private final short[][] data;
+
+    PackedGridField(int cols, int rows, int components) {
+        super(cols, rows, components);
+        data = new short[components][cols * rows];
+    }
+
+    @Override
+    public FieldPrecision getPrecision() {
+        return FieldPrecision.PACKED;
+    }
+
+    @Override
+    public double get(int component, int index) {
+        return (data[component][index] & 0xFFFF) / SCALE;
+    }
+
+    @Override
+    public void set(int component, int index, double value) {
+        data[component][index] = pack(value);
+    }
+
+    @Override
+    public void add(int component, int index, double value) {
+        data[component][index] = pack(get(component, index) + value);
+    }
+
+    @Override
+    public void fill(int component, double value) {
+        Arrays.fill(data[component], pack(value));
+    }
+
+    @Override
+    public void copyFrom(GridField other) {
+        if (!(other instanceof PackedGridField)) {
+            super.copyFrom(other);
+            return;
+        }
+        for (int c = 0; c < components; c++) {
+            System.arraycopy(((PackedGridField) other).data[c], 0, data[c], 0, data[c].length);
+        }
+    }
+
+    private static short pack(double value) {
+        double clamped = value > 0 ? Math.min(value, MAX) : 0; //Also maps NaN to 0
+        return (short) (int) (clamped * SCALE + 0.5);
+    }
+}
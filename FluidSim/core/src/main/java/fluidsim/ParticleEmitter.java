@@ -0,0 +1,45 @@
+package fluidsim;
+
+/**
+ * Releases particles at the position of the InflowInfo it is attached to, once per step.
+ * The particles come from the pool of the ParticleSystem, so an emitter never makes the simulation exceed its particle budget.
+ */
+public class ParticleEmitter {
+    public double particlesPerStep; //Fractions add up over the steps
+    public double spread; //Particles start up to this many cells away from the inflow in both directions
+    public double lifetime = ParticleSystem.LIFETIME;
+    double pending; //Fraction of a particle carried over to the next step
+
+    public ParticleEmitter(double particlesPerStep, double spread) {
+        this.particlesPerStep = particlesPerStep;
+        this.spread = spread;
+    }
+
+    /**
+     * @return the number of particles to emit this step, keeping the fraction for the next one.
+     */
+    int take() {
+        pending += particlesPerStep;
+        int count = (int) pending;
+        pending -= count;
+        return count;
+    }
+
+    /**
+     * @param timeStep The simulated time per step.
+     * @return how many of this emitter's particles are alive at the same time once it runs steadily.
+     */
+    public int getSteadyCount(double timeStep) {
+        return (int) Math.ceil(particlesPerStep * lifetime / (ParticleSystem.LIFETIME_PER_STEP * timeStep));
+    }
+
+    /**
+     * @return an independent copy with the same settings and carried over fraction.
+     */
+    public ParticleEmitter copy() {
+        ParticleEmitter copy = new ParticleEmitter(particlesPerStep, spread);
+        copy.lifetime = lifetime;
+        copy.pending = pending;
+        return copy;
+    }
+}
@@ -0,0 +1,271 @@
+package fluidsim;
+
+/**
+ * Tracer particles carried by the flow, stored as one primitive array per property instead of an object per particle.
+ * Positions stay doubles, so slow flows still move the particles, the rest are floats to keep millions of particles small.
+ * Moving the particles never allocates, they are split into ranges for the worker threads of the simulation,
+ * and expired particles are respawned in their own slot with a random number derived from the slot and the step,
+ * which needs no shared random generator between the threads.
+ * <p>
+ * The first ambientCount slots hold the ambient particles, they are spread over the whole grid and respawn there.
+ * The other slots are a pool for the particles of ParticleEmitters, a ring in which the oldest particle always comes first:
+ * new ones are added at its end and once the budget is used up the oldest particle makes room for the new one.
+ * All emitted particles age at the same rate, so while their emitters share a lifetime they expire in the order of the
+ * ring and are released from its start. A particle with less lifetime than the one emitted before it expires out of order,
+ * until the pool is in order again every move also releases the expired particles from the middle of the ring.
+ * Only the ambient particles and the used part of the pool are moved, so the cost follows the particles in use.
+ */
+public final class ParticleSystem {
+    public static final float LIFETIME = 1000; //Lifetime of a respawned particle
+    static final float LIFETIME_PER_STEP = 20; //Lifetime lost per time of 1
+
+    public final int capacity; //The particle budget, no more particles exist at the same time
+    public final int ambientCount;
+    public final double[] x;
+    public final double[] y;
+    public final float[] velX; //Distance moved in the last substep
+    public final float[] velY;
+    public final float[] lifetime;
+    public long seed; //Respawn positions are a function of seed, slot and step
+
+    private final int poolSize;
+    private int poolStart; //Slot of the oldest emitted particle, relative to ambientCount
+    private int poolUsed; //Emitted particles, alive or expired but not yet released
+    private boolean poolUnordered; //Some emitted particle expires before an older one, see releaseExpired
+    private long emitted; //Counts the emitted particles, each gets its own random numbers
+    private long generation; //Counts the moves, so a slot expiring twice respawns at different positions
+    private Simulation sim; //Only set while moving
+    private final TileScheduler.RangeKernel moveKernel = this::move;
+
+    /**
+     * Creates the ambient particles at random cells with random lifetimes, so they do not all expire together.
+     *
+     * @param ambientCount The number of particles spread over the grid, at most capacity.
+     * @param capacity     The number of particles that can exist at the same time, the rest is the pool of the emitters.
+     * @param seed         Decides all random positions.
+     */
+    public ParticleSystem(int ambientCount, int capacity, int cols, int rows, long seed) {
+        if (ambientCount < 0 || ambientCount > capacity)
+            throw new IllegalArgumentException("Ambient particles have to be between 0 and the capacity " + capacity + ": " + ambientCount);
+        this.capacity = capacity;
+        this.ambientCount = ambientCount;
+        this.seed = seed;
+        poolSize = capacity - ambientCount;
+        x = new double[capacity];
+        y = new double[capacity];
+        velX = new float[capacity];
+        velY = new float[capacity];
+        lifetime = new float[capacity];
+        for (int i = 0; i < ambientCount; i++) {
+            long random = random(i, -1);
+            x[i] = randomInt(random, cols);
+            y[i] = randomInt(mix(random), rows);
+            lifetime[i] = randomInt(mix(mix(random)), (int) LIFETIME);
+        }
+    }
+
+    /**
+     * @return the number of particles in use, the ambient ones and the emitted ones not released yet.
+     */
+    public int size() {
+        return ambientCount + poolUsed;
+    }
+
+    /**
+     * @param index From 0 to size() - 1, the ambient particles first and then the emitted ones from oldest to newest.
+     * @return the slot of the particle in the arrays.
+     */
+    public int getSlot(int index) {
+        if (index < ambientCount)
+            return index;
+        int slot = poolStart + index - ambientCount;
+        if (slot >= poolSize)
+            slot -= poolSize;
+        return ambientCount + slot;
+    }
+
+    /**
+     * Moves every particle by the velocity at its position for the current dt, respawns the expired ambient particles
+     * and releases the expired emitted ones.
+     */
+    void move(Simulation sim) {
+        this.sim = sim;
+        sim.scheduler.forEachRange(size(), moveKernel);
+        this.sim = null;
+        generation++;
+        if (poolUnordered) {
+            releaseExpired();
+            return;
+        }
+        while (poolUsed > 0 && lifetime[ambientCount + poolStart] <= 0) {
+            poolStart = poolStart + 1 < poolSize ? poolStart + 1 : 0;
+            poolUsed--;
+        }
+    }
+
+    /**
+     * Releases the expired emitted particles from anywhere in the pool by moving the live ones towards its start,
+     * keeping them in order from the oldest to the newest. Checks on the way if they expire in that order again.
+     */
+    private void releaseExpired() {
+        int kept = 0;
+        float previousLifetime = 0;
+        poolUnordered = false;
+        for (int index = ambientCount; index < ambientCount + poolUsed; index++) {
+            int from = getSlot(index);
+            if (lifetime[from] <= 0)
+                continue;
+            int to = getSlot(ambientCount + kept);
+            if (to != from) {
+                x[to] = x[from];
+                y[to] = y[from];
+                velX[to] = velX[from];
+                velY[to] = velY[from];
+                lifetime[to] = lifetime[from];
+            }
+            poolUnordered |= lifetime[to] < previousLifetime;
+            previousLifetime = lifetime[to];
+            kept++;
+        }
+        poolUsed = kept;
+    }
+
+    /**
+     * Adds the particles the emitter releases this step around the given cell.
+     * When the pool is full the oldest emitted particles are replaced.
+     */
+    void emit(ParticleEmitter emitter, int cellX, int cellY) {
+        int count = emitter.take();
+        if (poolSize == 0)
+            return;
+        float life = (float) emitter.lifetime;
+        for (int i = 0; i < count; i++) {
+            if (poolUsed == poolSize) {
+                poolStart = poolStart + 1 < poolSize ? poolStart + 1 : 0;
+                poolUsed--;
+            }
+            //Expires before the particle emitted last
+            if (poolUsed > 0 && life < lifetime[getSlot(ambientCount + poolUsed - 1)])
+                poolUnordered = true;
+            int slot = getSlot(ambientCount + poolUsed);
+            poolUsed++;
+            long random = random(emitted++, -2);
+            x[slot] = cellX + (toUnit(random) * 2 - 1) * emitter.spread;
+            y[slot] = cellY + (toUnit(mix(random)) * 2 - 1) * emitter.spread;
+            velX[slot] = 0;
+            velY[slot] = 0;
+            lifetime[slot] = life;
+        }
+    }
+
+    private void move(int from, int to) {
+        Simulation sim = this.sim;
+        GridField outflows = sim.summedOutflows;
+        int cols = sim.cols;
+        int rows = sim.rows;
+        double dt = sim.dt;
+        int[] cellType = sim.hasObstacles() ? sim.cellType : null; //Particles stop instead of entering an obstacle
+        float aging = (float) (LIFETIME_PER_STEP * dt);
+        for (int index = from; index < to; index++) {
+            int i = getSlot(index);
+            if (lifetime[i] <= 0) {
+                if (i >= ambientCount)
+                    continue; //Released after the move
+                respawn(i, cols, rows);
+            }
+            double px = x[i];
+            double py = y[i];
+
+            //Same interpolation as Simulation.getVelAtPoint, with the corners looked up once for both directions
+            double floorX = Math.floor(px);
+            double floorY = Math.floor(py);
+            int left = (int) floorX;
+            int top = (int) floorY;
+            int right = (int) Math.ceil(px);
+            int bottom = (int) Math.ceil(py);
+            double tX = px - floorX;
+            double tY = py - floorY;
+            boolean leftIn = left >= 0 && left < cols;
+            boolean rightIn = right >= 0 && right < cols;
+            boolean topIn = top >= 0 && top < rows;
+            boolean bottomIn = bottom >= 0 && bottom < rows;
+            int tl = leftIn && topIn ? top * cols + left : -1;
+            int tr = rightIn && topIn ? top * cols + right : -1;
+            int bl = leftIn && bottomIn ? bottom * cols + left : -1;
+            int br = rightIn && bottomIn ? bottom * cols + right : -1;
+            double vx = -sample(outflows, Simulation.HORIZONTAL_FLOW, tl, tr, bl, br, tX, tY);
+            double vy = -sample(outflows, Simulation.VERTICAL_FLOW, tl, tr, bl, br, tX, tY);
+
+            double dx = vx * dt;
+            double dy = vy * dt;
+            if (cellType != null) {
+                int cellX = (int) Math.floor(px + dx + 0.5);
+                int cellY = (int) Math.floor(py + dy + 0.5);
+                if (cellX >= 0 && cellX < cols && cellY >= 0 && cellY < rows && cellType[cellY * cols + cellX] == Simulation.OBSTACLE_CELL) {
+                    dx = 0;
+                    dy = 0;
+                }
+            }
+            x[i] = px + dx;
+            y[i] = py + dy;
+            velX[i] = (float) dx;
+            velY[i] = (float) dy;
+            lifetime[i] -= aging;
+        }
+    }
+
+    private static double sample(GridField field, int component, int tl, int tr, int bl, int br, double tX, double tY) {
+        return Simulation.twoDimensionLerp(
+                tl >= 0 ? field.get(component, tl) : 0,
+                tr >= 0 ? field.get(component, tr) : 0,
+                bl >= 0 ? field.get(component, bl) : 0,
+                br >= 0 ? field.get(component, br) : 0,
+                tX, tY);
+    }
+
+    /**
+     * Moves a particle to a random cell and restarts its lifetime.
+     */
+    void respawn(int i, int cols, int rows) {
+        long random = random(i, generation);
+        x[i] = randomInt(random, cols);
+        y[i] = randomInt(mix(random), rows);
+        velX[i] = 0;
+        velY[i] = 0;
+        lifetime[i] = LIFETIME;
+    }
+
+    /**
+     * @return the size of a particle with the given lifetime, growing from 0 to max at half of LIFETIME and shrinking again.
+     */
+    public static int getSize(double lifetime, int max) {
+        return (int) Math.floor((((1000 - Math.abs(500 - lifetime)) / 1000) * max));
+    }
+
+    private long random(long slot, long step) {
+        return mix(seed ^ mix(step * 0x9E3779B97F4A7C15L + slot));
+    }
+
+    /**
+     * @return a number from 0 inclusive to 1 exclusive taken from the upper 53 bits of a random value.
+     */
+    private static double toUnit(long random) {
+        return (random >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return a number from 0 to bound - 1 taken from the upper bits of a random value.
+     */
+    private static int randomInt(long random, int bound) {
+        return (int) (((random >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * The finalizer of SplittableRandom, spreads every input bit over all output bits.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,86 @@
+package fluidsim;
+
+/**
+ * Durations of the phases of SimulationStep, one TimingHistogram per SimulationPhase.
+ * A phase that runs several times per step is summed up and recorded once per step.
+ * <p>
+ * When disabled, Simulation skips all calls to System.nanoTime and only checks the flag once per phase.
+ * Nothing allocates after construction, so the timings can stay enabled outside of profiling.
+ */
+public final class PhaseTimings {
+    private static final SimulationPhase[] PHASES = SimulationPhase.values();
+
+    public volatile boolean enabled = true;
+
+    private final TimingHistogram[] histograms = new TimingHistogram[PHASES.length];
+    private final long[] currentStep = new long[PHASES.length];
+    private final long[] lastStep = new long[PHASES.length];
+
+    public PhaseTimings() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new TimingHistogram();
+        }
+    }
+
+    /**
+     * @return the value to pass to end, 0 if the timings are disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to the phase of the current step.
+     *
+     * @param phase The phase that just ended.
+     * @param start The value returned by start or by the previous end.
+     * @return the current time, so consecutive phases can be chained without calling start again.
+     */
+    public long end(SimulationPhase phase, long start) {
+        if (!enabled || start == 0)
+            return 0;
+        long now = System.nanoTime();
+        currentStep[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    /**
+     * Records the durations of the current step into the histograms and starts a new step.
+     * Phases that did not run in this step are recorded as 0.
+     */
+    public void endStep() {
+        if (!enabled)
+            return;
+        for (int i = 0; i < currentStep.length; i++) {
+            histograms[i].record(currentStep[i]);
+            lastStep[i] = currentStep[i];
+            currentStep[i] = 0;
+        }
+    }
+
+    public TimingHistogram getHistogram(SimulationPhase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * @return the duration of the phase in the last recorded step in nanoseconds.
+     */
+    public long getLast(SimulationPhase phase) {
+        return lastStep[phase.ordinal()];
+    }
+
+    /**
+     * @return the duration in nanoseconds that the given share of the recorded steps spent in the phase at most.
+     */
+    public long getPercentile(SimulationPhase phase, double percentile) {
+        return histograms[phase.ordinal()].getPercentile(percentile);
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+            currentStep[i] = 0;
+            lastStep[i] = 0;
+        }
+    }
+}
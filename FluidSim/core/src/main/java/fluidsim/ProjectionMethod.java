@@ -0,0 +1,20 @@
+package fluidsim;
+
+/**
+ * The ways Simulation can remove the divergence from the flows.
+ */
+public enum ProjectionMethod {
+    /**
+     * Distributes each cells divergence onto its flows, repeated a fixed number of times per step.
+     */
+    GAUSS_SEIDEL,
+    /**
+     * Solves for a pressure field with multigrid V-cycles and subtracts its gradient from the flows.
+     */
+    MULTIGRID,
+    /**
+     * Solves for a pressure field with MIC(0) preconditioned conjugate gradients and subtracts its gradient from the flows.
+     * Used by default for grids larger than 256x256.
+     */
+    CONJUGATE_GRADIENT
+}
@@ -0,0 +1,36 @@
+package fluidsim;
+
+/**
+ * One frame read from a FrameRecording.
+ */
+public final class RecordedFrame {
+    public final int cols;
+    public final int rows;
+    public long step; //Steps the simulation had done when the frame was recorded
+    public final byte[] colors; //Red, green and blue plane, each rows * cols values from 0 to 255
+    public final float[] flows; //Horizontal and vertical plane, null if the flows were not recorded
+
+    RecordedFrame(int cols, int rows, boolean flows) {
+        this.cols = cols;
+        this.rows = rows;
+        colors = new byte[cols * rows * 3];
+        this.flows = flows ? new float[cols * rows * 2] : null;
+    }
+
+    /**
+     * @return the color of the cell as 0xRRGGBB, like FrameSnapshot.colorPixels.
+     */
+    public int getPixel(int x, int y) {
+        int i = y * cols + x;
+        int cells = cols * rows;
+        return (colors[i] & 0xFF) << 16 | (colors[cells + i] & 0xFF) << 8 | colors[2 * cells + i] & 0xFF;
+    }
+
+    /**
+     * @param flowDir Simulation.HORIZONTAL_FLOW or Simulation.VERTICAL_FLOW.
+     * @return the recorded flow of the cell.
+     */
+    public float getFlow(int x, int y, int flowDir) {
+        return flows[flowDir * cols * rows + y * cols + x];
+    }
+}
@@ -0,0 +1,55 @@
+package fluidsim;
+
+/**
+ * A passive quantity carried along by the flow, like the dye colors, a temperature or a smoke density.
+ * A field has any number of channels. The channels of all fields registered with Simulation.addScalarField are
+ * advected and diffused in the same passes as the velocities, channel by channel for every row of a tile.
+ */
+public final class ScalarField {
+    public final String name;
+    public final int channels;
+    public final FieldPrecision precision;
+    /**
+     * The part of its value a cell keeps when diffusing for a time of 1, the rest is shared equally by its fluid neighbours.
+     */
+    public double diffuseCoefficient;
+    double diffuseKeep; //The part of its old value a cell keeps in the current substep, see Simulation.diffuse
+
+    public GridField values; //The current values, one component per channel
+    GridField oldValues; //Second buffer diffuse and advect write into before swapping
+    GridField implicitValues; //Scratch buffer of DiffusionMethod.IMPLICIT, created on first use
+    private final Simulation simulation;
+
+    ScalarField(Simulation simulation, String name, int channels, int cols, int rows, FieldPrecision precision, double diffuseCoefficient) {
+        if (channels < 1)
+            throw new IllegalArgumentException("A scalar field needs at least one channel: " + channels);
+        this.simulation = simulation;
+        this.name = name;
+        this.channels = channels;
+        this.precision = precision;
+        this.diffuseCoefficient = diffuseCoefficient;
+        values = GridField.create(cols, rows, channels, precision);
+        oldValues = GridField.create(cols, rows, channels, precision);
+    }
+
+    public double get(int x, int y, int channel) {
+        return values.get(x, y, channel);
+    }
+
+    /**
+     * Changes a value and wakes the tile of the cell, see Simulation.wakeCell. Writing to values directly does not.
+     */
+    public void set(int x, int y, int channel, double value) {
+        values.set(x, y, channel, value);
+        simulation.wakeCell(x, y);
+    }
+
+    /**
+     * Makes the current values the old ones, the passes then write the new values into the other buffer.
+     */
+    void swap() {
+        GridField tmp = oldValues;
+        oldValues = values;
+        values = tmp;
+    }
+}
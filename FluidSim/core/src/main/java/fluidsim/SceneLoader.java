@@ -0,0 +1,307 @@
+package fluidsim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads scenes from text files, so new scenes need no code changes and generated scenes can be run in batches.
+ * <p>
+ * The file starts with the line "fluidsim-scene 1" and a "size" line, then one setting per line, "#" starts a comment:
+ * <pre>
+ * size &lt;cols&gt; &lt;rows&gt;
+ * prewarm &lt;r&gt; &lt;g&gt; &lt;b&gt;                         Color of every cell at the start, black by default
+ * seed &lt;n&gt;
+ * particles &lt;n&gt;                                Ambient particles, one per cell by default
+ * particle-budget &lt;n&gt;
+ * velocity-diffusion &lt;c&gt;                       Part of its velocity a cell keeps when diffusing for a time of 1, 0.8 by default
+ * color-diffusion &lt;c&gt;                          The same for the colors
+ * diffusion explicit|implicit [iterations]     See DiffusionMethod, implicit diffusion suits coefficients near 0
+ * obstacle &lt;x&gt; &lt;y&gt; &lt;width&gt; &lt;height&gt;           A rectangle of obstacle cells
+ * obstacles &lt;x&gt; &lt;y&gt;                           A bitmap with its top left cell at x, y: one line per row,
+ *                                              "#" for an obstacle cell, anything else for fluid, up to "end"
+ * obstacle-image &lt;file&gt; &lt;x&gt; &lt;y&gt;                A PBM or PGM image (P1, P2, P4 or P5) with its top left pixel at x, y,
+ *                                              one pixel per cell, dark pixels are obstacles. Relative to the scene file
+ * inflow &lt;x&gt; &lt;y&gt; &lt;dirX&gt; &lt;dirY&gt; &lt;r&gt; &lt;g&gt; &lt;b&gt; [options]
+ * </pre>
+ * Options of an inflow, in any order:
+ * <pre>
+ * noise                                        Varies the color slightly
+ * repeat &lt;count&gt; &lt;stepX&gt; &lt;stepY&gt;              count inflows, each step cells further than the one before
+ * emit &lt;particles per step&gt; &lt;spread&gt;           Attaches a ParticleEmitter
+ * sine x|y &lt;center&gt; &lt;amplitude&gt; &lt;period&gt; &lt;phase&gt;          See InflowMotion.sine
+ * circle &lt;centerX&gt; &lt;centerY&gt; &lt;radius&gt; &lt;period&gt; &lt;phase&gt; &lt;aim&gt; See InflowMotion.circle
+ * mouse &lt;scale&gt;                                See InflowMotion.followMouse
+ * </pre>
+ */
+public final class SceneLoader {
+    static final String FORMAT = "fluidsim-scene 1";
+    public static final String EXTENSION = ".scene";
+
+    private SceneLoader() {
+    }
+
+    /**
+     * @return the scene, its file set to the given path.
+     * @throws IOException if the file cannot be read or is no valid scene.
+     */
+    public static SimulationSceneInfo load(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !FORMAT.equals(lines.get(0).trim()))
+            throw new IOException("Not a scene file: " + file);
+        SimulationSceneInfo sceneInfo = null;
+        List<InflowInfo> inflows = new ArrayList<>();
+        for (int n = 1; n < lines.size(); n++) {
+            String line = stripComment(lines.get(n));
+            if (line.isEmpty())
+                continue;
+            String[] parts = line.split("\\s+");
+            try {
+                if (sceneInfo == null) {
+                    if (!parts[0].equals("size"))
+                        throw new IllegalArgumentException("The size has to come first");
+                    int cols = Integer.parseInt(parts[1]);
+                    int rows = Integer.parseInt(parts[2]);
+                    if (cols < 2 || rows < 2)
+                        throw new IllegalArgumentException("The grid needs at least 2x2 cells");
+                    sceneInfo = new SimulationSceneInfo(cols, rows, new InflowInfo[0]);
+                    continue;
+                }
+                switch (parts[0]) {
+                    case "prewarm":
+                        sceneInfo.preWarmColors = new double[]{parseDouble(parts, 1), parseDouble(parts, 2), parseDouble(parts, 3)};
+                        break;
+                    case "seed": sceneInfo.seed = Long.parseLong(parts[1]); break;
+                    case "particles": sceneInfo.particleCount = parseCount(parts, 1, 0); break;
+                    case "particle-budget": sceneInfo.particleBudget = parseCount(parts, 1, 0); break;
+                    case "velocity-diffusion": sceneInfo.velocityDiffusion = parseCoefficient(parts); break;
+                    case "color-diffusion": sceneInfo.colorDiffusion = parseCoefficient(parts); break;
+                    case "diffusion":
+                        sceneInfo.diffusionMethod = DiffusionMethod.valueOf(parts[1].toUpperCase());
+                        if (parts.length > 2)
+                            sceneInfo.diffusionIterations = parseCount(parts, 2, 1);
+                        break;
+                    case "obstacle":
+                        addObstacle(sceneInfo, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                                Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+                        break;
+                    case "obstacles":
+                        n = readBitmap(sceneInfo, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), lines, n + 1);
+                        break;
+                    case "obstacle-image":
+                        Path image = file.resolveSibling(parts[1]);
+                        readImage(sceneInfo, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Files.readAllBytes(image));
+                        break;
+                    case "inflow":
+                        readInflows(parts, inflows);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting " + parts[0]);
+                }
+            } catch (RuntimeException | IOException e) { //IOException of an obstacle image
+                throw new IOException("Line " + (n + 1) + " of " + file + ": " + e.getMessage(), e);
+            }
+        }
+        if (sceneInfo == null)
+            throw new IOException("The size is missing in " + file);
+        sceneInfo.inflowInfos = inflows.toArray(new InflowInfo[0]);
+        sceneInfo.file = file.toString();
+        return sceneInfo;
+    }
+
+    private static String stripComment(String line) {
+        int comment = line.indexOf('#');
+        return (comment >= 0 ? line.substring(0, comment) : line).trim();
+    }
+
+    private static double parseDouble(String[] parts, int index) {
+        if (index >= parts.length)
+            throw new IllegalArgumentException("Missing values after " + parts[0]);
+        return Double.parseDouble(parts[index]);
+    }
+
+    private static int parseCount(String[] parts, int index, int min) {
+        if (index >= parts.length)
+            throw new IllegalArgumentException("Missing values after " + parts[0]);
+        int count = Integer.parseInt(parts[index]);
+        if (count < min)
+            throw new IllegalArgumentException(parts[0] + " has to be at least " + min + ": " + count);
+        return count;
+    }
+
+    private static double parseCoefficient(String[] parts) {
+        double coefficient = parseDouble(parts, 1);
+        if (!(coefficient >= 0 && coefficient <= 1))
+            throw new IllegalArgumentException("A diffuse coefficient has to be between 0 and 1: " + coefficient);
+        return coefficient;
+    }
+
+    private static void addObstacle(SimulationSceneInfo sceneInfo, int x0, int y0, int width, int height) {
+        for (int y = Math.max(y0, 0); y < Math.min(y0 + height, sceneInfo.rows); y++) {
+            for (int x = Math.max(x0, 0); x < Math.min(x0 + width, sceneInfo.cols); x++) {
+                sceneInfo.setObstacle(x, y, true);
+            }
+        }
+    }
+
+    /**
+     * @return the index of the "end" line.
+     */
+    private static int readBitmap(SimulationSceneInfo sceneInfo, int x0, int y0, List<String> lines, int first) {
+        for (int n = first; n < lines.size(); n++) {
+            String row = lines.get(n);
+            if (row.trim().equals("end"))
+                return n;
+            int y = y0 + n - first;
+            for (int w = 0; w < row.length(); w++) {
+                int x = x0 + w;
+                if (row.charAt(w) == '#' && x >= 0 && x < sceneInfo.cols && y >= 0 && y < sceneInfo.rows)
+                    sceneInfo.setObstacle(x, y, true);
+            }
+        }
+        throw new IllegalArgumentException("The obstacle bitmap has no \"end\" line");
+    }
+
+    /**
+     * Marks the dark pixels of a netpbm image as obstacles: black in a bitmap, below half of the maximum in a gray map.
+     */
+    private static void readImage(SimulationSceneInfo sceneInfo, int x0, int y0, byte[] data) {
+        int[] position = new int[]{2};
+        if (data.length < 2 || data[0] != 'P')
+            throw new IllegalArgumentException("Not a PBM or PGM image");
+        char format = (char) data[1];
+        if (format != '1' && format != '2' && format != '4' && format != '5')
+            throw new IllegalArgumentException("Only PBM and PGM images are supported, not P" + format);
+        boolean bitmap = format == '1' || format == '4';
+        int width = nextNumber(data, position);
+        int height = nextNumber(data, position);
+        int maxValue = bitmap ? 1 : nextNumber(data, position);
+        int bytesPerSample = maxValue > 255 ? 2 : 1;
+        position[0]++; //The single whitespace in front of binary data
+        long binaryBytes = format == '4' ? (long) height * ((width + 7) / 8) : format == '5' ? (long) height * width * bytesPerSample : 0;
+        if (position[0] + binaryBytes > data.length)
+            throw new IllegalArgumentException("The image ends early");
+        for (int py = 0; py < height; py++) {
+            for (int px = 0; px < width; px++) {
+                boolean dark;
+                if (format == '1') {
+                    dark = nextBit(data, position) == 1;
+                } else if (format == '4') {
+                    int index = position[0] + py * ((width + 7) / 8) + px / 8;
+                    dark = (data[index] >> (7 - px % 8) & 1) == 1;
+                } else if (format == '2') {
+                    dark = nextNumber(data, position) * 2 < maxValue;
+                } else {
+                    int index = position[0] + (py * width + px) * bytesPerSample;
+                    int value = bytesPerSample == 2 ? (data[index] & 0xFF) << 8 | data[index + 1] & 0xFF : data[index] & 0xFF;
+                    dark = value * 2 < maxValue;
+                }
+                int x = x0 + px;
+                int y = y0 + py;
+                if (dark && x >= 0 && x < sceneInfo.cols && y >= 0 && y < sceneInfo.rows)
+                    sceneInfo.setObstacle(x, y, true);
+            }
+        }
+    }
+
+    /**
+     * Reads the next decimal number of a netpbm header or plain image, skipping whitespace and comments.
+     */
+    private static int nextNumber(byte[] data, int[] position) {
+        skipWhitespace(data, position);
+        int value = 0;
+        int start = position[0];
+        while (position[0] < data.length && data[position[0]] >= '0' && data[position[0]] <= '9') {
+            value = value * 10 + data[position[0]++] - '0';
+        }
+        if (position[0] == start)
+            throw new IllegalArgumentException("The image ends early or is damaged");
+        return value;
+    }
+
+    /**
+     * Reads one pixel of a plain bitmap, where the pixels do not have to be separated.
+     */
+    private static int nextBit(byte[] data, int[] position) {
+        skipWhitespace(data, position);
+        if (position[0] >= data.length)
+            throw new IllegalArgumentException("The image ends early");
+        return data[position[0]++] == '1' ? 1 : 0;
+    }
+
+    private static void skipWhitespace(byte[] data, int[] position) {
+        while (position[0] < data.length) {
+            byte b = data[position[0]];
+            if (b == '#') {
+                while (position[0] < data.length && data[position[0]] != '\n') {
+                    position[0]++;
+                }
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                position[0]++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void readInflows(String[] parts, List<InflowInfo> inflows) {
+        if (parts.length < 8)
+            throw new IllegalArgumentException("An inflow needs x, y, dirX, dirY and a color");
+        int x = Integer.parseInt(parts[1]);
+        int y = Integer.parseInt(parts[2]);
+        double dirX = Double.parseDouble(parts[3]);
+        double dirY = Double.parseDouble(parts[4]);
+        double[] color = new double[]{Double.parseDouble(parts[5]), Double.parseDouble(parts[6]), Double.parseDouble(parts[7])};
+        boolean noise = false;
+        int count = 1;
+        int stepX = 0;
+        int stepY = 0;
+        ParticleEmitter emitter = null;
+        Consumer<InflowInfo> action = InflowMotion.FIXED;
+        for (int i = 8; i < parts.length; i++) {
+            switch (parts[i]) {
+                case "noise":
+                    noise = true;
+                    break;
+                case "repeat":
+                    count = (int) parseDouble(parts, i + 1);
+                    stepX = (int) parseDouble(parts, i + 2);
+                    stepY = (int) parseDouble(parts, i + 3);
+                    if (count < 1)
+                        throw new IllegalArgumentException("An inflow has to be repeated at least once");
+                    i += 3;
+                    break;
+                case "emit":
+                    emitter = new ParticleEmitter(parseDouble(parts, i + 1), parseDouble(parts, i + 2));
+                    i += 2;
+                    break;
+                case "sine":
+                    if (i + 1 >= parts.length || !parts[i + 1].equals("x") && !parts[i + 1].equals("y"))
+                        throw new IllegalArgumentException("sine needs the axis x or y");
+                    action = InflowMotion.sine(parts[i + 1].equals("y"), parseDouble(parts, i + 2), parseDouble(parts, i + 3),
+                            parseDouble(parts, i + 4), parseDouble(parts, i + 5));
+                    i += 5;
+                    break;
+                case "circle":
+                    action = InflowMotion.circle(parseDouble(parts, i + 1), parseDouble(parts, i + 2), parseDouble(parts, i + 3),
+                            parseDouble(parts, i + 4), parseDouble(parts, i + 5), parseDouble(parts, i + 6));
+                    i += 6;
+                    break;
+                case "mouse":
+                    action = InflowMotion.followMouse(parseDouble(parts, i + 1));
+                    i += 1;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown inflow option " + parts[i]);
+            }
+        }
+        for (int k = 0; k < count; k++) {
+            InflowInfo inflow = new InflowInfo(x + k * stepX, y + k * stepY, dirX, dirY, color.clone(), noise, action);
+            inflows.add(inflow.withEmitter(emitter != null ? emitter.copy() : null));
+        }
+    }
+}
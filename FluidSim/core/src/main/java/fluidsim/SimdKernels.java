@@ -0,0 +1,51 @@
+package fluidsim;
+
+/**
+ * Vectorized versions of the per-cell kernels of Simulation. They produce the same flows and colors as the scalar code.
+ * The kernels ending in Float are the vectorized FloatKernels, for flows stored as FLOAT.
+ * The implementation uses the incubating Vector API, so it is loaded by name and Simulation keeps using the scalar
+ * kernels if the JVM was started without --add-modules jdk.incubator.vector.
+ */
+interface SimdKernels {
+    /**
+     * @return the Vector API implementation or null if it can not be used on this JVM.
+     */
+    static SimdKernels load() {
+        try {
+            return (SimdKernels) Class.forName("fluidsim.VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the cell types, neighbour counts and open faces of the simulation, as doubles or floats depending on
+     * the precision of the flows. Has to be called whenever they change.
+     */
+    void updateCellTypes(Simulation sim);
+
+    /**
+     * Same as the scalar divergence kernel, including the per tile maximum and sum of squares.
+     */
+    void divergenceTile(Simulation sim, int tile, int x0, int y0, int x1, int y1);
+
+    /**
+     * Same as running projectGaussSeidelCell on every cell of the tile.
+     */
+    void projectGaussSeidelTile(Simulation sim, int x0, int y0, int x1, int y1);
+
+    /**
+     * Same as running diffuseCell on every cell of the tile.
+     */
+    void diffuseTile(Simulation sim, int x0, int y0, int x1, int y1);
+
+    /**
+     * Same as FloatKernels.divergenceTile.
+     */
+    void divergenceTileFloat(Simulation sim, int tile, int x0, int y0, int x1, int y1);
+
+    /**
+     * Same as FloatKernels.projectGaussSeidelTile.
+     */
+    void projectGaussSeidelTileFloat(Simulation sim, int x0, int y0, int x1, int y1);
+}
@@ -0,0 +1,1829 @@
+package fluidsim;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Simulates a fluid inside a grid.
+ * Use SimulationStep(); to calculate next state.
+ */
+public class Simulation {
+    private double oldTime;
+    public double fps;
+    private final int fpsAverage = 10;
+    private final double[] fpsBuffer = new double[fpsAverage]; //Ring buffer of the last frame rates
+    private int fpsBufferPosition = 0;
+    private int fpsBufferCount = 0;
+    public final PhaseTimings timings = new PhaseTimings(); //Per-phase durations of SimulationStep
+
+    public static final double OUTFLOW_THRESHOLD = 0;
+    public static final double SINGLE_FLOW_THRESHOLD = 0;
+    static final int VERTICAL_FLOW = 1;
+    static final int HORIZONTAL_FLOW = 0;
+    static final int DEFAULT_CELL = 0;
+    static final int INFLOW_CELL = 1;
+    static final int OBSTACLE_CELL = 2;
+    static final int OPEN_RIGHT = 1; //Bits of openFaces, set for a side of a fluid cell whose neighbour is a fluid cell
+    static final int OPEN_DOWN = 2;
+    static final int OPEN_LEFT = 4;
+    static final int OPEN_UP = 8;
+    static final int ALL_NEIGHBOURS_FLUID = 0b111_101_111; //Fluid neighbour mask of a cell surrounded by fluid
+
+    public SimulationSceneInfo sceneInfo;
+
+    public int rows;
+    public int cols;
+
+    public GridField flows; //Stores "outflowVectors" per cell (right, down)
+    public GridField oldFlows; //for witching efficiently
+    boolean useTmpFlows = false;
+    public final ScalarField colors; //The dye colors the grid shows, red, green and blue from 0 to 255
+    ScalarField[] scalarFields = new ScalarField[0]; //Everything advected and diffused besides the velocities, colors first
+    private boolean scalarFieldsDouble = true; //The vector diffuse kernel needs all fields as DOUBLE
+    private boolean scalarFieldsFloat = true; //All fields are advected by FloatKernels when the flows are FLOAT as well
+    public GridField divergence; //Divergence per cell
+    public GridField summedFlows;
+    public GridField summedOutflows;
+    GridField advectedVelocities; //Cell centered velocities found by advectVelocities before they are split onto the flows
+    int[] backtraceCells; //Per cell the indices of the top left, top right, bottom left and bottom right source cell, -1 outside of the grid
+    double[] backtraceWeights; //Per cell the horizontal and vertical interpolation factor between the source cells
+    private boolean advectingVelocities; //What the current advection pass moves, set before the tiles are dispatched
+    private boolean advectingScalars;
+    public int[] cellType; //Row-major like the GridFields, index = y * cols + x
+    public GridField pressure;
+    public final FieldPrecision precision; //Storage of flows, divergence and pressure
+    public final FieldPrecision colorPrecision; //Storage of colors
+
+    public double inflowDirX = 1;
+    public double inflowDirY = -1;
+
+    public double mouseX = 0;
+    public double mouseY = 0;
+
+    public int[] neighbours;
+    double[] inverseNeighbourCounts; //Per cell 1 / neighbours, 0 for cells without fluid neighbours
+    int[] fluidNeighbourMasks; //Per cell a bit for each fluid neighbour, see getFluidNeighbourMask
+    int[] openFaces; //Per cell the sides flows can pass, OPEN_RIGHT and so on, 0 for obstacle cells
+    double[] inverseOpenFaceCounts; //Per cell 1 / the number of open sides, 0 for cells without any
+    int[] fluidRegions; //Per default cell the connected region of default cells it is in, -1 for other cells
+    int fluidRegionCount; //Obstacles can split the fluid into regions that exchange no flow
+    private int obstacleCount;
+    private int obstacleVersion; //Counts the changes of the obstacles, see getObstacleVersion
+    private boolean cellTypesChanged; //The tables derived from cellType are updated before the next step
+    int[] neighbourOffsets; //Index offsets of the cells around a cell, row by row from the top left, 0 for the cell itself
+
+    public static final double DEFAULT_DIFFUSE_COEFFICIENT = 0.8;
+    /**
+     * The part of its velocity a cell keeps when diffusing for a time of 1, 1 turns velocity diffusion off.
+     */
+    public double velocityDiffuseCoefficient = DEFAULT_DIFFUSE_COEFFICIENT;
+    double velocityDiffuseKeep; //The part of its old velocity a cell keeps in the current substep, see diffuse
+    public DiffusionMethod diffusionMethod = DiffusionMethod.EXPLICIT;
+    public int diffusionIterations = 8; //Jacobi iterations per substep of DiffusionMethod.IMPLICIT
+    GridField implicitFlows; //Second buffer the Jacobi iterations alternate with, created on first use
+    private int diffuseIteration; //The Jacobi iteration the diffuse kernel runs, always 0 for EXPLICIT
+    private boolean diffuseIntoScratch; //The iteration writes into the scratch buffers instead of flows and values
+
+    /**
+     * Simulated time per SimulationStep, velocities are measured in cells per 1. The particle budget is sized for the
+     * time step when the simulation is created, set SimulationSceneInfo.timeStep to start with a different one.
+     */
+    public double timeStep = 1;
+    public double cflNumber = 5; //Cells a backtrace may cross per substep, faster flows split the step into substeps
+    public int maxSubsteps = 8;
+    public int substeps = 1; //Substeps the last SimulationStep was split into
+    public double stepCfl; //Cells the fastest backtrace could cross per substep of the last SimulationStep, above cflNumber when maxSubsteps was too few
+    public double maxVelocity; //Largest velocity component found by the last calculateSummedFlows or added since then
+    double dt = 1; //Length of the current substep
+    double[] tileMaxVelocity; //Per tile parts of maxVelocity
+
+    public ProjectionMethod projectionMethod = ProjectionMethod.GAUSS_SEIDEL;
+    public int gaussSeidelIterations = 100;
+    public int multigridCycles = 4;
+    public int conjugateGradientIterations = 200;
+    public double projectionTolerance = 0; //Projection stops once the residual is below this, 0 always runs all iterations
+    public boolean toleranceOnL2 = false; //Compares the root mean square instead of the maximum divergence with the tolerance
+    public int projectionIterations; //Iterations (or V-cycles) the last projection used
+    public double projectionResidual; //Residual after the last projection, in the norm selected by toleranceOnL2
+
+    public double maxDivergence; //Largest absolute divergence found by the last calculateDivergence
+    public double l2Divergence; //Root mean square of the divergence found by the last calculateDivergence
+    double[] tileMaxDivergence; //Per tile parts of maxDivergence and l2Divergence
+    double[] tileSquaredDivergence;
+
+    public boolean skipQuietTiles = true; //Leaves tiles out of the passes while they and their neighbours are quiet
+    public double quietEpsilon = 1e-4; //Flows and differences between scalar values below this count as quiet
+    private boolean[] tileActive; //Something moved in the tile during the last step
+    private boolean[] tileAwake; //The tile or one of its neighbours is active, the passes of this step process it
+    private boolean[] tileWoken; //Set by changes from outside of the passes, picked up by the next step
+    private int awakeTileCount;
+    private MultigridSolver multigridSolver; //Created on first use
+    private ConjugateGradientSolver conjugateGradientSolver; //Created on first use
+
+    public TileScheduler scheduler;
+    public boolean useVectorKernels = true; //Only has an effect if vectorKernelsAvailable()
+    private SimdKernels simdKernels; //null if the Vector API is missing
+    public boolean useFloatKernels = true; //Runs FloatKernels on fields stored as FLOAT, false runs the generic kernels in double
+    FloatKernels floatKernels; //null while no field is stored as FLOAT
+
+    //Parallel kernels, created once instead of once per call
+    private final TileScheduler.TileKernel divergenceKernel = (tile, x0, y0, x1, y1) -> {
+        if (!tileAwake[tile])
+            return;
+        if (vectorFlowKernels()) {
+            if (floatFlowKernels())
+                simdKernels.divergenceTileFloat(this, tile, x0, y0, x1, y1);
+            else
+                simdKernels.divergenceTile(this, tile, x0, y0, x1, y1);
+            return;
+        }
+        if (floatFlowKernels()) {
+            floatKernels.divergenceTile(this, tile, x0, y0, x1, y1);
+            return;
+        }
+        double max = 0;
+        double squared = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                double d = calculateDivergenceSingle(x, y);
+                max = Math.max(max, Math.abs(d));
+                squared += d * d;
+            }
+        }
+        tileMaxDivergence[tile] = max;
+        tileSquaredDivergence[tile] = squared;
+    };
+    //Every cell only reads the old flows and the divergence, so all cells can be updated at once without a red/black split
+    private final TileScheduler.TileKernel projectionKernel = (tile, x0, y0, x1, y1) -> {
+        if (!tileAwake[tile])
+            return;
+        if (vectorFlowKernels()) {
+            if (floatFlowKernels())
+                simdKernels.projectGaussSeidelTileFloat(this, x0, y0, x1, y1);
+            else
+                simdKernels.projectGaussSeidelTile(this, x0, y0, x1, y1);
+            return;
+        }
+        if (floatFlowKernels()) {
+            floatKernels.projectGaussSeidelTile(this, x0, y0, x1, y1);
+            return;
+        }
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                projectGaussSeidelCell(x, y);
+            }
+        }
+    };
+    private final TileScheduler.TileKernel diffuseKernel = (tile, x0, y0, x1, y1) -> {
+        if (!tileAwake[tile])
+            return;
+        if (vectorDiffuseKernels()) {
+            simdKernels.diffuseTile(this, x0, y0, x1, y1);
+            return;
+        }
+        diffuseTile(tile, x0, y0, x1, y1);
+    };
+    private final TileScheduler.TileKernel advectKernel = this::advectTile;
+    private final TileScheduler.TileKernel advectedFlowsKernel = this::collectAdvectedFlowsTile;
+    private final TileScheduler.TileKernel summedFlowsKernel = this::calculateSummedFlowsTile;
+    private final TileScheduler.TileKernel summedOutflowsKernel = this::calculateSummedOutflowsTile;
+    private final TileScheduler.TileKernel pressureGradientKernel = this::applyPressureGradientTile;
+    private final TileScheduler.TileKernel activityKernel = this::checkTileActivity;
+
+    public final ParticleSystem particles;
+
+    public final long seed; //Decides everything random, a simulation with the same seed and inputs gives the same results
+    final Random random;
+
+    /**
+     * Initializes a Simulation with the given scene info containing the basic settings for a simulation.
+     *
+     * @param sceneInfo Basic information about this simulation's scene.
+     */
+    public Simulation(SimulationSceneInfo sceneInfo) {
+        this(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes a Simulation with the given scene info and the given parallelization.
+     *
+     * @param sceneInfo   Basic information about this simulation's scene.
+     * @param tileSize    The edge length in cells of the tiles the grid is split into for parallel processing.
+     * @param parallelism The number of threads working on a step.
+     */
+    public Simulation(SimulationSceneInfo sceneInfo, int tileSize, int parallelism) {
+        this(sceneInfo, tileSize, parallelism, FieldPrecision.DOUBLE, FieldPrecision.DOUBLE);
+    }
+
+    /**
+     * Initializes a Simulation with the given scene info, parallelization and storage precision.
+     * The simulation works on a copy of the scene, ticking its inflows leaves the given scene as it is.
+     *
+     * @param sceneInfo      Basic information about this simulation's scene.
+     * @param tileSize       The edge length in cells of the tiles the grid is split into for parallel processing.
+     * @param parallelism    The number of threads working on a step.
+     * @param precision      How flows, divergence and pressure are stored, DOUBLE or FLOAT.
+     * @param colorPrecision How the cell colors are stored.
+     */
+    public Simulation(SimulationSceneInfo sceneInfo, int tileSize, int parallelism, FieldPrecision precision, FieldPrecision colorPrecision) {
+        if (precision == FieldPrecision.PACKED)
+            throw new IllegalArgumentException("Packed storage can only hold colors, flows need DOUBLE or FLOAT");
+        this.precision = precision;
+        this.colorPrecision = colorPrecision;
+        simdKernels = SimdKernels.load();
+        floatKernels = precision == FieldPrecision.FLOAT ? new FloatKernels() : null;
+        changeScene(sceneInfo.copy());
+        seed = sceneInfo.seed != null ? sceneInfo.seed : new Random().nextLong();
+        Random seeds = new Random(seed);
+        random = new Random(seeds.nextLong());
+        for (InflowInfo inflow : this.sceneInfo.inflowInfos) {
+            inflow.random.setSeed(seeds.nextLong());
+        }
+        long particleSeed = seeds.nextLong();
+        scheduler = new TileScheduler(cols, rows, tileSize, parallelism);
+        tileMaxDivergence = new double[scheduler.getTileCount()];
+        tileSquaredDivergence = new double[scheduler.getTileCount()];
+        tileMaxVelocity = new double[scheduler.getTileCount()];
+        tileActive = new boolean[scheduler.getTileCount()];
+        tileAwake = new boolean[scheduler.getTileCount()];
+        tileWoken = new boolean[scheduler.getTileCount()];
+        Arrays.fill(tileActive, true);
+        Arrays.fill(tileAwake, true);
+        
+        flows = GridField.create(cols, rows, 2, precision);
+        oldFlows = GridField.create(cols, rows, 2, precision);
+        divergence = GridField.create(cols, rows, 1, precision);
+        summedFlows = GridField.create(cols, rows, 2, precision);
+        summedOutflows = GridField.create(cols, rows, 2, precision);
+        advectedVelocities = GridField.create(cols, rows, 2, precision);
+        backtraceCells = new int[cols * rows * 4];
+        backtraceWeights = new double[cols * rows * 2];
+        cellType = new int[cols * rows];
+        pressure = GridField.create(cols, rows, 1, precision);
+        neighbours = new int[cols * rows];
+        fluidNeighbourMasks = new int[cols * rows];
+        openFaces = new int[cols * rows];
+        inverseOpenFaceCounts = new double[cols * rows];
+        inverseNeighbourCounts = new double[cols * rows];
+        fluidRegions = new int[cols * rows];
+        neighbourOffsets = new int[]{-cols - 1, -cols, -cols + 1, -1, 0, 1, cols - 1, cols, cols + 1};
+
+        if (sceneInfo.velocityDiffusion >= 0)
+            velocityDiffuseCoefficient = sceneInfo.velocityDiffusion;
+        if (sceneInfo.diffusionMethod != null)
+            diffusionMethod = sceneInfo.diffusionMethod;
+        if (sceneInfo.diffusionIterations > 0)
+            diffusionIterations = sceneInfo.diffusionIterations;
+        if (sceneInfo.timeStep > 0)
+            timeStep = sceneInfo.timeStep;
+
+        //initialize colors (flows start zeroed)
+        colors = addScalarField("color", 3, colorPrecision,
+                sceneInfo.colorDiffusion >= 0 ? sceneInfo.colorDiffusion : DEFAULT_DIFFUSE_COEFFICIENT);
+        colors.values.fill(0, sceneInfo.preWarmColors[0]);
+        colors.values.fill(1, sceneInfo.preWarmColors[1]);
+        colors.values.fill(2, sceneInfo.preWarmColors[2]);
+
+        particles = new ParticleSystem(sceneInfo.getAmbientParticleCount(), sceneInfo.getParticleBudget(timeStep), cols, rows, particleSeed);
+
+        if (sceneInfo.obstacles != null) {
+            for (int i = 0; i < cellType.length; i++) {
+                if (sceneInfo.obstacles[i]) {
+                    cellType[i] = OBSTACLE_CELL;
+                    obstacleCount++;
+                }
+            }
+        }
+        updateNeighbourCounts();
+
+        if (cols * rows > 256 * 256)
+            projectionMethod = ProjectionMethod.CONJUGATE_GRADIENT;
+    }
+
+    /**
+     * Cleanup before garbage collection.
+     */
+    public void clean()
+    {
+        scheduler.shutdown();
+    }
+
+    /**
+     * @return whether the kernels working on the flows run as FloatKernels.
+     */
+    private boolean floatFlowKernels() {
+        return useFloatKernels && precision == FieldPrecision.FLOAT;
+    }
+
+    /**
+     * @return whether divergence and projection run as SimdKernels, the Float ones for flows stored as FLOAT.
+     */
+    private boolean vectorFlowKernels() {
+        return useVectorKernels && simdKernels != null && (precision == FieldPrecision.DOUBLE || useFloatKernels);
+    }
+
+    /**
+     * @return whether diffusion runs as SimdKernels, which needs every field stored as DOUBLE.
+     */
+    private boolean vectorDiffuseKernels() {
+        return useVectorKernels && simdKernels != null && precision == FieldPrecision.DOUBLE && scalarFieldsDouble;
+    }
+
+    /**
+     * @return whether the kernels with a Vector API implementation run vectorized when useVectorKernels is set.
+     * Needs the jdk.incubator.vector module. Divergence and projection are vectorized for DOUBLE and FLOAT flows,
+     * diffusion only when every field is stored as DOUBLE.
+     */
+    public boolean vectorKernelsAvailable() {
+        return simdKernels != null;
+    }
+
+    /**
+     * Makes sure the tile of a cell is processed by the next step, needed after changing flows or scalar values
+     * of a cell from outside of the simulation. addInflow, addNewForceBetweenCells and ScalarField.set already do this.
+     *
+     * @param x The cells horizontal position.
+     * @param y The cells vertical position.
+     */
+    public void wakeCell(int x, int y) {
+        if (isCellInGrid(x, y))
+            tileWoken[(y / scheduler.tileSize) * scheduler.tilesX + x / scheduler.tileSize] = true;
+    }
+
+    /**
+     * Makes sure every tile is processed by the next step.
+     */
+    public void wakeAll() {
+        Arrays.fill(tileWoken, true);
+    }
+
+    /**
+     * @return the number of tiles the passes of the last step processed, out of scheduler.getTileCount().
+     */
+    public int getAwakeTileCount() {
+        return awakeTileCount;
+    }
+
+    /**
+     * Decides which tiles the passes of a step process: the active ones and their neighbours.
+     * A tile that falls asleep is frozen, its flows are set to 0 and both buffers of every field get the same values.
+     * This way the passes can leave it out without copying anything, until something wakes it up again.
+     */
+    private void updateAwakeTiles() {
+        int tilesX = scheduler.tilesX;
+        int tilesY = scheduler.tilesY;
+        for (int t = 0; t < tileWoken.length; t++) {
+            if (tileWoken[t]) {
+                tileWoken[t] = false;
+                tileActive[t] = true;
+            }
+        }
+        awakeTileCount = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                boolean awake = !skipQuietTiles;
+                for (int v = Math.max(ty - 1, 0); v <= Math.min(ty + 1, tilesY - 1) && !awake; v++) {
+                    for (int w = Math.max(tx - 1, 0); w <= Math.min(tx + 1, tilesX - 1) && !awake; w++) {
+                        awake = tileActive[v * tilesX + w];
+                    }
+                }
+                int t = ty * tilesX + tx;
+                if (tileAwake[t] && !awake)
+                    freezeTile(t, tx, ty);
+                tileAwake[t] = awake;
+                if (awake)
+                    awakeTileCount++;
+            }
+        }
+    }
+
+    private void freezeTile(int tile, int tx, int ty) {
+        int x0 = tx * scheduler.tileSize;
+        int y0 = ty * scheduler.tileSize;
+        int x1 = Math.min(x0 + scheduler.tileSize, cols);
+        int y1 = Math.min(y0 + scheduler.tileSize, rows);
+        for (int y = y0; y < y1; y++) {
+            for (int i = y * cols + x0; i < y * cols + x1; i++) {
+                for (int c = 0; c < 2; c++) {
+                    flows.set(c, i, 0);
+                    oldFlows.set(c, i, 0);
+                    summedFlows.set(c, i, 0);
+                    summedOutflows.set(c, i, 0);
+                    advectedVelocities.set(c, i, 0);
+                    if (implicitFlows != null)
+                        implicitFlows.set(c, i, 0);
+                }
+                divergence.set(0, i, 0);
+                for (ScalarField field : scalarFields) {
+                    for (int c = 0; c < field.channels; c++) {
+                        field.oldValues.set(c, i, field.values.get(c, i));
+                        if (field.implicitValues != null)
+                            field.implicitValues.set(c, i, field.values.get(c, i));
+                    }
+                }
+            }
+        }
+        tileMaxDivergence[tile] = 0;
+        tileSquaredDivergence[tile] = 0;
+        tileMaxVelocity[tile] = 0;
+    }
+
+    /**
+     * Marks a tile processed by this step as active unless it is quiet: all its flows are below quietEpsilon and
+     * the values of every scalar channel differ by less than that over the tile and the cells around it,
+     * so diffusing and advecting it would not change anything that matters.
+     */
+    private void checkTileActivity(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        double epsilon = quietEpsilon;
+        boolean active = false;
+        for (int y = y0; y < y1 && !active; y++) {
+            for (int i = y * cols + x0; i < y * cols + x1; i++) {
+                if (Math.abs(flows.get(HORIZONTAL_FLOW, i)) >= epsilon || Math.abs(flows.get(VERTICAL_FLOW, i)) >= epsilon) {
+                    active = true;
+                    break;
+                }
+            }
+        }
+        int ringX0 = Math.max(x0 - 1, 0);
+        int ringY0 = Math.max(y0 - 1, 0);
+        int ringX1 = Math.min(x1 + 1, cols);
+        int ringY1 = Math.min(y1 + 1, rows);
+        for (int f = 0; f < scalarFields.length && !active; f++) {
+            ScalarField field = scalarFields[f];
+            for (int c = 0; c < field.channels && !active; c++) {
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int y = ringY0; y < ringY1; y++) {
+                    for (int i = y * cols + ringX0; i < y * cols + ringX1; i++) {
+                        double value = field.values.get(c, i);
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                    }
+                }
+                active = max - min >= epsilon;
+            }
+        }
+        tileActive[tile] = active;
+    }
+
+    /**
+     * Registers a scalar field that is advected and diffused along with the velocities from the next step on.
+     * Must not be called while a step runs.
+     * <p>
+     * All fields share the pass over the tiles, but within a row they are swept one channel after another instead of
+     * interleaved per cell. Every channel is its own array, so each sweep reads linear memory and can run as one
+     * FloatKernels row, and advection reads the row's backtrace from backtraceCells and backtraceWeights, which are
+     * filled once per row for all fields. Interleaving per cell would switch between arrays for every value.
+     *
+     * @param name               The name to find the field by, has to be unique.
+     * @param channels           The number of values per cell.
+     * @param precision          How the values are stored.
+     * @param diffuseCoefficient The part of its value a cell keeps when diffusing, 1 turns diffusion off.
+     * @return the new field, 0 everywhere.
+     */
+    public ScalarField addScalarField(String name, int channels, FieldPrecision precision, double diffuseCoefficient) {
+        if (getScalarField(name) != null)
+            throw new IllegalArgumentException("There already is a scalar field named " + name);
+        ScalarField field = new ScalarField(this, name, channels, cols, rows, precision, diffuseCoefficient);
+        ScalarField[] fields = Arrays.copyOf(scalarFields, scalarFields.length + 1);
+        fields[scalarFields.length] = field;
+        scalarFields = fields;
+        scalarFieldsDouble &= precision == FieldPrecision.DOUBLE;
+        scalarFieldsFloat &= precision == FieldPrecision.FLOAT;
+        if (precision == FieldPrecision.FLOAT && floatKernels == null) {
+            floatKernels = new FloatKernels();
+            floatKernels.updateCellTypes(this);
+        }
+        return field;
+    }
+
+    /**
+     * @param name The name the field was registered with.
+     * @return the field or null if there is none with that name.
+     */
+    public ScalarField getScalarField(String name) {
+        for (ScalarField field : scalarFields) {
+            if (field.name.equals(name))
+                return field;
+        }
+        return null;
+    }
+
+    /**
+     * @return all registered scalar fields in the order they were added, starting with colors.
+     */
+    public ScalarField[] getScalarFields() {
+        return scalarFields.clone();
+    }
+
+    /**
+     * @return whether the cell is an obstacle, false for cells outside of the grid.
+     */
+    public boolean isObstacle(int x, int y) {
+        return isCellInGrid(x, y) && cellType[y * cols + x] == OBSTACLE_CELL;
+    }
+
+    /**
+     * @return whether any cell is an obstacle.
+     */
+    public boolean hasObstacles() {
+        return obstacleCount > 0;
+    }
+
+    /**
+     * @return a number that changes whenever obstacles are added or removed, so copies know when to update.
+     */
+    public int getObstacleVersion() {
+        return obstacleVersion;
+    }
+
+    /**
+     * Turns a rectangle of cells into obstacles or back into fluid, the part outside of the grid is ignored.
+     * Cells that become obstacles lose their flows. The tables derived from the cell types are updated once
+     * before the next step, so many changes between two steps cost no more than one.
+     * Must not be called while a step runs.
+     */
+    public void setObstacles(int x0, int y0, int width, int height, boolean obstacle) {
+        int type = obstacle ? OBSTACLE_CELL : DEFAULT_CELL;
+        int changed = 0;
+        for (int y = Math.max(y0, 0); y < Math.min(y0 + height, rows); y++) {
+            for (int x = Math.max(x0, 0); x < Math.min(x0 + width, cols); x++) {
+                int i = y * cols + x;
+                if (cellType[i] == type || cellType[i] != DEFAULT_CELL && cellType[i] != OBSTACLE_CELL)
+                    continue;
+                cellType[i] = type;
+                obstacleCount += obstacle ? 1 : -1;
+                changed++;
+                wakeCell(x, y);
+                if (!obstacle)
+                    continue;
+                flows.set(HORIZONTAL_FLOW, i, 0);
+                flows.set(VERTICAL_FLOW, i, 0);
+                if (x > 0)
+                    flows.set(HORIZONTAL_FLOW, i - 1, 0);
+                if (y > 0)
+                    flows.set(VERTICAL_FLOW, i - cols, 0);
+            }
+        }
+        if (changed > 0) {
+            cellTypesChanged = true;
+            obstacleVersion++;
+        }
+    }
+
+    /**
+     * Changes scenes.
+     * Does not work correctly when switching simulation sizes!
+     *
+     * @param sceneInfo The new scene to simulate
+     */
+    public void changeScene(SimulationSceneInfo sceneInfo) {
+        cols = sceneInfo.cols;
+        rows = sceneInfo.rows;
+        this.sceneInfo = sceneInfo;
+    }
+
+    public boolean isCellFull(int x, int y) {
+        return false;
+        //return cellColors[x][y][0] > 220;
+    }
+
+    /**
+     * Updates the divergence list by adding up flows to left and bottom and then subtracting flows coming from left and top.
+     * Also updates maxDivergence and l2Divergence.
+     */
+    void calculateDivergence() {
+        scheduler.forEachTile(divergenceKernel);
+        double max = 0;
+        double squared = 0;
+        for (int t = 0; t < tileMaxDivergence.length; t++) {
+            max = Math.max(max, tileMaxDivergence[t]);
+            squared += tileSquaredDivergence[t];
+        }
+        maxDivergence = max;
+        l2Divergence = Math.sqrt(squared / (cols * rows));
+    }
+
+    /**
+     * @return the residual of the last calculateDivergence in the norm the tolerance is compared in.
+     */
+    private double getDivergenceResidual() {
+        return toleranceOnL2 ? l2Divergence : maxDivergence;
+    }
+
+    /**
+     * Calculates the divergence of a specific cell
+     * @param x The cells horizontal position.
+     * @param y The cells vertical position.
+     * @return the new divergence of the cell.
+     */
+    double calculateDivergenceSingle(int x, int y) {
+        int i = y * cols + x;
+        if (cellType[i] == INFLOW_CELL) {
+            divergence.set(0, i, 0);
+            return 0;
+        }
+
+        double divergenceX = -flows.get(HORIZONTAL_FLOW, i);
+        double divergenceY = -flows.get(VERTICAL_FLOW, i);
+        if (x > 0) {
+            divergenceX += flows.get(HORIZONTAL_FLOW, i - 1);
+        }
+        if (y > 0) {
+            divergenceY += flows.get(VERTICAL_FLOW, i - cols);
+        }
+
+        divergence.set(0, i, divergenceX + divergenceY);
+        return divergenceX + divergenceY;
+    }
+
+    /**
+     * Clears the flows of a cell and sets them again by projectGaussSeidelSingle.
+     */
+    void projectGaussSeidelCell(int x, int y) {
+        flows.set(x, y, HORIZONTAL_FLOW, 0);
+        flows.set(x, y, VERTICAL_FLOW, 0);
+        projectGaussSeidelSingle(x, y, oldFlows);
+    }
+
+    /**
+     * Updates a single cell by the rules of the Gauss-Seidel-Projection by simply distributing
+     * the divergence across cell outflows to neighbouring cells.
+     *
+     * @param x        The x coordinate of the cell to update.
+     * @param y        The y coordinate of the cell to update.
+     * @param oldFlows A snapshot of the flows before the start of the update to base the calculations off of.
+     */
+    private void projectGaussSeidelSingle(int x, int y, GridField oldFlows) {
+        int i = y * cols + x;
+        if (cellType[i] != DEFAULT_CELL) return;
+        var deltaVel = getDeltaVel(x, y);
+        int faces = openFaces[i];
+
+        if ((faces & OPEN_RIGHT) != 0) {
+            var neighbourDelta = getDeltaVel(x + 1, y);
+            double delta = 0;
+            //if (!isCellFull(x, y) && deltaVel < 0 || !isCellFull(x + 1, y) && deltaVel > 0)
+            delta += deltaVel;
+            //if (!isCellFull(x + 1, y) && delta > 0 || !isCellFull(x, y) && deltaVel < 0)
+            delta -= neighbourDelta;
+
+            flows.set(HORIZONTAL_FLOW, i, Math.min(oldFlows.get(HORIZONTAL_FLOW, i) + delta, 2));
+        }
+        if ((faces & OPEN_DOWN) != 0) {
+            var neighbourDelta = getDeltaVel(x, y + 1);
+            double delta = 0;
+            if (!isCellFull(x, y) && deltaVel < 0 || !isCellFull(x, y + 1) && deltaVel > 0)
+                delta += deltaVel;
+            if (!isCellFull(x, y + 1) && deltaVel > 0 || !isCellFull(x, y) && deltaVel < 0)
+                delta -= neighbourDelta;
+
+            flows.set(VERTICAL_FLOW, i, Math.min(oldFlows.get(VERTICAL_FLOW, i) + delta, 2));
+        }
+
+        //flows[x][y][HORIZONTAL_FLOW] = Math.min(flows[x][y][HORIZONTAL_FLOW], 2);
+        //flows[x][y][VERTICAL_FLOW] = Math.min(flows[x][y][VERTICAL_FLOW], 2);
+    }
+
+    /**
+     * Calculates the velocity each flow of a cell has to be changed by to push back the divergence.
+     * The divergence is shared by the open sides of the cell, looked up in inverseOpenFaceCounts.
+     *
+     * @param x The x coordinate of the cell.
+     * @param y The x coordinate of the cell.
+     * @return The velocity as a double that has to be distributed onto the cells open flow vectors.
+     */
+    private double getDeltaVel(int x, int y) {
+        int i = y * cols + x;
+        return divergence.get(0, i) * inverseOpenFaceCounts[i];
+    }
+
+    /**
+     * Updates the flows array to counteract the divergence by calling ProjectGaussSeidelSingle on each cell.
+     */
+    public void projectGaussSeidel() {
+        GridField tmp = oldFlows;
+        oldFlows = flows;
+        flows = tmp;
+
+        scheduler.forEachTile(projectionKernel);
+
+        useTmpFlows = !useTmpFlows;
+    }
+
+    /**
+     * Removes the divergence by solving for the pressure with the multigrid solver and subtracting its gradient from the flows.
+     * Unlike projectGaussSeidel this converges in a few cycles independent of the grid size.
+     */
+    public void projectMultigrid() {
+        if (multigridSolver == null)
+            multigridSolver = new MultigridSolver(cols, rows, cellType, fluidRegions, fluidRegionCount, scheduler);
+
+        closeBoundaryFlows();
+        calculateDivergence();
+        projectionIterations = multigridSolver.solve(divergence, pressure, multigridCycles, projectionTolerance, toleranceOnL2);
+        applyPressureGradient();
+    }
+
+    /**
+     * Removes the divergence by solving the pressure Poisson equation with preconditioned conjugate gradients
+     * and subtracting the pressure gradient from the flows.
+     */
+    public void projectConjugateGradient() {
+        if (conjugateGradientSolver == null)
+            conjugateGradientSolver = new ConjugateGradientSolver(cols, rows, cellType, fluidRegions, fluidRegionCount, scheduler);
+
+        closeBoundaryFlows();
+        calculateDivergence();
+        projectionIterations = conjugateGradientSolver.solve(divergence, pressure, conjugateGradientIterations, projectionTolerance, toleranceOnL2);
+        applyPressureGradient();
+    }
+
+    /**
+     * Sets the flows leaving the grid and the flows into and out of obstacle cells to zero.
+     * projectGaussSeidel does the same implicitly by never writing those flows.
+     */
+    private void closeBoundaryFlows() {
+        for (int i = 0; i < cols * rows; i++) {
+            int faces = openFaces[i];
+            if ((faces & OPEN_RIGHT) == 0)
+                flows.set(HORIZONTAL_FLOW, i, 0);
+            if ((faces & OPEN_DOWN) == 0)
+                flows.set(VERTICAL_FLOW, i, 0);
+        }
+    }
+
+    /**
+     * Subtracts the pressure difference between two neighbouring default cells from the flow between them.
+     * Flows touching other cell types are left as they are.
+     */
+    private void applyPressureGradient() {
+        scheduler.forEachTile(pressureGradientKernel);
+    }
+
+    private void applyPressureGradientTile(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        for (int y = y0; y < y1; y++) {
+            for (int i = y * cols + x0; i < y * cols + x1; i++) {
+                int faces = openFaces[i];
+                double p = pressure.get(0, i);
+                if ((faces & OPEN_RIGHT) != 0)
+                    flows.add(HORIZONTAL_FLOW, i, p - pressure.get(0, i + 1));
+                if ((faces & OPEN_DOWN) != 0)
+                    flows.add(VERTICAL_FLOW, i, p - pressure.get(0, i + cols));
+            }
+        }
+    }
+
+    /*
+    Unnötigster code jemals geschrieben
+
+    private double[][][] Clone3DArray(double[][][] arr) {
+        double[][][] res = new double[arr.length][arr[0].length][arr[0][HORIZONTAL_FLOW].length];
+        for (int y = 0; y < arr.length; y++) {
+            for (int x = 0; x < arr[0].length; x++) {
+                System.arraycopy(arr[y][x], 0, res[y][x], 0, arr[0][HORIZONTAL_FLOW].length);
+            }
+        }
+        return res;
+    }
+
+    private double[][] Clone2DArray(double[][] arr) {
+        double[][] res = new double[arr.length][arr[0].length];
+        for (int y = 0; y < arr.length; y++) {
+            System.arraycopy(arr[y], 0, res[y], 0, arr[0].length);
+        }
+        return res;
+    }
+    */
+
+    /**
+     * Updates the pressure array. Is not needed for the simulation.
+     */
+    public void calculatePressure() {
+        GridField oldPressure = pressure;
+        pressure = GridField.create(cols, rows, 1, precision);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                double p = 0;
+                int neighbours = 0;
+                if (isCellInGrid(x + 1, y)) {
+                    p += oldPressure.get(x + 1, y, 0);
+                    neighbours++;
+                }
+                if (isCellInGrid(x - 1, y)) {
+                    p += oldPressure.get(x - 1, y, 0);
+                    neighbours++;
+                }
+                if (isCellInGrid(x, y + 1)) {
+                    p += oldPressure.get(x, y + 1, 0);
+                    neighbours++;
+                }
+                if (isCellInGrid(x, y - 1)) {
+                    p += oldPressure.get(x, y - 1, 0);
+                    neighbours++;
+                }
+                pressure.set(x, y, 0, p / neighbours - divergence.get(x, y, 0) / neighbours);
+            }
+        }
+    }
+
+    /**
+     * Advects velocities and all scalar fields in one pass over the grid, all by the flows at the start of the step.
+     * The backtrace of a cell is only calculated once and then used for every quantity.
+     */
+    public void advect() {
+        advect(true, true);
+    }
+
+    /**
+     * Updates the velocities by averaging the velocities of the cells that should point to this cell.
+     * This way we pull the velocities instead if pushing them witch helps to prevent errors by overwriting data
+     * because after each step a cell is completely finished with advection.
+     */
+    public void advectVelocities() {
+        advect(true, false);
+    }
+
+    /**
+     * Updates the cell colors and the other scalar fields by averaging the values of the cells that should point to
+     * the given cell by the rules of advection.
+     */
+    public void advectColor() {
+        advect(false, true);
+    }
+
+    private void advect(boolean velocities, boolean scalars) {
+        calculateSummedFlows();
+        calculateSummedOutflows();
+        if (velocities) {
+            GridField tmp = oldFlows;
+            oldFlows = flows;
+            flows = tmp;
+        }
+        if (scalars) {
+            for (ScalarField field : scalarFields) {
+                field.swap();
+            }
+        }
+        advectingVelocities = velocities;
+        advectingScalars = scalars;
+        scheduler.forEachTile(advectKernel);
+        if (velocities)
+            scheduler.forEachTile(advectedFlowsKernel);
+    }
+
+    /**
+     * Traces every cell of a tile back, row by row, and then advects each quantity of the row with the stored backtrace.
+     */
+    private void advectTile(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        for (int y = y0; y < y1; y++) {
+            int rowStart = y * cols;
+            if (floatFlowKernels()) {
+                floatKernels.backtraceRow(this, y, x0, x1, advectingScalars && !scalarFieldsFloat);
+            } else {
+                for (int x = x0; x < x1; x++) {
+                    backtrace(x, y);
+                }
+            }
+            if (advectingVelocities) {
+                if (floatFlowKernels()) {
+                    floatKernels.interpolateRow(this, FloatKernels.array(summedOutflows, HORIZONTAL_FLOW),
+                            FloatKernels.array(advectedVelocities, HORIZONTAL_FLOW), rowStart + x0, rowStart + x1, true);
+                    floatKernels.interpolateRow(this, FloatKernels.array(summedOutflows, VERTICAL_FLOW),
+                            FloatKernels.array(advectedVelocities, VERTICAL_FLOW), rowStart + x0, rowStart + x1, true);
+                } else {
+                    for (int i = rowStart + x0; i < rowStart + x1; i++) {
+                        advectedVelocities.set(HORIZONTAL_FLOW, i, -interpolateBacktrace(summedOutflows, HORIZONTAL_FLOW, i));
+                        advectedVelocities.set(VERTICAL_FLOW, i, -interpolateBacktrace(summedOutflows, VERTICAL_FLOW, i));
+                    }
+                }
+            }
+            if (advectingScalars) {
+                for (ScalarField field : scalarFields) {
+                    GridField source = field.oldValues;
+                    GridField target = field.values;
+                    boolean floatValues = floatFlowKernels() && field.precision == FieldPrecision.FLOAT; //Needs the weights of FloatKernels.backtraceRow
+                    for (int c = 0; c < field.channels; c++) {
+                        if (floatValues) {
+                            floatKernels.interpolateRow(this, FloatKernels.array(source, c), FloatKernels.array(target, c),
+                                    rowStart + x0, rowStart + x1, false);
+                            continue;
+                        }
+                        for (int i = rowStart + x0; i < rowStart + x1; i++) {
+                            target.set(c, i, interpolateBacktrace(source, c, i));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the backtrace of a cell in backtraceCells and backtraceWeights.
+     * Same as getAdvectionDeltas(x, y, false) without allocating an info object, obstacle cells trace back to themselves.
+     */
+    private void backtrace(int x, int y) {
+        int i = y * cols + x;
+        if (cellType[i] == OBSTACLE_CELL) {
+            //Keeps its own values, no flow reaches an obstacle so its velocity is 0
+            backtraceCells[4 * i] = i;
+            backtraceCells[4 * i + 1] = i;
+            backtraceCells[4 * i + 2] = i;
+            backtraceCells[4 * i + 3] = i;
+            backtraceWeights[2 * i] = 0;
+            backtraceWeights[2 * i + 1] = 0;
+            return;
+        }
+        double dirX = summedFlows.get(x, y, HORIZONTAL_FLOW) * dt;
+        double dirY = summedFlows.get(x, y, VERTICAL_FLOW) * dt;
+        int left = x + (int) Math.floor(dirX);
+        int right = x + (int) Math.ceil(dirX);
+        int top = y + (int) Math.floor(dirY);
+        int bottom = y + (int) Math.ceil(dirY);
+
+        backtraceCells[4 * i] = isCellInGrid(left, top) ? top * cols + left : -1;
+        backtraceCells[4 * i + 1] = isCellInGrid(right, top) ? top * cols + right : -1;
+        backtraceCells[4 * i + 2] = isCellInGrid(left, bottom) ? bottom * cols + left : -1;
+        backtraceCells[4 * i + 3] = isCellInGrid(right, bottom) ? bottom * cols + right : -1;
+        backtraceWeights[2 * i] = (x + dirX) - left;
+        backtraceWeights[2 * i + 1] = Math.abs((y + dirY) - bottom);
+    }
+
+    /**
+     * Interpolates a component of a field at the point the cell was traced back to, cells outside of the grid count as 0.
+     *
+     * @param field     The field to read, indexed like the cells.
+     * @param component The component of the field.
+     * @param i         The index of the cell whose backtrace is used.
+     * @return the interpolated value.
+     */
+    private double interpolateBacktrace(GridField field, int component, int i) {
+        int tl = backtraceCells[4 * i];
+        int tr = backtraceCells[4 * i + 1];
+        int bl = backtraceCells[4 * i + 2];
+        int br = backtraceCells[4 * i + 3];
+        return twoDimensionLerp(
+                tl >= 0 ? field.get(component, tl) : 0,
+                tr >= 0 ? field.get(component, tr) : 0,
+                bl >= 0 ? field.get(component, bl) : 0,
+                br >= 0 ? field.get(component, br) : 0,
+                backtraceWeights[2 * i], backtraceWeights[2 * i + 1]);
+    }
+
+    /**
+     * Splits the advected cell velocities onto the flows of a tile.
+     * Each flow gets half of the velocity of both cells it connects, or all of it if that cell is on the border.
+     * Flows into obstacles stay 0.
+     * Collecting per flow instead of spreading per cell lets every tile write only its own flows.
+     */
+    private void collectAdvectedFlowsTile(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        if (floatFlowKernels()) {
+            floatKernels.collectAdvectedFlowsTile(this, x0, y0, x1, y1);
+            return;
+        }
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = y * cols + x;
+                int faces = openFaces[i];
+                double flowRight = 0;
+                if ((faces & OPEN_RIGHT) != 0) {
+                    flowRight += advectedVelocities.get(HORIZONTAL_FLOW, i) * (x > 0 ? 0.5 : 1);
+                    flowRight += advectedVelocities.get(HORIZONTAL_FLOW, i + 1) * (x + 1 < cols - 1 ? 0.5 : 1);
+                }
+                double flowDown = 0;
+                if ((faces & OPEN_DOWN) != 0) {
+                    flowDown += advectedVelocities.get(VERTICAL_FLOW, i) * (y > 0 ? 0.5 : 1);
+                    flowDown += advectedVelocities.get(VERTICAL_FLOW, i + cols) * (y + 1 < rows - 1 ? 0.5 : 1);
+                }
+                flows.set(HORIZONTAL_FLOW, i, flowRight);
+                flows.set(VERTICAL_FLOW, i, flowDown);
+            }
+        }
+    }
+
+    /**
+     * Returns the velocity at a point in simulation space by interpolating between the four nearest cells.
+     *
+     * @param x The horizontal part of the coordinate.
+     * @param y The vertical part of the coordinate.
+     * @return Returns a velocity vector represented as a double[] with res[0] containing the horizontal part and res[1] containing the vertical part.
+     */
+    public double[] getVelAtPoint(double x, double y) {
+        return getVelAtPoint(x, y, new double[2]);
+    }
+
+    /**
+     * Returns the velocity at a point in simulation space by interpolating between the four nearest cells.
+     *
+     * @param x   The horizontal part of the coordinate.
+     * @param y   The vertical part of the coordinate.
+     * @param res The array the velocity is written into (res[0] horizontal, res[1] vertical).
+     * @return the res array.
+     */
+    public double[] getVelAtPoint(double x, double y, double[] res) {
+        res[0] = getVelAtPoint(x, y, HORIZONTAL_FLOW);
+        res[1] = getVelAtPoint(x, y, VERTICAL_FLOW);
+        return res;
+    }
+
+    /**
+     * Returns one direction of the velocity at a point in simulation space by interpolating between the four nearest cells.
+     *
+     * @param x       The horizontal part of the coordinate.
+     * @param y       The vertical part of the coordinate.
+     * @param flowDir The direction to return. Either 0 for horizontal or 1 for vertical.
+     * @return the interpolated velocity in the requested direction.
+     */
+    public double getVelAtPoint(double x, double y, int flowDir) {
+        return getVelAtPoint(summedOutflows, x, y, flowDir);
+    }
+
+    /**
+     * Same as getVelAtPoint(x, y, flowDir) for summed outflows copied out of a simulation, see FrameSnapshot.
+     */
+    static double getVelAtPoint(GridField summedOutflows, double x, double y, int flowDir) {
+        int left = (int) Math.floor(x);
+        int top = (int) Math.floor(y);
+        int right = (int) Math.ceil(x);
+        int bottom = (int) Math.ceil(y);
+
+        double velTL = getCelVel(summedOutflows, left, top, flowDir);
+        double velTR = getCelVel(summedOutflows, right, top, flowDir);
+        double velBL = getCelVel(summedOutflows, left, bottom, flowDir);
+        double velBR = getCelVel(summedOutflows, right, bottom, flowDir);
+
+        return -twoDimensionLerp(velTL, velTR, velBL, velBR, x - Math.floor(x), y - Math.floor(y));
+    }
+
+    /**
+     * Calculates the information needed for basic advection by the flow vectors at a specific cell.
+     *
+     * @param x       The cells horizontal position.
+     * @param y       The cells vertical position.
+     * @param forward determines weather the advection process should look forward (true) or trace backwards (false).
+     * @return an AdvectionInterpoationInfo object containing the advection neighbour cells and
+     * the interpolation factors between them.
+     */
+    public AdvectionInterpolationInfo getAdvectionDeltas(int x, int y, boolean forward) {
+        return getAdvectionDeltas(summedFlows, dt, x, y, forward);
+    }
+
+    /**
+     * Same as getAdvectionDeltas(x, y, forward) for summed flows copied out of a simulation, see FrameSnapshot.
+     */
+    static AdvectionInterpolationInfo getAdvectionDeltas(GridField summedFlows, double dt, int x, int y, boolean forward) {
+        double dirX = summedFlows.get(x, y, HORIZONTAL_FLOW) * dt;
+        double dirY = summedFlows.get(x, y, VERTICAL_FLOW) * dt;
+        if (forward) {
+            dirX *= -1;
+            dirY *= -1;
+        }
+        int CellTLX = x + (int) Math.floor(dirX);
+        int CellTLY = y + (int) Math.floor(dirY);
+        int CellTRX = x + (int) Math.ceil(dirX);
+        int CellTRY = y + (int) Math.floor(dirY);
+        int CellBLX = x + (int) Math.floor(dirX);
+        int CellBLY = y + (int) Math.ceil(dirY);
+        int CellBRX = x + (int) Math.ceil(dirX);
+        int CellBRY = y + (int) Math.ceil(dirY);
+
+        double tX = (x + dirX) - CellTLX;
+        double tY = Math.abs((y + dirY) - CellBLY);
+
+        return new AdvectionInterpolationInfo(CellTLX, CellTLY, CellTRX, CellTRY, CellBLX, CellBLY, CellBRX, CellBRY, tX, tY);
+    }
+
+
+    /**
+     * Returns the velocity of a cell if the cell exists and zero if the requested position is not a valid cell.
+     *
+     * @param summedOutflows The summed outflows to read.
+     * @param x       The cells horizontal position.
+     * @param y       The cells vertical position.
+     * @param flowDir The direction to return. Either 0 for horizontal or 1 for vertical.
+     * @return a double representing the summed flow in the requested direction.
+     */
+    private static double getCelVel(GridField summedOutflows, int x, int y, int flowDir) {
+        boolean inGrid = x >= 0 && y >= 0 && x < summedOutflows.cols && y < summedOutflows.rows;
+        return inGrid ? summedOutflows.get(x, y, flowDir) : 0;
+    }
+
+    /**
+     * Interpolates between 4 values representing 4 corners at (0, 1), (1, 1), (0, 0), and (1, 0).
+     *
+     * @param TL The value in the top left corner (0,1).
+     * @param TR The value in the top right corner (1,1).
+     * @param BL The value in the bottom left corner (0,0).
+     * @param BR The value in the bottom right corner (1,1).
+     * @param tX The horizontal interpolation factor.
+     * @param tY The vertical interpolation factor.
+     * @return a double interpolated between the four inputs.
+     */
+    public static double twoDimensionLerp(double TL, double TR, double BL, double BR, double tX, double tY) {
+        double topLerp = lerp(TL, TR, tX);
+        double bottomLerp = lerp(BL, BR, tX);
+        return lerp(bottomLerp, topLerp, tY);
+    }
+
+    /**
+     * Updates the velocities and scalar fields to slowly average out between their neighbours.
+     * EXPLICIT keeps the diffuse coefficient to the power of dt of the old value and takes the rest from the old values
+     * of the neighbours, so substeps diffuse about as much as one step.
+     * IMPLICIT solves value = old + rate * (mean of the neighbours - value) with the same rate -ln(coefficient) * dt,
+     * running diffusionIterations Jacobi iterations that start from the old values. Every iteration is the explicit
+     * formula with the neighbours read from the previous iteration and the keep 1 / (1 + rate).
+     */
+    void diffuse() {
+        GridField tmp = oldFlows;
+        oldFlows = flows;
+        flows = tmp;
+        for (ScalarField field : scalarFields) {
+            field.swap();
+        }
+        diffuseIteration = 0;
+        diffuseIntoScratch = false;
+        if (diffusionMethod == DiffusionMethod.EXPLICIT) {
+            velocityDiffuseKeep = Math.pow(velocityDiffuseCoefficient, dt);
+            for (ScalarField field : scalarFields) {
+                field.diffuseKeep = Math.pow(field.diffuseCoefficient, dt);
+            }
+            scheduler.forEachTile(diffuseKernel);
+            return;
+        }
+        //Frozen tiles are never written, their scratch values have to match the other buffers from the start
+        if (implicitFlows == null) {
+            implicitFlows = GridField.create(cols, rows, 2, precision);
+            implicitFlows.copyFrom(oldFlows);
+        }
+        velocityDiffuseKeep = getImplicitKeep(velocityDiffuseCoefficient);
+        for (ScalarField field : scalarFields) {
+            if (field.implicitValues == null) {
+                field.implicitValues = GridField.create(cols, rows, field.channels, field.precision);
+                field.implicitValues.copyFrom(field.oldValues);
+            }
+            field.diffuseKeep = getImplicitKeep(field.diffuseCoefficient);
+        }
+        //The iterations alternate between both buffers and end in flows and values
+        int iterations = Math.max(1, diffusionIterations);
+        for (diffuseIteration = 0; diffuseIteration < iterations; diffuseIteration++) {
+            diffuseIntoScratch = (iterations - 1 - diffuseIteration) % 2 != 0;
+            scheduler.forEachTile(diffuseKernel);
+        }
+    }
+
+    /**
+     * @return the part of its old value a cell keeps in each Jacobi iteration of an implicit diffusion substep.
+     */
+    private double getImplicitKeep(double diffuseCoefficient) {
+        double rate = -Math.log(Math.max(diffuseCoefficient, Double.MIN_NORMAL)) * dt;
+        return 1 / (1 + rate);
+    }
+
+    /**
+     * @return the buffer the current diffuse iteration reads the neighbours from: the old values in the first one,
+     * the values the iteration before wrote after that.
+     */
+    GridField getDiffuseNeighbours(GridField old, GridField current, GridField scratch) {
+        if (diffuseIteration == 0)
+            return old;
+        return diffuseIntoScratch ? current : scratch;
+    }
+
+    /**
+     * @return the buffer the current diffuse iteration writes into.
+     */
+    GridField getDiffuseTarget(GridField current, GridField scratch) {
+        return diffuseIntoScratch ? scratch : current;
+    }
+
+    /**
+     * Diffuses a tile row by row, one component after the other, so each inner loop only reads one array.
+     */
+    private void diffuseTile(int tile, int x0, int y0, int x1, int y1) {
+        GridField flowNeighbours = getDiffuseNeighbours(oldFlows, flows, implicitFlows);
+        GridField flowTarget = getDiffuseTarget(flows, implicitFlows);
+        for (int y = y0; y < y1; y++) {
+            int start = y * cols + x0;
+            int end = y * cols + x1;
+            diffuseRow(oldFlows, flowNeighbours, flowTarget, HORIZONTAL_FLOW, start, end, velocityDiffuseKeep);
+            diffuseRow(oldFlows, flowNeighbours, flowTarget, VERTICAL_FLOW, start, end, velocityDiffuseKeep);
+            for (ScalarField field : scalarFields) {
+                GridField neighbourValues = getDiffuseNeighbours(field.oldValues, field.values, field.implicitValues);
+                GridField target = getDiffuseTarget(field.values, field.implicitValues);
+                for (int c = 0; c < field.channels; c++) {
+                    diffuseRow(field.oldValues, neighbourValues, target, c, start, end, field.diffuseKeep);
+                }
+            }
+        }
+    }
+
+    private void diffuseRow(GridField source, GridField neighbourValues, GridField target, int component, int start, int end, double keep) {
+        if (useFloatKernels && source instanceof FloatGridField && neighbourValues instanceof FloatGridField && target instanceof FloatGridField) {
+            floatKernels.diffuseRow(this, FloatKernels.array(source, component), FloatKernels.array(neighbourValues, component),
+                    FloatKernels.array(target, component), start, end, keep);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            target.set(component, i, diffuseValue(source, neighbourValues, component, i, fluidNeighbourMasks[i], keep));
+        }
+    }
+
+    /**
+     * Mixes the flows and scalar fields of a cell with those of its neighbours, reading from the buffers of the
+     * current diffuse iteration.
+     */
+    void diffuseCell(int x, int y) {
+        int i = y * cols + x;
+        int fluidNeighbours = fluidNeighbourMasks[i];
+        GridField flowNeighbours = getDiffuseNeighbours(oldFlows, flows, implicitFlows);
+        GridField flowTarget = getDiffuseTarget(flows, implicitFlows);
+        flowTarget.set(HORIZONTAL_FLOW, i, diffuseValue(oldFlows, flowNeighbours, HORIZONTAL_FLOW, i, fluidNeighbours, velocityDiffuseKeep));
+        flowTarget.set(VERTICAL_FLOW, i, diffuseValue(oldFlows, flowNeighbours, VERTICAL_FLOW, i, fluidNeighbours, velocityDiffuseKeep));
+        for (ScalarField field : scalarFields) {
+            GridField neighbourValues = getDiffuseNeighbours(field.oldValues, field.values, field.implicitValues);
+            GridField target = getDiffuseTarget(field.values, field.implicitValues);
+            for (int c = 0; c < field.channels; c++) {
+                target.set(c, i, diffuseValue(field.oldValues, neighbourValues, c, i, fluidNeighbours, field.diffuseKeep));
+            }
+        }
+    }
+
+    /**
+     * @return a bit for each of the eight neighbours of a cell that is a fluid cell inside the grid,
+     * row by row from the top left like neighbourOffsets.
+     */
+    private int getFluidNeighbourMask(int x, int y) {
+        int mask = 0;
+        int bit = 0;
+        for (int v = -1; v < 2; v++) {
+            for (int w = -1; w < 2; w++, bit++) {
+                int xx = x + w;
+                int yy = y + v;
+                if ((v != 0 || w != 0) && isCellInGrid(xx, yy) && cellType[yy * cols + xx] == DEFAULT_CELL)
+                    mask |= 1 << bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Mixes one component of a cell with the neighbours set in fluidNeighbours: keep times its value in source plus
+     * the rest times the mean of the neighbours in neighbourValues.
+     * Summed up locally and returned, so reduced precision fields only round once per cell.
+     */
+    private double diffuseValue(GridField source, GridField neighbourValues, int component, int i, int fluidNeighbours, double keep) {
+        double sum = 0;
+        if (fluidNeighbours == ALL_NEIGHBOURS_FLUID) {
+            //Most cells, without a branch per neighbour
+            int above = i - cols;
+            int below = i + cols;
+            sum += neighbourValues.get(component, above - 1);
+            sum += neighbourValues.get(component, above);
+            sum += neighbourValues.get(component, above + 1);
+            sum += neighbourValues.get(component, i - 1);
+            sum += neighbourValues.get(component, i + 1);
+            sum += neighbourValues.get(component, below - 1);
+            sum += neighbourValues.get(component, below);
+            sum += neighbourValues.get(component, below + 1);
+        } else {
+            for (int n = 0; n < 9; n++) {
+                if ((fluidNeighbours & 1 << n) != 0)
+                    sum += neighbourValues.get(component, i + neighbourOffsets[n]);
+            }
+        }
+        return source.get(component, i) * keep + sum * ((1 - keep) * inverseNeighbourCounts[i]);
+    }
+
+    /**
+     * Calculates the count of neighbours (including diagonal neighbours!) a cell has respecting bounds.
+     *
+     * @param x The cells horizontal position.
+     * @param y The cells vertical position.
+     * @return an integer between 0 and 8.
+     */
+    public int getNeighbourCount(int x, int y) {
+        int res = 9;
+        for (int v = -1; v < 2; v++) {
+            for (int w = -1; w < 2; w++) {
+                int yy = y + v;
+                int xx = x + w;
+                if (v == 0 && w == 0 || !isCellInGrid(xx, yy) || cellType[yy * cols + xx] != DEFAULT_CELL)
+                    res--;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the sides of a fluid cell that border another fluid cell, 0 for every other cell type.
+     */
+    private int getOpenFaces(int x, int y) {
+        int i = y * cols + x;
+        if (cellType[i] != DEFAULT_CELL)
+            return 0;
+        int faces = 0;
+        if (x < cols - 1 && cellType[i + 1] == DEFAULT_CELL)
+            faces |= OPEN_RIGHT;
+        if (y < rows - 1 && cellType[i + cols] == DEFAULT_CELL)
+            faces |= OPEN_DOWN;
+        if (x > 0 && cellType[i - 1] == DEFAULT_CELL)
+            faces |= OPEN_LEFT;
+        if (y > 0 && cellType[i - cols] == DEFAULT_CELL)
+            faces |= OPEN_UP;
+        return faces;
+    }
+
+    /**
+     * Recalculates everything derived from the cell types. Has to be called whenever cellType changes.
+     */
+    private void updateNeighbourCounts() {
+        cellTypesChanged = false;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                neighbours[i] = getNeighbourCount(x, y);
+                inverseNeighbourCounts[i] = neighbours[i] != 0 ? 1.0 / neighbours[i] : 0;
+                fluidNeighbourMasks[i] = getFluidNeighbourMask(x, y);
+                int faces = getOpenFaces(x, y);
+                openFaces[i] = faces;
+                inverseOpenFaceCounts[i] = faces != 0 ? 1.0 / Integer.bitCount(faces) : 0;
+            }
+        }
+        updateFluidRegions();
+        if (simdKernels != null)
+            simdKernels.updateCellTypes(this);
+        if (floatKernels != null)
+            floatKernels.updateCellTypes(this);
+        if (multigridSolver != null)
+            multigridSolver.updateCellTypes(cellType, fluidRegions, fluidRegionCount);
+        if (conjugateGradientSolver != null)
+            conjugateGradientSolver.updateCellTypes(cellType, fluidRegions, fluidRegionCount);
+    }
+
+    /**
+     * Labels the default cells connected through their open faces with the same region, by a flood fill from each
+     * cell that has none yet. The pressure solvers need the regions, every one of them is a closed domain of its own.
+     */
+    private void updateFluidRegions() {
+        int cells = cols * rows;
+        Arrays.fill(fluidRegions, -1);
+        int[] stack = new int[cells]; //Only allocated when the obstacles change
+        int regions = 0;
+        for (int start = 0; start < cells; start++) {
+            if (cellType[start] != DEFAULT_CELL || fluidRegions[start] >= 0)
+                continue;
+            int size = 0;
+            fluidRegions[start] = regions;
+            stack[size++] = start;
+            while (size > 0) {
+                int i = stack[--size];
+                int faces = openFaces[i];
+                if ((faces & OPEN_RIGHT) != 0 && fluidRegions[i + 1] < 0) {
+                    fluidRegions[i + 1] = regions;
+                    stack[size++] = i + 1;
+                }
+                if ((faces & OPEN_LEFT) != 0 && fluidRegions[i - 1] < 0) {
+                    fluidRegions[i - 1] = regions;
+                    stack[size++] = i - 1;
+                }
+                if ((faces & OPEN_DOWN) != 0 && fluidRegions[i + cols] < 0) {
+                    fluidRegions[i + cols] = regions;
+                    stack[size++] = i + cols;
+                }
+                if ((faces & OPEN_UP) != 0 && fluidRegions[i - cols] < 0) {
+                    fluidRegions[i - cols] = regions;
+                    stack[size++] = i - cols;
+                }
+            }
+            regions++;
+        }
+        fluidRegionCount = regions;
+    }
+
+    /**
+     * Interpolates linearly between the values a and b by the factor t.
+     *
+     * @param a The value at (0)
+     * @param b The value at (1)
+     * @param t The interpolation factor between 0 and 1
+     * @return the interpolated value between a and b
+     */
+    public static double lerp(double a, double b, double t) {
+        return t * b + (1 - t) * a;
+    }
+
+    /**
+     * Updates the array of summed flows by adding horizontal and vertical flows from and to this cell.
+     * Also finds maxVelocity, which decides how many substeps the next SimulationStep needs.
+     */
+    private void calculateSummedFlows() {
+        scheduler.forEachTile(summedFlowsKernel);
+        double max = 0;
+        for (double tileMax : tileMaxVelocity) {
+            max = Math.max(max, tileMax);
+        }
+        maxVelocity = max;
+    }
+
+    private void calculateSummedFlowsTile(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        if (floatFlowKernels()) {
+            floatKernels.summedFlowsTile(this, tile, x0, y0, x1, y1);
+            return;
+        }
+        double max = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                double dirX;
+                double dirY;
+                int i = y * cols + x;
+                dirX = flows.get(HORIZONTAL_FLOW, i);
+                dirY = flows.get(VERTICAL_FLOW, i);
+                if (x > 0)
+                    dirX += flows.get(HORIZONTAL_FLOW, i - 1);
+                if (y > 0)
+                    dirY += flows.get(VERTICAL_FLOW, i - cols);
+                dirX /= -2;
+                dirY /= -2;
+                summedFlows.set(HORIZONTAL_FLOW, i, dirX);
+                summedFlows.set(VERTICAL_FLOW, i, dirY);
+                max = Math.max(max, Math.max(Math.abs(dirX), Math.abs(dirY)));
+            }
+        }
+        tileMaxVelocity[tile] = max;
+    }
+
+    /**
+     * Updates the summedOutFlows array by just adding the flows that leaves the cells. (Might be negative...)
+     */
+    public void calculateSummedOutflows() {
+        scheduler.forEachTile(summedOutflowsKernel);
+    }
+
+    private void calculateSummedOutflowsTile(int tile, int x0, int y0, int x1, int y1) {
+        if (!tileAwake[tile])
+            return;
+        if (floatFlowKernels()) {
+            floatKernels.summedOutflowsTile(this, x0, y0, x1, y1);
+            return;
+        }
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = y * cols + x;
+                double dirX = 0;
+                double dirY = 0;
+                double flowRight = flows.get(HORIZONTAL_FLOW, i);
+                double flowDown = flows.get(VERTICAL_FLOW, i);
+                if (flowRight > 0)
+                    dirX += flowRight;
+                if (flowDown > 0)
+                    dirY += flowDown;
+                if (x > 0 && flows.get(HORIZONTAL_FLOW, i - 1) < 0)
+                    dirX += flows.get(HORIZONTAL_FLOW, i - 1);
+                if (y > 0 && flows.get(VERTICAL_FLOW, i - cols) < 0)
+                    dirY += flows.get(VERTICAL_FLOW, i - cols);
+                summedOutflows.set(HORIZONTAL_FLOW, i, -dirX);
+                summedOutflows.set(VERTICAL_FLOW, i, -dirY);
+            }
+        }
+    }
+
+    /**
+     * Checks if a cell is in the bounds of the simulation
+     *
+     * @param x The cells horizontal position.
+     * @param y The cells vertical position.
+     * @return true if the cell is in the grid and false otherwise.
+     */
+    boolean isCellInGrid(int x, int y) {
+        return x >= 0 && x < cols && y >= 0 && y < rows;
+    }
+
+    /**
+     * ! OBSOLETE CODE that moved color along the flows wo the cell neighbours instead of advecting them by their velocities.
+     */
+    private void CalculateColorMovement() {
+        GridField oldCellColors = colors.values;
+        colors.values = GridField.create(cols, rows, 3, colorPrecision);
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                double outflow = 0;
+                double oldColor = oldCellColors.get(x, y, 0);
+                //Sum up outflow
+                if (y > 0) {
+                    if (flows.get(x, y - 1, VERTICAL_FLOW) < 0) {
+                        outflow += Math.abs(flows.get(x, y - 1, VERTICAL_FLOW));
+                    }
+                }
+                if (x > 0) {
+                    if (flows.get(x - 1, y, HORIZONTAL_FLOW) < 0) {
+                        outflow += Math.abs(flows.get(x - 1, y, HORIZONTAL_FLOW));
+                    }
+                }
+                if (x < cols - 1) {
+                    if (flows.get(x, y, HORIZONTAL_FLOW) > 0) {
+                        outflow += flows.get(x, y, HORIZONTAL_FLOW);
+                    }
+                }
+                if (y < rows - 1) {
+                    if (flows.get(x, y, VERTICAL_FLOW) > 0) {
+                        outflow += flows.get(x, y, VERTICAL_FLOW);
+                    }
+                }
+
+                //System.out.println(outflow);
+                if (outflow <= OUTFLOW_THRESHOLD) {
+                    increaseCell(x, y, oldCellColors.get(x, y, 0));
+                    continue;
+                }
+                //Move Liquid
+                if (y > 0 && flows.get(x, y - 1, VERTICAL_FLOW) < -SINGLE_FLOW_THRESHOLD) {
+                    double movedColor = oldColor * (Math.abs(flows.get(x, y - 1, VERTICAL_FLOW)) / outflow);
+                    increaseCell(x, y - 1, movedColor);
+                }
+                if (x > 0 && flows.get(x - 1, y, HORIZONTAL_FLOW) < -SINGLE_FLOW_THRESHOLD) {
+                    double movedColor = oldColor * (Math.abs(flows.get(x - 1, y, HORIZONTAL_FLOW)) / outflow);
+                    increaseCell(x - 1, y, movedColor);
+                }
+                if (x < cols - 1 && flows.get(x, y, HORIZONTAL_FLOW) > SINGLE_FLOW_THRESHOLD) {
+                    double movedColor = oldColor * (Math.abs(flows.get(x, y, HORIZONTAL_FLOW)) / outflow);
+                    increaseCell(x + 1, y, movedColor);
+                }
+                if (y < rows - 1 && flows.get(x, y, VERTICAL_FLOW) > SINGLE_FLOW_THRESHOLD) {
+                    double movedColor = oldColor * (Math.abs(flows.get(x, y, VERTICAL_FLOW)) / outflow);
+                    increaseCell(x, y + 1, movedColor);
+                }
+
+                //Fade
+                //increaseCell(x, y, -0.4);
+            }
+        }
+    }
+
+    /**
+     * ! OBSOLETE CODE that adds color to a specific cell
+     *
+     * @param x          The cells horizontal position.
+     * @param y          The cells horizontal position.
+     * @param movedColor the amount of color (red chanel only)
+     */
+    private void increaseCell(int x, int y, double movedColor) {
+        GridField cellColors = colors.values;
+        if (cellColors.get(x, y, 0) + movedColor > 255)
+            System.out.println("Mass disappeared!  " + (cellColors.get(x, y, 0) + movedColor - 255));
+        cellColors.set(x, y, 0, cellColors.get(x, y, 0) + movedColor);
+    }
+
+
+    /**
+     * Adds a specific inflow.
+     *
+     * @param x       The inflows horizontal position.
+     * @param y       The inflows vertical position.
+     * @param amountR The inflow colors red channel.
+     * @param amountG The inflow colors green channel.
+     * @param amountB The inflow colors blue channel.
+     * @param dirX    The inflows horizontal velocity.
+     * @param dirY    The inflows vertical velocity.
+     * @param noise   Decides if the inflow color should be modified slightly for better flow visibility.
+     */
+    public void addInflow(int x, int y, double amountR, double amountG, double amountB, double dirX, double dirY, boolean noise) {
+        wakeCell(x, y);
+
+        if (amountR + amountG + amountB > 0.1f) {
+            double colorNoise = noise ? random.nextDouble() / 2 + 0.5 : 1; //Same noise as randomizeColor
+            colors.set(x, y, 0, colorNoise * amountR);
+            colors.set(x, y, 1, colorNoise * amountG);
+            colors.set(x, y, 2, colorNoise * amountB);
+        }
+
+        //Inflows act after calculateSummedFlows, the next step has to know about them to choose its substeps
+        maxVelocity = Math.max(maxVelocity, Math.max(Math.abs(dirX), Math.abs(dirY)) / 2.0);
+        if (dirX > 0)
+            flows.set(x, y, HORIZONTAL_FLOW, dirX / 2.0);
+        else if (x > 0)
+            flows.set(x - 1, y, HORIZONTAL_FLOW, dirX / 2.0);
+        if (dirY > 0)
+            flows.set(x, y, VERTICAL_FLOW, dirY / 2.0);
+        else if (y > 0)
+            flows.set(x, y - 1, VERTICAL_FLOW, dirY / 2.0);
+        //divergence[x][y] = 0;
+        //cellType[x][y] = INFLOW_CELL;
+    }
+
+    /**
+     * Randomizes a color double[3] array.
+     *
+     * @param color The color to modify
+     * @return a double[3] array containing the modified color.
+     */
+    public double[] randomizeColor(double[] color) {
+        double noise = random.nextDouble() / 2 + 0.5;
+        return new double[]{noise * color[0], noise * color[1], noise * color[2]};
+    }
+
+    /**
+     * Adds force between two neighbouring cells
+     *
+     * @param cell1X The first cells horizontal position.
+     * @param cell1Y The first cells vertical position.
+     * @param cell2X The second cells horizontal position.
+     * @param cell2Y The second cells vertical position.
+     * @param dirX   The horizontal velocity.
+     * @param dirY   The vertical velocity.
+     * @param random Decides if the velocity should be random.
+     */
+    public void addNewForceBetweenCells(int cell1X, int cell1Y, int cell2X, int cell2Y, int dirX, int dirY, boolean random) {
+        Random rng = this.random;
+        //Bounds Check
+        if (cell1X > cols - 1 || cell1X < 0 || cell1Y > rows - 1 || cell1Y < 0 ||
+                cell2X > cols - 1 || cell2X < 0 || cell2Y > rows - 1 || cell2Y < 0
+        ) {
+            return;
+        }
+        wakeCell(cell1X, cell1Y);
+        wakeCell(cell2X, cell2Y);
+        maxVelocity = Math.max(maxVelocity, 10); //A cell's velocity is at most the largest flow next to it
+        if (cell1X < cell2X) {
+            flows.set(cell1X, cell1Y, HORIZONTAL_FLOW, random ? rng.nextDouble() * 10 : 10);
+        }
+        if (cell2X < cell1X) {
+            flows.set(cell2X, cell2Y, HORIZONTAL_FLOW, random ? -rng.nextDouble() * 10 : -10);
+        }
+        if (cell1Y < cell2Y) {
+            flows.set(cell1X, cell1Y, VERTICAL_FLOW, random ? rng.nextDouble() * 10 : 10);
+        }
+        if (cell2Y < cell1Y) {
+            flows.set(cell2X, cell2Y, VERTICAL_FLOW, random ? -rng.nextDouble() * 10 : -10);
+        }
+    }
+
+    /**
+     * Moves the particles with the flow for the current dt and respawns the expired ones.
+     */
+    public void moveParticles()
+    {
+        particles.move(this);
+    }
+
+    public double[] pressureDerivativeAtCell(int x, int y) {
+        if(!isCellInGrid(x,y))
+            return new double[]{0,0};
+        double velX = 0;
+        double velY = 0;
+        if(isCellInGrid(x+1,y)){
+            velX += pressure.get(x, y, 0)-pressure.get(x+1, y, 0);
+        }
+        if(isCellInGrid(x,y+1)) {
+            velY += pressure.get(x, y, 0)-pressure.get(x, y+1, 0);
+        }
+        if(isCellInGrid(x,y-1)) {
+            velY -= pressure.get(x, y, 0)-pressure.get(x, y-1, 0);
+        }
+        if(isCellInGrid(x-1,y)) {
+            velX -= pressure.get(x, y, 0)-pressure.get(x-1, y, 0);
+        }
+        return new double[]{velX,velY};
+    }
+
+    public double[] pressureDerivative(double x, double y){
+        double[] tl = pressureDerivativeAtCell((int) Math.floor(x), (int) Math.ceil(y));
+        double[] tr = pressureDerivativeAtCell((int) Math.ceil(x), (int) Math.ceil(y));
+        double[] bl = pressureDerivativeAtCell((int) Math.floor(x), (int) Math.floor(y));
+        double[] br = pressureDerivativeAtCell((int) Math.ceil(x), (int) Math.floor(y));
+
+        double velX = twoDimensionLerp(tl[0],tr[0],bl[0],br[0],(x-(int)x),(y-(int)y));
+        double velY = twoDimensionLerp(tl[1],tr[1],bl[1],br[1],(x-(int)x),(y-(int)y));
+
+        return new double[]{velX,velY};
+    }
+
+    /**
+     * Does a whole simulation step including diffusion, divergence suppression, velocity and color advection and inflow addition / operation.
+     * The step advances the simulation by timeStep. It is split into equal substeps when the fastest velocity would
+     * carry a backtrace further than cflNumber cells, so fast inflows stay accurate while calm frames run in one go.
+     * When that would take more than maxSubsteps the step still runs with maxSubsteps, stepCfl tells by how much it
+     * exceeds cflNumber.
+     * The fps are calculated based on the frequency this function is called.
+     * The durations of the single phases are recorded in timings, unless it is disabled, summed over all substeps.
+     */
+    public void SimulationStep() {
+        long stepStart = timings.start();
+        long time = stepStart;
+
+        if (cellTypesChanged)
+            updateNeighbourCounts();
+        substeps = getSubsteps(timeStep);
+        dt = timeStep / substeps;
+        stepCfl = maxVelocity * dt;
+        for (int substep = 0; substep < substeps; substep++) {
+            time = simulateSubstep(substep == 0, time);
+        }
+
+        timings.end(SimulationPhase.STEP, stepStart);
+        timings.endStep();
+
+        double delta = (System.nanoTime() - oldTime);
+        double currentFps = 1000000000.0 / delta;
+        oldTime = System.nanoTime();
+        fpsBuffer[fpsBufferPosition] = currentFps;
+        fpsBufferPosition = (fpsBufferPosition + 1) % fpsAverage;
+        if (fpsBufferCount < fpsAverage) {
+            fpsBufferCount++;
+        } else {
+            fps = 0;
+            for (double f : fpsBuffer) {
+                fps += f;
+            }
+            fps /= fpsAverage;
+        }
+    }
+
+    /**
+     * @param time The simulated time to advance.
+     * @return the number of substeps that keeps every backtrace within cflNumber cells, between 1 and maxSubsteps.
+     * The velocities are those of the last calculateSummedFlows and the inflows and forces added since then.
+     */
+    public int getSubsteps(double time) {
+        int needed = (int) Math.ceil(maxVelocity * time / cflNumber);
+        return Math.max(1, Math.min(maxSubsteps, needed));
+    }
+
+    /**
+     * Runs all phases of a step for the length dt.
+     *
+     * @param first Moving inflows only move once per step, in the first substep.
+     * @param time  The value of the timings for the phase that starts now.
+     * @return the value of the timings at the end of the substep.
+     */
+    private long simulateSubstep(boolean first, long time) {
+        updateAwakeTiles();
+        time = timings.end(SimulationPhase.ACTIVITY, time);
+
+        calculateDivergence();
+        time = timings.end(SimulationPhase.DIVERGENCE, time);
+
+        diffuse();
+        time = timings.end(SimulationPhase.DIFFUSE, time);
+
+        //calculatePressure();
+
+        calculateDivergence();
+        time = timings.end(SimulationPhase.DIVERGENCE, time);
+
+        //Force steps
+        if (projectionMethod == ProjectionMethod.MULTIGRID) {
+            projectMultigrid();
+        } else if (projectionMethod == ProjectionMethod.CONJUGATE_GRADIENT) {
+            projectConjugateGradient();
+        } else {
+            projectionIterations = 0;
+            while (projectionIterations < gaussSeidelIterations) {
+                calculateDivergence();
+                if (getDivergenceResidual() < projectionTolerance)
+                    break;
+                projectGaussSeidel();
+                projectionIterations++;
+            }
+        }
+        calculateDivergence();
+        projectionResidual = getDivergenceResidual();
+        time = timings.end(SimulationPhase.PROJECTION, time);
+
+        //Old way of color movement
+        //CalculateColorMovement();
+
+        advect();
+        time = timings.end(SimulationPhase.ADVECT, time);
+
+        calculateDivergence();
+        time = timings.end(SimulationPhase.DIVERGENCE, time);
+
+        moveParticles();
+        time = timings.end(SimulationPhase.MOVE_PARTICLES, time);
+
+        for (InflowInfo inflow : sceneInfo.inflowInfos) {
+            if (first)
+                inflow.tick(mouseX, mouseY);
+            if (!isCellInGrid(inflow.x, inflow.y))
+                continue; //Scenes can be run on smaller grids than they were made for
+            if (first && inflow.emitter != null)
+                particles.emit(inflow.emitter, inflow.x, inflow.y);
+            addInflow(inflow.x, inflow.y, inflow.color[0], inflow.color[1], inflow.color[2], inflow.dirX, inflow.dirY, inflow.noise);
+        }
+        time = timings.end(SimulationPhase.INFLOWS, time);
+
+        if (skipQuietTiles)
+            scheduler.forEachTile(activityKernel);
+        return timings.end(SimulationPhase.ACTIVITY, time);
+    }
+}
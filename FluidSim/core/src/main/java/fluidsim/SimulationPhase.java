@@ -0,0 +1,30 @@
+package fluidsim;
+
+/**
+ * The parts of a SimulationStep that are timed separately, see PhaseTimings.
+ */
+public enum SimulationPhase {
+    /**
+     * The calls to calculateDivergence outside of the projection.
+     */
+    DIVERGENCE,
+    DIFFUSE,
+    /**
+     * Removing the divergence, including the divergence calculations of the Gauss-Seidel loop.
+     */
+    PROJECTION,
+    /**
+     * Advection of velocities and colors, they share one pass.
+     */
+    ADVECT,
+    MOVE_PARTICLES,
+    INFLOWS,
+    /**
+     * Deciding which tiles are quiet enough to be left out, see Simulation.skipQuietTiles.
+     */
+    ACTIVITY,
+    /**
+     * The whole SimulationStep.
+     */
+    STEP
+}
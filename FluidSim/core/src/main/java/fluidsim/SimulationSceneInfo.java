@@ -0,0 +1,323 @@
+package fluidsim;
+
+public class SimulationSceneInfo {
+    public String name; //The name of the preset, null for other scenes
+    public String file; //The file SceneLoader read the scene from, null for scenes made in code
+    public int rows;
+    public int cols;
+    public double[] preWarmColors;
+    public InflowInfo[] inflowInfos;
+    public boolean[] obstacles; //Row-major like Simulation.cellType, true for obstacle cells, null if there are none
+    public int particleCount = -1; //Ambient particles spread over the grid, -1 for one per cell
+    public int particleBudget = -1; //Particles that may exist at the same time, -1 for what the ambient particles and emitters need
+    public Long seed; //Decides everything random in the simulation, null picks a new seed for every simulation
+    public double velocityDiffusion = -1; //Simulation.velocityDiffuseCoefficient, -1 for the default
+    public double colorDiffusion = -1; //The diffuse coefficient of the colors, -1 for the default
+    public DiffusionMethod diffusionMethod; //null keeps the default of the simulation
+    public int diffusionIterations = -1; //Simulation.diffusionIterations, -1 for the default
+    public double timeStep = -1; //Simulation.timeStep, -1 for the default, the particle budget is sized for it
+
+
+    public SimulationSceneInfo(int cols, int rows, InflowInfo[] inflowInfos, double[] preWarmColors) {
+        this.rows = rows;
+        this.cols = cols;
+        this.inflowInfos = inflowInfos;
+        this.preWarmColors = preWarmColors;
+    }
+
+    public SimulationSceneInfo(int cols, int rows, InflowInfo[] inflowInfos) {
+        this.rows = rows;
+        this.cols = cols;
+        this.inflowInfos = inflowInfos;
+        this.preWarmColors = new double[3];
+    }
+
+
+    //---------------- PRESETS -------------------------------
+
+    public static SimulationSceneInfo shootMouseScene = new SimulationSceneInfo(50, 50,
+            new InflowInfo[]{
+                    new InflowInfo(50 / 2, 50 / 2, 0, 0, new double[]{180, 235, 28}, true, (info) -> {
+                        info.dirX = (info.mouseX - info.x);
+                        info.dirY = (info.mouseY - info.y);
+                    }),
+            }, new double[]{12, 24, 2});
+
+    public static SimulationSceneInfo multiShootMouseScene = new SimulationSceneInfo(40, 40,
+            new InflowInfo[]{
+                    new InflowInfo(40 / 5, 40 / 2, 0, 1, new double[]{0, 0, 255}, true, (info) -> {
+                        info.dirX = (info.mouseX - info.x) / (40 / 2.0) * 10;
+                        info.dirY = (info.mouseY - info.y) / (40 / 2.0) * 10;
+                    }),
+                    new InflowInfo(40 / 2, 40 / 2, 0, 1, new double[]{0, 255, 0}, true, (info) -> {
+                        info.dirX = (info.mouseX - info.x) / (40 / 2.0) * 10;
+                        info.dirY = (info.mouseY - info.y) / (40 / 2.0) * 10;
+                    }),
+                    new InflowInfo(40 / 5 * 4, 40 / 2, 0, 1, new double[]{255, 0, 0}, true, (info) -> {
+                        info.dirX = (info.mouseX - info.x) / (40 / 2.0) * 10;
+                        info.dirY = (info.mouseY - info.y) / (40 / 2.0) * 10;
+                    })
+            });
+    public static SimulationSceneInfo clashScene = new SimulationSceneInfo(40, 20,
+            new InflowInfo[]{
+                    new InflowInfo(10, 10, 10, 0, new double[]{255, 127, 0}, true, (info) -> {
+                    }),
+                    new InflowInfo(30, 10, -10, 0, new double[]{0, 127, 255}, true, (info) -> {
+                    }),
+            });
+
+    public static SimulationSceneInfo vortexScene = new SimulationSceneInfo(60, 60,
+            new InflowInfo[]{
+                    new InflowInfo(30, 10, 10, 0, new double[]{255, 255, 255}, true, (info) -> {
+                    }),
+                    new InflowInfo(10, 30, 0, -10, new double[]{0, 0, 0}, false, (info) -> {
+                    }),
+                    new InflowInfo(30, 50, -10, 0, new double[]{255, 255, 255}, true, (info) -> {
+                    }),
+                    new InflowInfo(50, 30, 0, 10, new double[]{0, 0, 0}, false, (info) -> {
+                    }),
+            });
+
+    public static SimulationSceneInfo movingInflowScene = new SimulationSceneInfo(60, 30,
+            new InflowInfo[]{
+                    new InflowInfo(10, 10, 0, 10, new double[]{3, 252, 248}, true, (info) -> {
+                        info.x = (int) (Math.sin(info.tick / 40f) * 20 + 30);
+                    }),
+                    new InflowInfo(10, 20, 0, -10, new double[]{252, 3, 115}, true, (info) -> {
+                        info.x = (int) ((-Math.sin((info.tick) / 40f)) * 20 + 30);
+                    }),
+            });
+
+    private static final double[] MIXING_RED = new double[]{255, 0, 0};
+    private static final double[] MIXING_GREEN = new double[]{0, 255, 0};
+
+    public static SimulationSceneInfo colorMixingScene = new SimulationSceneInfo(20, 30,
+            new InflowInfo[]{
+                    new InflowInfo(10, 3, 0, 10, new double[]{255, 0, 0}, false, (info) -> {
+                        if (info.tick % 70 > 35) {
+                            info.color = MIXING_RED;
+                        } else {
+                            info.color = MIXING_GREEN;
+                        }
+                    }),
+            });
+
+    public static SimulationSceneInfo colorSplashesScene = new SimulationSceneInfo(60, 60,
+            new InflowInfo[]{
+                    new InflowInfo(1, 1, 0, 0, new double[]{255, 255, 255}, true, (info) -> {
+                        if (info.tick % 50 == 0 || info.tick == 1) {
+                            info.x = (int) (info.random.nextDouble() * 55 + 2);
+                            info.y = (int) (info.random.nextDouble() * 55 + 2);
+                            info.color[0] = info.random.nextDouble() * 100 + 155; //Written in place, steps do not allocate
+                            info.color[1] = info.random.nextDouble() * 100 + 155;
+                            info.color[2] = info.random.nextDouble() * 100 + 155;
+                            info.dirX = info.random.nextDouble() * 20 - 10;
+                            info.dirY = info.random.nextDouble() * 20 - 10;
+                        }
+                    }),
+                    new InflowInfo(1, 1, 0, 0, new double[]{255, 255, 255}, true, (info) -> {
+                        if (info.tick % 50 == 35 || info.tick == 1) {
+                            info.x = (int) (info.random.nextDouble() * 55 + 2);
+                            info.y = (int) (info.random.nextDouble() * 55 + 2);
+                            info.color[0] = info.random.nextDouble() * 100 + 155;
+                            info.color[1] = info.random.nextDouble() * 100 + 155;
+                            info.color[2] = info.random.nextDouble() * 100 + 155;
+                            info.dirX = info.random.nextDouble() * 20 - 10;
+                            info.dirY = info.random.nextDouble() * 20 - 10;
+                        }
+                    }),
+                    new InflowInfo(1, 1, 0, 0, new double[]{255, 255, 255}, true, (info) -> {
+                        if (info.tick % 50 == 20 || info.tick == 1) {
+                            info.x = (int) (info.random.nextDouble() * 55 + 2);
+                            info.y = (int) (info.random.nextDouble() * 55 + 2);
+                            info.color[0] = info.random.nextDouble() * 100 + 155;
+                            info.color[1] = info.random.nextDouble() * 100 + 155;
+                            info.color[2] = info.random.nextDouble() * 100 + 155;
+                            info.dirX = info.random.nextDouble() * 20 - 10;
+                            info.dirY = info.random.nextDouble() * 20 - 10;
+                        }
+                    }),
+                    new InflowInfo(1, 1, 0, 0, new double[]{255, 255, 255}, true, (info) -> {
+                        if (info.tick % 50 == 15 || info.tick == 1) {
+                            info.x = (int) (info.random.nextDouble() * 55 + 2);
+                            info.y = (int) (info.random.nextDouble() * 55 + 2);
+                            info.color[0] = info.random.nextDouble() * 100 + 155;
+                            info.color[1] = info.random.nextDouble() * 100 + 155;
+                            info.color[2] = info.random.nextDouble() * 100 + 155;
+                            info.dirX = info.random.nextDouble() * 20 - 10;
+                            info.dirY = info.random.nextDouble() * 20 - 10;
+                        }
+                    }),
+                    new InflowInfo(1, 1, 0, 0, new double[]{255, 255, 255}, true, (info) -> {
+                        if (info.tick % 50 == 40 || info.tick == 1) {
+                            info.x = (int) (info.random.nextDouble() * 55 + 2);
+                            info.y = (int) (info.random.nextDouble() * 55 + 2);
+                            info.color[0] = info.random.nextDouble() * 100 + 155;
+                            info.color[1] = info.random.nextDouble() * 100 + 155;
+                            info.color[2] = info.random.nextDouble() * 100 + 155;
+                            info.dirX = info.random.nextDouble() * 20 - 10;
+                            info.dirY = info.random.nextDouble() * 20 - 10;
+                        }
+                    }),
+            });
+
+    public static SimulationSceneInfo waterFallScene = new SimulationSceneInfo(70, 70,
+            new InflowInfo[]{
+                    new InflowInfo(30, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(31, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(32, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(33, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(34, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(35, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(36, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(37, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(38, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(39, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+                    new InflowInfo(40, 30, 0, 10, new double[]{28, 163, 235}, true, (info) -> {
+                    }),
+            });
+
+    public static SimulationSceneInfo shootCircleScene = new SimulationSceneInfo(60, 60,
+            new InflowInfo[]{
+                    new InflowInfo(10, 3, 0, 10, new double[]{252, 88, 0}, false, (info) -> {
+                        info.x = (int)((Math.sin(info.tick / 40.0) * 25) + 30);
+                        info.y = (int)((Math.cos(info.tick / 40.0) * 25) + 30);
+                        info.dirX = (30 - ((Math.sin(info.tick / 40.0) * 25) + 30));
+                        info.dirY = (30 - ((Math.cos(info.tick / 40.0) * 25) + 30));
+                    }),
+                    new InflowInfo(10, 3, 0, 10, new double[]{0, 109, 252}, false, (info) -> {
+                        info.x = (int)((-Math.sin(info.tick / 40.0) * 25) + 30);
+                        info.y = (int)((-Math.cos(info.tick / 40.0) * 25) + 30);
+                        info.dirX = (30 - ((-Math.sin(info.tick / 40.0) * 25) + 30));
+                        info.dirY = (30 - ((-Math.cos(info.tick / 40.0) * 25) + 30));
+                    }),
+            });
+
+    /**
+     * Looks up a preset by the name of its field, for example "waterFallScene".
+     *
+     * @param name The name of the preset, the "Scene" suffix may be left out.
+     * @return the preset or null if there is none with that name.
+     */
+    public static SimulationSceneInfo getPreset(String name) {
+        String key = name.endsWith("Scene") ? name : name + "Scene";
+        switch (key) {
+            case "shootMouseScene": return shootMouseScene;
+            case "multiShootMouseScene": return multiShootMouseScene;
+            case "clashScene": return clashScene;
+            case "vortexScene": return vortexScene;
+            case "movingInflowScene": return movingInflowScene;
+            case "colorMixingScene": return colorMixingScene;
+            case "colorSplashesScene": return colorSplashesScene;
+            case "waterFallScene": return waterFallScene;
+            case "shootCircleScene": return shootCircleScene;
+            default: return null;
+        }
+    }
+
+    public static String[] getPresetNames() {
+        return new String[]{"shootMouseScene", "multiShootMouseScene", "clashScene", "vortexScene", "movingInflowScene",
+                "colorMixingScene", "colorSplashesScene", "waterFallScene", "shootCircleScene"};
+    }
+
+    static {
+        for (String name : getPresetNames()) {
+            getPreset(name).name = name;
+        }
+    }
+
+    /**
+     * @return whether the cell is an obstacle, false for cells outside of the grid.
+     */
+    public boolean isObstacle(int x, int y) {
+        return obstacles != null && x >= 0 && x < cols && y >= 0 && y < rows && obstacles[y * cols + x];
+    }
+
+    /**
+     * Marks a cell as obstacle or fluid, creates the obstacle map on first use.
+     */
+    public void setObstacle(int x, int y, boolean obstacle) {
+        if (obstacles == null) {
+            if (!obstacle)
+                return;
+            obstacles = new boolean[cols * rows];
+        }
+        obstacles[y * cols + x] = obstacle;
+    }
+
+    /**
+     * @return the number of ambient particles, at most the budget if one is set.
+     */
+    public int getAmbientParticleCount() {
+        int count = particleCount >= 0 ? particleCount : cols * rows;
+        return particleBudget >= 0 ? Math.min(count, particleBudget) : count;
+    }
+
+    /**
+     * @param timeStep The simulated time per step, longer steps age the emitted particles faster.
+     * @return the particle budget, by default enough for the ambient particles and all emitters running steadily.
+     */
+    public int getParticleBudget(double timeStep) {
+        if (particleBudget >= 0)
+            return particleBudget;
+        long budget = getAmbientParticleCount();
+        for (InflowInfo inflow : inflowInfos) {
+            if (inflow.emitter != null)
+                budget += inflow.emitter.getSteadyCount(timeStep);
+        }
+        return (int) Math.min(budget, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Creates a copy of this scene with a different grid size. The inflows and obstacles keep their cell positions,
+     * the inflows that end up outside of the grid are skipped by the simulation.
+     */
+    public SimulationSceneInfo resized(int cols, int rows) {
+        SimulationSceneInfo copy = copy();
+        copy.cols = cols;
+        copy.rows = rows;
+        if (obstacles != null) {
+            copy.obstacles = null;
+            for (int y = 0; y < Math.min(rows, this.rows); y++) {
+                for (int x = 0; x < Math.min(cols, this.cols); x++) {
+                    if (obstacles[y * this.cols + x])
+                        copy.setObstacle(x, y, true);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a copy whose inflows can be ticked without changing the inflows of this scene.
+     */
+    public SimulationSceneInfo copy() {
+        InflowInfo[] inflows = new InflowInfo[inflowInfos.length];
+        for (int i = 0; i < inflows.length; i++) {
+            inflows[i] = inflowInfos[i].copy();
+        }
+        SimulationSceneInfo copy = new SimulationSceneInfo(cols, rows, inflows, preWarmColors.clone());
+        copy.name = name;
+        copy.file = file;
+        copy.obstacles = obstacles != null ? obstacles.clone() : null;
+        copy.seed = seed;
+        copy.particleCount = particleCount;
+        copy.particleBudget = particleBudget;
+        copy.velocityDiffusion = velocityDiffusion;
+        copy.colorDiffusion = colorDiffusion;
+        copy.diffusionMethod = diffusionMethod;
+        copy.diffusionIterations = diffusionIterations;
+        copy.timeStep = timeStep;
+        return copy;
+    }
+}
@@ -0,0 +1,203 @@
+package fluidsim;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Runs a Simulation on its own thread at its own rate and publishes a FrameSnapshot after every step
+ * through a TripleBuffer, so a viewer draws the latest frame without ever waiting for the simulation or the other way round.
+ * Everything other threads want to change, mouse forces as well as pausing and stepping, is queued as a command
+ * and runs on the simulation thread between two steps. Nothing else may touch the simulation while the thread runs.
+ */
+public final class SimulationThread {
+    private static final long PAUSED_PERIOD = 1000000000 / 60; //Snapshots per second while paused
+
+    public final Simulation sim;
+    public volatile double stepsPerSecond; //0 runs as fast as possible
+    public volatile boolean captureDebugFields; //Copies the fields the debug overlays draw into every snapshot
+    public volatile boolean captureParticles;
+    public volatile int inspectX; //The cell whose values every snapshot contains
+    public volatile int inspectY;
+
+    private final TripleBuffer<FrameSnapshot> frames = new TripleBuffer<>(FrameSnapshot::new);
+    private final ConcurrentLinkedQueue<Consumer<Simulation>> commands = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private boolean paused; //Only used on the simulation thread
+    private int pendingSteps;
+    private long steps;
+    private FrameRecorder recorder; //null while not recording
+    private InputLog inputLog; //null while the inputs are not recorded
+    private Path inputLogFile;
+
+    /**
+     * @param sim            The simulation, from now on only this thread may use it.
+     * @param stepsPerSecond The rate of the steps, 0 runs them as fast as possible.
+     */
+    public SimulationThread(Simulation sim, double stepsPerSecond) {
+        this.sim = sim;
+        this.stepsPerSecond = stepsPerSecond;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        publish(); //Readers get the initial state until the first step is done
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the thread and waits until the current step is done. The simulation can be used by the caller afterwards.
+     * A running recording is finished.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        runCommands(); //Commands queued too late still run, so a recording started just before is finished
+        closeRecorder();
+        saveInputLog();
+    }
+
+    /**
+     * Records the following steps, replacing and finishing a running recording.
+     */
+    public void startRecording(FrameRecorder recorder) {
+        submit(s -> {
+            closeRecorder();
+            this.recorder = recorder;
+        });
+    }
+
+    /**
+     * Finishes the running recording. The next step waits until the writer has written the queued frames.
+     */
+    public void stopRecording() {
+        submit(s -> closeRecorder());
+    }
+
+    /**
+     * Logs every InputEvent submitted from the first step on, so the run can be replayed. Only call before start,
+     * the log has to be started from the simulation before its first step.
+     *
+     * @param file Where the log is saved once stopRecordingInputs or stop is called.
+     */
+    public void recordInputs(InputLog log, Path file) {
+        if (thread.isAlive())
+            throw new IllegalStateException("Inputs can only be recorded from the first step on");
+        inputLog = log;
+        inputLogFile = file;
+    }
+
+    /**
+     * Saves the input log with the steps done so far and stops logging.
+     */
+    public void stopRecordingInputs() {
+        submit(s -> saveInputLog());
+    }
+
+    /**
+     * Queues a change to the simulation, it runs on the simulation thread before the next step.
+     */
+    public void submit(Consumer<Simulation> command) {
+        commands.add(command);
+        LockSupport.unpark(thread);
+    }
+
+    public void togglePause() {
+        submit(s -> paused = !paused);
+    }
+
+    /**
+     * Does a single step while paused.
+     */
+    public void step() {
+        submit(s -> {
+            if (paused)
+                pendingSteps++;
+        });
+    }
+
+    /**
+     * @return the snapshot of the latest step. It stays unchanged until the next call,
+     * which has to come from the same thread, usually the event dispatch thread.
+     */
+    public FrameSnapshot getLatestFrame() {
+        return frames.read();
+    }
+
+    private void run() {
+        long nextStart = System.nanoTime();
+        while (running) {
+            runCommands();
+            long now = System.nanoTime();
+            if (now - nextStart >= 0) {
+                if (!paused || pendingSteps > 0) {
+                    if (paused)
+                        pendingSteps--;
+                    sim.SimulationStep();
+                    steps++;
+                    if (recorder != null)
+                        recorder.onStep(sim, steps);
+                }
+                publish(); //Also while paused, so the inspected cell follows the mouse
+
+                double rate = stepsPerSecond;
+                long period = rate > 0 ? (long) (1e9 / rate) : 0;
+                if (paused && pendingSteps == 0)
+                    period = Math.max(period, PAUSED_PERIOD);
+                //A step that took longer than the period delays the next one instead of being caught up on
+                nextStart = Math.max(nextStart + period, now);
+            }
+
+            //Commands wake the thread early, they are applied right away and the next step still waits for its time
+            long wait = nextStart - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(this, wait);
+        }
+    }
+
+    private void runCommands() {
+        Consumer<Simulation> command;
+        while ((command = commands.poll()) != null) {
+            if (inputLog != null && command instanceof InputEvent)
+                inputLog.add(steps, (InputEvent) command);
+            command.accept(sim);
+        }
+    }
+
+    private void closeRecorder() {
+        if (recorder == null)
+            return;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            System.err.println("Recording failed: " + e.getMessage());
+        }
+        recorder = null;
+    }
+
+    private void saveInputLog() {
+        if (inputLog == null)
+            return;
+        inputLog.steps = steps;
+        try {
+            inputLog.save(inputLogFile);
+        } catch (IOException e) {
+            System.err.println("Saving the inputs failed: " + e.getMessage());
+        }
+        inputLog = null;
+    }
+
+    private void publish() {
+        frames.getWriteBuffer().capture(sim, steps, captureDebugFields, captureParticles, inspectX, inspectY);
+        frames.publish();
+    }
+}
@@ -0,0 +1,195 @@
+package fluidsim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs per-cell kernels of a Simulation in parallel.
+ * The grid is cut into square tiles which the calling thread and parallelism - 1 worker threads claim one after another
+ * until none are left, so faster workers take over the tiles of slower ones. The workers are parked between kernels and
+ * woken with LockSupport, which keeps dispatching a kernel free of allocations. A ForkJoinPool allocates when it is
+ * invoked from a thread outside of the pool.
+ */
+public class TileScheduler {
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    /**
+     * Work on one rectangular tile of cells.
+     */
+    public interface TileKernel {
+        /**
+         * @param tile The index of the tile, between 0 and getTileCount() - 1.
+         * @param x0   The first column of the tile.
+         * @param y0   The first row of the tile.
+         * @param x1   The column after the last column of the tile.
+         * @param y1   The row after the last row of the tile.
+         */
+        void run(int tile, int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Work on a range of items that are not laid out as a grid, for example particles or the rows of a coarser grid.
+     */
+    public interface RangeKernel {
+        /**
+         * @param from The first item.
+         * @param to   The item after the last item.
+         */
+        void run(int from, int to);
+    }
+
+    public final int cols;
+    public final int rows;
+    public final int tileSize;
+    public final int tilesX;
+    public final int tilesY;
+    public final int parallelism;
+
+    private final Thread[] workers; //parallelism - 1 threads, the calling thread is the last worker
+    private final AtomicInteger nextItem = new AtomicInteger();
+    private final AtomicInteger runningWorkers = new AtomicInteger(); //Workers still busy with the current job
+    private volatile int generation; //Counts the jobs, a worker runs each one once
+    private volatile Thread caller; //The thread waiting for the current job
+    private volatile boolean stopped;
+    private volatile Throwable failure; //Thrown by a kernel on a worker thread, rethrown on the calling thread
+
+    //The job currently being dispatched, only one runs at a time
+    private TileKernel tileKernel;
+    private RangeKernel rangeKernel;
+    private int itemCount;
+    private int rangeCount;
+    private int rangeChunk;
+
+    /**
+     * Creates the scheduler and starts its worker threads.
+     *
+     * @param cols        The horizontal size of the grid.
+     * @param rows        The vertical size of the grid.
+     * @param tileSize    The edge length of a tile in cells.
+     * @param parallelism The number of threads working on a kernel including the calling thread, 1 runs every kernel on the calling thread.
+     */
+    public TileScheduler(int cols, int rows, int tileSize, int parallelism) {
+        this.cols = cols;
+        this.rows = rows;
+        this.tileSize = Math.max(1, tileSize);
+        this.parallelism = Math.max(1, parallelism);
+        tilesX = (cols + this.tileSize - 1) / this.tileSize;
+        tilesY = (rows + this.tileSize - 1) / this.tileSize;
+        workers = new Thread[this.parallelism - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "fluidsim-worker-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getTileCount() {
+        return tilesX * tilesY;
+    }
+
+    /**
+     * Runs the kernel once for every tile and returns when all tiles are done.
+     * Writes of the kernel are visible to the caller afterwards.
+     *
+     * @param kernel The work to do per tile. Kernels may only write to cells of their own tile.
+     */
+    public void forEachTile(TileKernel kernel) {
+        tileKernel = kernel;
+        rangeKernel = null;
+        dispatch(getTileCount());
+    }
+
+    /**
+     * Splits the items 0 to count - 1 into chunks and runs the kernel once for every chunk.
+     *
+     * @param count  The number of items.
+     * @param kernel The work to do per chunk. Kernels may only write to their own items.
+     */
+    public void forEachRange(int count, RangeKernel kernel) {
+        tileKernel = null;
+        rangeKernel = kernel;
+        rangeCount = count;
+        rangeChunk = Math.max(1, count / (parallelism * 4));
+        dispatch((count + rangeChunk - 1) / rangeChunk);
+    }
+
+    /**
+     * Stops the worker threads. The scheduler can not be used afterwards.
+     */
+    public void shutdown() {
+        stopped = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    private void dispatch(int items) {
+        itemCount = items;
+        nextItem.set(0);
+        try {
+            if (workers.length == 0 || items == 1) {
+                runItems();
+            } else {
+                caller = Thread.currentThread();
+                runningWorkers.set(workers.length);
+                generation++; //Publishes the job to the workers
+                for (Thread worker : workers) {
+                    LockSupport.unpark(worker);
+                }
+                try {
+                    runItems();
+                } catch (Throwable e) {
+                    failure = e; //Rethrown below, once the workers are done with the job and its fields can be reset
+                }
+                while (runningWorkers.get() != 0) {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            tileKernel = null;
+            rangeKernel = null;
+        }
+        Throwable e = failure;
+        if (e != null) {
+            failure = null;
+            if (e instanceof Error)
+                throw (Error) e;
+            throw (RuntimeException) e; //Kernels cannot throw checked exceptions
+        }
+    }
+
+    private void runItems() {
+        int item;
+        while ((item = nextItem.getAndIncrement()) < itemCount) {
+            if (tileKernel != null) {
+                int tx = item % tilesX;
+                int ty = item / tilesX;
+                int x0 = tx * tileSize;
+                int y0 = ty * tileSize;
+                tileKernel.run(item, x0, y0, Math.min(x0 + tileSize, cols), Math.min(y0 + tileSize, rows));
+            } else {
+                int from = item * rangeChunk;
+                rangeKernel.run(from, Math.min(from + rangeChunk, rangeCount));
+            }
+        }
+    }
+
+    private void work() {
+        int done = 0;
+        while (true) {
+            while (generation == done && !stopped) {
+                LockSupport.park(this);
+            }
+            if (stopped)
+                return;
+            done = generation;
+            try {
+                runItems();
+            } catch (Throwable e) {
+                failure = e;
+            }
+            if (runningWorkers.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package fluidsim;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed set of buckets, so recording never allocates.
+ * Values below 64 ns get a bucket each, above that every power of two is split into 32 buckets,
+ * which keeps the error of a percentile below about 3%.
+ * <p>
+ * Recording is meant to happen on one thread. Other threads may read at any time,
+ * they then see a slightly inconsistent but still usable state.
+ */
+public final class TimingHistogram {
+    private static final int LINEAR_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int FIRST_EXPONENT = 6; //log2(LINEAR_BUCKETS)
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * @param nanos The duration to add, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * @param percentile Between 0 and 100, for example 99 for the value 99% of the recordings are below.
+     * @return the duration in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = count;
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank)
+                return Math.min(Math.max(valueOf(i), getMin()), max);
+        }
+        return max;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the middle of the range of values that end up in the bucket.
+     */
+    private static long valueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS)
+            return bucket;
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return subBucket * width + width / 2;
+    }
+}
@@ -0,0 +1,51 @@
+package fluidsim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands values from one writing thread to one reading thread without locks, neither of them ever waits.
+ * The writer fills the back buffer and publishes it, which swaps it with the middle buffer.
+ * The reader swaps the middle buffer with its front buffer whenever a newer one was published and otherwise keeps
+ * its front buffer, so it always sees the latest complete value and the writer never touches what is being read.
+ *
+ * @param <T> The type of the buffers, they are created once and then reused.
+ */
+public final class TripleBuffer<T> {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; //Set in middle while the reader has not taken the published buffer
+
+    private final Object[] buffers;
+    private final AtomicInteger middle = new AtomicInteger(2);
+    private int back = 1; //Only used by the writer
+    private int front = 0; //Only used by the reader
+
+    public TripleBuffer(Supplier<T> factory) {
+        buffers = new Object[]{factory.get(), factory.get(), factory.get()};
+    }
+
+    /**
+     * @return the buffer the writer fills next. Only call from the writing thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Makes the write buffer the latest value and gives the writer another buffer. Only call from the writing thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * @return the latest published value. It stays untouched until the next call. Only call from the reading thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T read() {
+        if ((middle.get() & FRESH) != 0)
+            front = middle.getAndSet(front) & INDEX_MASK;
+        return (T) buffers[front];
+    }
+}
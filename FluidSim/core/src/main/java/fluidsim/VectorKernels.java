@@ -0,0 +1,371 @@
+package fluidsim;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SimdKernels implemented with jdk.incubator.vector. Only loaded through SimdKernels.load.
+ * Every kernel splits a tile into the interior, where no neighbour can be outside of the grid, and the strips along
+ * the borders of the grid. The interior runs a whole vector of cells at a time without any branches,
+ * the strips and the cells left over at the end of a row use the scalar code of Simulation.
+ * Cell types are turned into masks, the vector code applies the same operations in the same order as the scalar code,
+ * so both produce bit identical flows and colors.
+ */
+final class VectorKernels implements SimdKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int FLOAT_LANES = FLOAT_SPECIES.length();
+
+    //Copies of the cell types as doubles, 1 where the type matches and 0 elsewhere, so they load as vectors
+    private double[] fluid;
+    private double[] inflow;
+    private double[] inverseNeighbourCounts; //Simulation.inverseNeighbourCounts, the weight of the neighbours when diffusing
+    private double[] openRight; //1 where the flow to the right neighbour is open, see Simulation.openFaces
+    private double[] openDown;
+    private boolean[] plainRows; //Rows whose inner cells and their neighbours all have four open sides, projected without the tables
+    private boolean[] fluidRows; //Rows of fluid cells only, inner cells between three of them diffuse without the masks
+    private int[] neighbourOffsets; //Index offsets of the eight neighbours in the order diffuseCell adds them
+    //The inflow and open face tables as floats, built instead of the double tables when the flows are FLOAT
+    private float[] inflowFloat;
+    private float[] openRightFloat;
+    private float[] openDownFloat;
+
+    @Override
+    public void updateCellTypes(Simulation sim) {
+        int cols = sim.cols;
+        int cells = cols * sim.rows;
+        if (plainRows == null || plainRows.length != sim.rows || neighbourOffsets[6] != cols) {
+            plainRows = new boolean[sim.rows];
+            fluidRows = new boolean[sim.rows];
+            neighbourOffsets = new int[]{-cols - 1, -cols, -cols + 1, -1, 1, cols - 1, cols, cols + 1};
+            fluid = null;
+            inflowFloat = null;
+        }
+        if (sim.precision == FieldPrecision.FLOAT) {
+            if (inflowFloat == null) {
+                inflowFloat = new float[cells];
+                openRightFloat = new float[cells];
+                openDownFloat = new float[cells];
+            }
+            for (int i = 0; i < cells; i++) {
+                inflowFloat[i] = sim.cellType[i] == Simulation.INFLOW_CELL ? 1 : 0;
+                openRightFloat[i] = (sim.openFaces[i] & Simulation.OPEN_RIGHT) != 0 ? 1 : 0;
+                openDownFloat[i] = (sim.openFaces[i] & Simulation.OPEN_DOWN) != 0 ? 1 : 0;
+            }
+        } else {
+            if (fluid == null) {
+                fluid = new double[cells];
+                inflow = new double[cells];
+                openRight = new double[cells];
+                openDown = new double[cells];
+            }
+            inverseNeighbourCounts = sim.inverseNeighbourCounts;
+            for (int i = 0; i < cells; i++) {
+                fluid[i] = sim.cellType[i] == Simulation.DEFAULT_CELL ? 1 : 0;
+                inflow[i] = sim.cellType[i] == Simulation.INFLOW_CELL ? 1 : 0;
+                openRight[i] = (sim.openFaces[i] & Simulation.OPEN_RIGHT) != 0 ? 1 : 0;
+                openDown[i] = (sim.openFaces[i] & Simulation.OPEN_DOWN) != 0 ? 1 : 0;
+            }
+        }
+        int rows = sim.rows;
+        for (int y = 0; y < rows; y++) {
+            fluidRows[y] = true;
+            for (int i = y * cols; i < (y + 1) * cols && fluidRows[y]; i++) {
+                fluidRows[y] = sim.cellType[i] == Simulation.DEFAULT_CELL;
+            }
+        }
+        for (int y = 0; y < rows; y++) {
+            //The cell, its right and its lower neighbour need fluid above and below them
+            plainRows[y] = y >= 1 && y < rows - 2 && fluidRows[y - 1] && fluidRows[y] && fluidRows[y + 1] && fluidRows[y + 2];
+        }
+    }
+
+    @Override
+    public void divergenceTile(Simulation sim, int tile, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        double[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        double[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        double[] divergence = array(sim.divergence, 0);
+        double max = 0;
+        double squared = 0;
+
+        //Interior: x > 0 and y > 0
+        int from = Math.min(Math.max(x0, 1), x1);
+        for (int y = y0; y < y1; y++) {
+            int x = x0;
+            if (y > 0) {
+                for (; x < from; x++) {
+                    double d = sim.calculateDivergenceSingle(x, y);
+                    max = Math.max(max, Math.abs(d));
+                    squared += d * d;
+                }
+                //Reduced once per row, vectors that stay alive across the scalar calls end up allocated
+                DoubleVector rowMax = DoubleVector.zero(SPECIES);
+                DoubleVector rowSquared = DoubleVector.zero(SPECIES);
+                for (int i = y * cols + x; x + LANES <= x1; x += LANES, i += LANES) {
+                    DoubleVector divergenceX = DoubleVector.fromArray(SPECIES, flowX, i).neg()
+                            .add(DoubleVector.fromArray(SPECIES, flowX, i - 1));
+                    DoubleVector divergenceY = DoubleVector.fromArray(SPECIES, flowY, i).neg()
+                            .add(DoubleVector.fromArray(SPECIES, flowY, i - cols));
+                    VectorMask<Double> isInflow = DoubleVector.fromArray(SPECIES, inflow, i).compare(VectorOperators.NE, 0);
+                    DoubleVector d = divergenceX.add(divergenceY).blend(0, isInflow);
+                    d.intoArray(divergence, i);
+                    rowMax = rowMax.max(d.abs());
+                    rowSquared = rowSquared.add(d.mul(d));
+                }
+                max = Math.max(max, rowMax.reduceLanes(VectorOperators.MAX));
+                squared += rowSquared.reduceLanes(VectorOperators.ADD);
+            }
+            for (; x < x1; x++) {
+                double d = sim.calculateDivergenceSingle(x, y);
+                max = Math.max(max, Math.abs(d));
+                squared += d * d;
+            }
+        }
+        sim.tileMaxDivergence[tile] = max;
+        sim.tileSquaredDivergence[tile] = squared;
+    }
+
+    @Override
+    public void projectGaussSeidelTile(Simulation sim, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        double[] oldFlowX = array(sim.oldFlows, Simulation.HORIZONTAL_FLOW);
+        double[] oldFlowY = array(sim.oldFlows, Simulation.VERTICAL_FLOW);
+        double[] flowX = array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        double[] flowY = array(sim.flows, Simulation.VERTICAL_FLOW);
+        double[] divergence = array(sim.divergence, 0);
+        double[] inverseCounts = sim.inverseOpenFaceCounts;
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+
+        //Plain rows: the cell, its right and its lower neighbour all have four open sides
+        int plainFrom = Math.min(Math.max(x0, 1), x1);
+        int plainTo = Math.max(Math.min(x1, cols - 2), plainFrom);
+        //Other rows: the right and the lower neighbour are inside the grid, the open face tables decide the rest
+        int to = Math.max(Math.min(x1, cols - 1), x0);
+        for (int y = y0; y < y1; y++) {
+            int x = x0;
+            if (plainRows[y]) {
+                for (; x < plainFrom; x++) {
+                    sim.projectGaussSeidelCell(x, y);
+                }
+                for (int i = y * cols + x; x + LANES <= plainTo; x += LANES, i += LANES) {
+                    //inverseOpenFaceCounts is 0.25 for all of these cells
+                    DoubleVector deltaVel = DoubleVector.fromArray(SPECIES, divergence, i).mul(0.25);
+                    DoubleVector rightDelta = DoubleVector.fromArray(SPECIES, divergence, i + 1).mul(0.25);
+                    DoubleVector downDelta = DoubleVector.fromArray(SPECIES, divergence, i + cols).mul(0.25);
+                    VectorMask<Double> moving = deltaVel.compare(VectorOperators.LT, 0).or(deltaVel.compare(VectorOperators.GT, 0));
+
+                    DoubleVector horizontal = DoubleVector.fromArray(SPECIES, oldFlowX, i)
+                            .add(zero.add(deltaVel).sub(rightDelta)).min(2);
+                    DoubleVector verticalDelta = zero.blend(zero.add(deltaVel).sub(downDelta), moving);
+                    DoubleVector vertical = DoubleVector.fromArray(SPECIES, oldFlowY, i).add(verticalDelta).min(2);
+                    horizontal.intoArray(flowX, i);
+                    vertical.intoArray(flowY, i);
+                }
+            } else if (y < sim.rows - 1) {
+                for (int i = y * cols + x; x + LANES <= to; x += LANES, i += LANES) {
+                    DoubleVector deltaVel = DoubleVector.fromArray(SPECIES, divergence, i)
+                            .mul(DoubleVector.fromArray(SPECIES, inverseCounts, i));
+                    DoubleVector rightDelta = DoubleVector.fromArray(SPECIES, divergence, i + 1)
+                            .mul(DoubleVector.fromArray(SPECIES, inverseCounts, i + 1));
+                    DoubleVector downDelta = DoubleVector.fromArray(SPECIES, divergence, i + cols)
+                            .mul(DoubleVector.fromArray(SPECIES, inverseCounts, i + cols));
+                    VectorMask<Double> rightOpen = DoubleVector.fromArray(SPECIES, openRight, i).compare(VectorOperators.NE, 0);
+                    VectorMask<Double> downOpen = DoubleVector.fromArray(SPECIES, openDown, i).compare(VectorOperators.NE, 0);
+                    VectorMask<Double> moving = deltaVel.compare(VectorOperators.LT, 0).or(deltaVel.compare(VectorOperators.GT, 0));
+
+                    DoubleVector horizontal = DoubleVector.fromArray(SPECIES, oldFlowX, i)
+                            .add(zero.add(deltaVel).sub(rightDelta)).min(2);
+                    DoubleVector verticalDelta = zero.blend(zero.add(deltaVel).sub(downDelta), moving);
+                    DoubleVector vertical = DoubleVector.fromArray(SPECIES, oldFlowY, i).add(verticalDelta).min(2);
+                    zero.blend(horizontal, rightOpen).intoArray(flowX, i); //Only fluid cells have open faces
+                    zero.blend(vertical, downOpen).intoArray(flowY, i);
+                }
+            }
+            for (; x < x1; x++) {
+                sim.projectGaussSeidelCell(x, y);
+            }
+        }
+    }
+
+    @Override
+    public void diffuseTile(Simulation sim, int x0, int y0, int x1, int y1) {
+        int cols = sim.cols;
+        double[] flowX = array(sim.oldFlows, Simulation.HORIZONTAL_FLOW);
+        double[] flowY = array(sim.oldFlows, Simulation.VERTICAL_FLOW);
+        GridField flowNeighbours = sim.getDiffuseNeighbours(sim.oldFlows, sim.flows, sim.implicitFlows);
+        GridField flowTarget = sim.getDiffuseTarget(sim.flows, sim.implicitFlows);
+
+        //Interior: all eight neighbours are inside the grid
+        int from = Math.min(Math.max(x0, 1), x1);
+        int to = Math.max(Math.min(x1, cols - 1), from);
+        int end = from + (to - from) / LANES * LANES;
+        for (int y = y0; y < y1; y++) {
+            int x = x0;
+            if (y >= 1 && y < sim.rows - 1) {
+                for (; x < from; x++) {
+                    sim.diffuseCell(x, y);
+                }
+                int rowStart = y * cols;
+                boolean plain = fluidRows[y - 1] && fluidRows[y] && fluidRows[y + 1];
+                diffuseRow(flowX, array(flowNeighbours, Simulation.HORIZONTAL_FLOW), array(flowTarget, Simulation.HORIZONTAL_FLOW),
+                        rowStart + from, rowStart + end, sim.velocityDiffuseKeep, plain);
+                diffuseRow(flowY, array(flowNeighbours, Simulation.VERTICAL_FLOW), array(flowTarget, Simulation.VERTICAL_FLOW),
+                        rowStart + from, rowStart + end, sim.velocityDiffuseKeep, plain);
+                for (ScalarField field : sim.scalarFields) {
+                    GridField neighbourValues = sim.getDiffuseNeighbours(field.oldValues, field.values, field.implicitValues);
+                    GridField target = sim.getDiffuseTarget(field.values, field.implicitValues);
+                    for (int c = 0; c < field.channels; c++) {
+                        diffuseRow(array(field.oldValues, c), array(neighbourValues, c), array(target, c),
+                                rowStart + from, rowStart + end, field.diffuseKeep, plain);
+                    }
+                }
+                x = end;
+            }
+            for (; x < x1; x++) {
+                sim.diffuseCell(x, y);
+            }
+        }
+    }
+
+    /**
+     * Diffuses the cells from start to end of one component, end - start has to be a multiple of LANES.
+     * No vector is passed in or out, vectors crossing a call that is not inlined end up allocated.
+     *
+     * @param plain All neighbours of the cells are fluid, they are added without masks.
+     */
+    private void diffuseRow(double[] source, double[] neighbourValues, double[] target, int start, int end, double keep, boolean plain) {
+        double share = 1 - keep;
+        for (int i = start; i < end; i += LANES) {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            if (plain) {
+                for (int offset : neighbourOffsets) {
+                    sum = sum.add(DoubleVector.fromArray(SPECIES, neighbourValues, i + offset));
+                }
+            } else {
+                for (int offset : neighbourOffsets) {
+                    int neighbour = i + offset;
+                    VectorMask<Double> isFluid = DoubleVector.fromArray(SPECIES, fluid, neighbour).compare(VectorOperators.NE, 0);
+                    sum = sum.add(DoubleVector.fromArray(SPECIES, neighbourValues, neighbour), isFluid);
+                }
+            }
+            DoubleVector weight = DoubleVector.fromArray(SPECIES, inverseNeighbourCounts, i).mul(share);
+            DoubleVector.fromArray(SPECIES, source, i).mul(keep).add(sum.mul(weight)).intoArray(target, i);
+        }
+    }
+
+    @Override
+    public void divergenceTileFloat(Simulation sim, int tile, int x0, int y0, int x1, int y1) {
+        FloatKernels scalar = sim.floatKernels;
+        int cols = sim.cols;
+        float[] flowX = FloatKernels.array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = FloatKernels.array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] divergence = FloatKernels.array(sim.divergence, 0);
+        float max = 0;
+        double squared = 0;
+
+        //Interior: x > 0 and y > 0
+        int from = Math.min(Math.max(x0, 1), x1);
+        for (int y = y0; y < y1; y++) {
+            int x = x0;
+            float rowSquared = 0;
+            if (y > 0) {
+                for (; x < from; x++) {
+                    float d = scalar.divergenceCell(sim, x, y);
+                    max = Math.max(max, Math.abs(d));
+                    rowSquared += d * d;
+                }
+                FloatVector rowMax = FloatVector.zero(FLOAT_SPECIES);
+                FloatVector vectorSquared = FloatVector.zero(FLOAT_SPECIES);
+                for (int i = y * cols + x; x + FLOAT_LANES <= x1; x += FLOAT_LANES, i += FLOAT_LANES) {
+                    FloatVector divergenceX = FloatVector.fromArray(FLOAT_SPECIES, flowX, i).neg()
+                            .add(FloatVector.fromArray(FLOAT_SPECIES, flowX, i - 1));
+                    FloatVector divergenceY = FloatVector.fromArray(FLOAT_SPECIES, flowY, i).neg()
+                            .add(FloatVector.fromArray(FLOAT_SPECIES, flowY, i - cols));
+                    VectorMask<Float> isInflow = FloatVector.fromArray(FLOAT_SPECIES, inflowFloat, i).compare(VectorOperators.NE, 0);
+                    FloatVector d = divergenceX.add(divergenceY);
+                    d = d.blend(0, d.abs().compare(VectorOperators.LT, Float.MIN_NORMAL).or(isInflow));
+                    d.intoArray(divergence, i);
+                    rowMax = rowMax.max(d.abs());
+                    vectorSquared = vectorSquared.add(d.mul(d));
+                }
+                max = Math.max(max, rowMax.reduceLanes(VectorOperators.MAX));
+                rowSquared += vectorSquared.reduceLanes(VectorOperators.ADD);
+            }
+            for (; x < x1; x++) {
+                float d = scalar.divergenceCell(sim, x, y);
+                max = Math.max(max, Math.abs(d));
+                rowSquared += d * d;
+            }
+            squared += rowSquared;
+        }
+        sim.tileMaxDivergence[tile] = max;
+        sim.tileSquaredDivergence[tile] = squared;
+    }
+
+    @Override
+    public void projectGaussSeidelTileFloat(Simulation sim, int x0, int y0, int x1, int y1) {
+        FloatKernels scalar = sim.floatKernels;
+        int cols = sim.cols;
+        float[] oldFlowX = FloatKernels.array(sim.oldFlows, Simulation.HORIZONTAL_FLOW);
+        float[] oldFlowY = FloatKernels.array(sim.oldFlows, Simulation.VERTICAL_FLOW);
+        float[] flowX = FloatKernels.array(sim.flows, Simulation.HORIZONTAL_FLOW);
+        float[] flowY = FloatKernels.array(sim.flows, Simulation.VERTICAL_FLOW);
+        float[] divergence = FloatKernels.array(sim.divergence, 0);
+        float[] inverseCounts = scalar.inverseOpenFaceCounts;
+
+        //Same split as projectGaussSeidelTile. No vector lives across the calls of the scalar code, those would be allocated
+        int plainFrom = Math.min(Math.max(x0, 1), x1);
+        int plainTo = Math.max(Math.min(x1, cols - 2), plainFrom);
+        int to = Math.max(Math.min(x1, cols - 1), x0);
+        for (int y = y0; y < y1; y++) {
+            int x = x0;
+            int rowStart = y * cols;
+            if (plainRows[y]) {
+                scalar.projectGaussSeidelRow(sim, rowStart + x, rowStart + plainFrom);
+                x = plainFrom;
+                for (int i = rowStart + x; x + FLOAT_LANES <= plainTo; x += FLOAT_LANES, i += FLOAT_LANES) {
+                    FloatVector deltaVel = FloatVector.fromArray(FLOAT_SPECIES, divergence, i).mul(0.25f);
+                    FloatVector rightDelta = FloatVector.fromArray(FLOAT_SPECIES, divergence, i + 1).mul(0.25f);
+                    FloatVector downDelta = FloatVector.fromArray(FLOAT_SPECIES, divergence, i + cols).mul(0.25f);
+                    VectorMask<Float> moving = deltaVel.compare(VectorOperators.LT, 0).or(deltaVel.compare(VectorOperators.GT, 0));
+                    FloatVector zero = FloatVector.zero(FLOAT_SPECIES);
+
+                    FloatVector horizontal = FloatVector.fromArray(FLOAT_SPECIES, oldFlowX, i).add(deltaVel.sub(rightDelta)).min(2);
+                    FloatVector verticalDelta = zero.blend(deltaVel.sub(downDelta), moving);
+                    FloatVector vertical = FloatVector.fromArray(FLOAT_SPECIES, oldFlowY, i).add(verticalDelta).min(2);
+                    horizontal.blend(0, horizontal.abs().compare(VectorOperators.LT, Float.MIN_NORMAL)).intoArray(flowX, i);
+                    vertical.blend(0, vertical.abs().compare(VectorOperators.LT, Float.MIN_NORMAL)).intoArray(flowY, i);
+                }
+            } else if (y < sim.rows - 1) {
+                for (int i = rowStart + x; x + FLOAT_LANES <= to; x += FLOAT_LANES, i += FLOAT_LANES) {
+                    FloatVector deltaVel = FloatVector.fromArray(FLOAT_SPECIES, divergence, i)
+                            .mul(FloatVector.fromArray(FLOAT_SPECIES, inverseCounts, i));
+                    FloatVector rightDelta = FloatVector.fromArray(FLOAT_SPECIES, divergence, i + 1)
+                            .mul(FloatVector.fromArray(FLOAT_SPECIES, inverseCounts, i + 1));
+                    FloatVector downDelta = FloatVector.fromArray(FLOAT_SPECIES, divergence, i + cols)
+                            .mul(FloatVector.fromArray(FLOAT_SPECIES, inverseCounts, i + cols));
+                    VectorMask<Float> rightOpen = FloatVector.fromArray(FLOAT_SPECIES, openRightFloat, i).compare(VectorOperators.NE, 0);
+                    VectorMask<Float> downOpen = FloatVector.fromArray(FLOAT_SPECIES, openDownFloat, i).compare(VectorOperators.NE, 0);
+                    VectorMask<Float> moving = deltaVel.compare(VectorOperators.LT, 0).or(deltaVel.compare(VectorOperators.GT, 0));
+                    FloatVector zero = FloatVector.zero(FLOAT_SPECIES);
+
+                    FloatVector horizontal = FloatVector.fromArray(FLOAT_SPECIES, oldFlowX, i).add(deltaVel.sub(rightDelta)).min(2);
+                    FloatVector verticalDelta = zero.blend(deltaVel.sub(downDelta), moving);
+                    FloatVector vertical = FloatVector.fromArray(FLOAT_SPECIES, oldFlowY, i).add(verticalDelta).min(2);
+                    horizontal.blend(0, horizontal.abs().compare(VectorOperators.LT, Float.MIN_NORMAL).or(rightOpen.not())).intoArray(flowX, i);
+                    vertical.blend(0, vertical.abs().compare(VectorOperators.LT, Float.MIN_NORMAL).or(downOpen.not())).intoArray(flowY, i);
+                }
+            }
+            scalar.projectGaussSeidelRow(sim, rowStart + x, rowStart + x1);
+        }
+    }
+
+    private static double[] array(GridField field, int component) {
+        return ((DoubleGridField) field).array(component);
+    }
+}
@@ -0,0 +1,58 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * SimulationStep must not allocate once the JIT has compiled it. Allocations are counted on the stepping thread,
+ * which also dispatches every kernel to the workers of the TileScheduler.
+ */
+class AllocationTest {
+    private static final int WARMUP_STEPS = 150;
+    private static final int MEASURED_STEPS = 30;
+
+    @Test
+    void stepsOnOneThreadDoNotAllocate() {
+        for (String name : SimulationSceneInfo.getPresetNames()) {
+            assertEquals(0, measureAllocatedBytes(name, 1), name);
+        }
+    }
+
+    @Test
+    void stepsOnSeveralThreadsDoNotAllocate() {
+        assertEquals(0, measureAllocatedBytes("shootCircleScene", 3));
+    }
+
+    /**
+     * @return the bytes the stepping thread allocated during MEASURED_STEPS steps after the warmup.
+     */
+    private static long measureAllocatedBytes(String sceneName, int parallelism) {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean, "The JVM cannot count allocated bytes");
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported(), "The JVM cannot count allocated bytes");
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        SimulationSceneInfo sceneInfo = SimulationSceneInfo.getPreset(sceneName).copy();
+        sceneInfo.seed = 1L;
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, parallelism);
+        try {
+            for (int i = 0; i < WARMUP_STEPS; i++) {
+                sim.SimulationStep();
+            }
+            long threadId = Thread.currentThread().getId();
+            long before = allocationBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < MEASURED_STEPS; i++) {
+                sim.SimulationStep();
+            }
+            return allocationBean.getThreadAllocatedBytes(threadId) - before;
+        } finally {
+            sim.clean();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A FrameRecording has to give back exactly what FrameRecorder captured, read one frame after the other
+ * as well as when seeking into the middle of a keyframe interval.
+ */
+class FrameRecordingTest {
+    private static final int STEPS = 300;
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyFrameReadsBackAsCaptured() throws IOException {
+        Path file = directory.resolve("frames.fsr");
+        Simulation sim = new Simulation(SimulationSceneInfo.getPreset("clashScene"), TileScheduler.DEFAULT_TILE_SIZE, 1);
+        byte[][] colors = new byte[STEPS][];
+        float[][] flows = new float[STEPS][];
+        try {
+            FrameRecorder recorder = new FrameRecorder(file, sim.cols, sim.rows, true, 1, KEYFRAME_INTERVAL, STEPS);
+            for (int step = 1; step <= STEPS; step++) {
+                sim.SimulationStep();
+                colors[step - 1] = getColors(sim);
+                flows[step - 1] = getFlows(sim);
+                recorder.onStep(sim, step);
+            }
+            recorder.close();
+            assertEquals(0, recorder.getDroppedFrames());
+        } finally {
+            sim.clean();
+        }
+
+        try (FrameRecording recording = new FrameRecording(file)) {
+            assertEquals(STEPS, recording.getFrameCount());
+            for (int i = 0; i < STEPS; i++) {
+                assertFrame(recording.readFrame(i), i + 1, colors[i], flows[i]);
+            }
+        }
+        try (FrameRecording recording = new FrameRecording(file)) {
+            //Between two keyframes, backwards and forwards again across a keyframe
+            for (int i : new int[]{5 * KEYFRAME_INTERVAL + 7, 3, 2 * KEYFRAME_INTERVAL - 1, 4 * KEYFRAME_INTERVAL + 2, STEPS - 1}) {
+                assertFrame(recording.readFrame(i), i + 1, colors[i], flows[i]);
+            }
+        }
+    }
+
+    @Test
+    void recordingWithoutIndexIsRejected() throws IOException {
+        Path file = directory.resolve("frames.fsr");
+        Simulation sim = new Simulation(SimulationSceneInfo.getPreset("clashScene"), TileScheduler.DEFAULT_TILE_SIZE, 1);
+        try {
+            FrameRecorder recorder = new FrameRecorder(file, sim.cols, sim.rows, false, 1, KEYFRAME_INTERVAL, 8);
+            for (int step = 1; step <= 20; step++) {
+                sim.SimulationStep();
+                recorder.onStep(sim, step);
+            }
+            recorder.close();
+        } finally {
+            sim.clean();
+        }
+        byte[] data = Files.readAllBytes(file);
+        Path truncated = directory.resolve("truncated.fsr");
+        Files.write(truncated, Arrays.copyOf(data, data.length - FrameRecorder.FOOTER_BYTES));
+        assertThrows(IOException.class, () -> new FrameRecording(truncated).close());
+    }
+
+    private static void assertFrame(RecordedFrame frame, long step, byte[] colors, float[] flows) {
+        assertEquals(step, frame.step);
+        assertArrayEquals(colors, frame.colors, "Colors of step " + step);
+        assertArrayEquals(toBits(flows), toBits(frame.flows), "Flows of step " + step);
+    }
+
+    /**
+     * @return the colors as FrameRecorder stores them, one plane per channel clamped to 0 to 255.
+     */
+    private static byte[] getColors(Simulation sim) {
+        int cells = sim.cols * sim.rows;
+        byte[] colors = new byte[cells * 3];
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < cells; i++) {
+                colors[c * cells + i] = (byte) Math.max(Math.min(sim.colors.values.get(c, i), 255), 0);
+            }
+        }
+        return colors;
+    }
+
+    private static float[] getFlows(Simulation sim) {
+        int cells = sim.cols * sim.rows;
+        float[] flows = new float[cells * 2];
+        for (int i = 0; i < cells; i++) {
+            flows[i] = (float) sim.flows.get(Simulation.HORIZONTAL_FLOW, i);
+            flows[cells + i] = (float) sim.flows.get(Simulation.VERTICAL_FLOW, i);
+        }
+        return flows;
+    }
+
+    private static int[] toBits(float[] values) {
+        int[] bits = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bits[i] = Float.floatToRawIntBits(values[i]);
+        }
+        return bits;
+    }
+}
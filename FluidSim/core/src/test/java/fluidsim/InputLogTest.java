@@ -0,0 +1,109 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replaying a saved InputLog has to end in the bit identical state of the recorded run, on any number of threads.
+ */
+class InputLogTest {
+    private static final int STEPS = 80;
+    private static final long SEED = 7L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayOfPresetMatchesRecordedRun() throws IOException {
+        SimulationSceneInfo sceneInfo = SimulationSceneInfo.getPreset("multiShootMouseScene").copy();
+        sceneInfo.seed = SEED;
+        checkReplay(new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1));
+    }
+
+    @Test
+    void replayOfSceneFileMatchesRecordedRun() throws IOException {
+        //The scene has an inflow following the mouse, so the mouse events move it
+        SimulationSceneInfo sceneInfo = SceneLoader.load(Path.of("..", "scenes", "obstacles.scene"));
+        sceneInfo.seed = SEED;
+        checkReplay(new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1));
+    }
+
+    @Test
+    void relativeSceneFileIsFoundNextToTheLog() throws IOException {
+        Files.copy(Path.of("..", "scenes", "obstacles.scene"), directory.resolve("copy.scene"));
+        SimulationSceneInfo sceneInfo = SceneLoader.load(directory.resolve("copy.scene"));
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1);
+        try {
+            InputLog log = InputLog.start(sim);
+            log.sceneFile = "copy.scene";
+            Path file = directory.resolve("inputs.log");
+            log.save(file);
+            Simulation replay = InputLog.load(file).createSimulation(1);
+            replay.clean();
+            assertEquals(sim.cols, replay.cols);
+            assertTrue(replay.sceneInfo.file.endsWith("copy.scene"), replay.sceneInfo.file);
+        } finally {
+            sim.clean();
+        }
+    }
+
+    /**
+     * Records STEPS steps of the simulation with forces, mouse moves and obstacles, then saves, loads and replays the log
+     * on three threads.
+     */
+    private void checkReplay(Simulation sim) throws IOException {
+        long recordedHash;
+        InputLog log = InputLog.start(sim);
+        if (log.sceneFile != null)
+            assertTrue(Path.of(log.sceneFile).isAbsolute(), log.sceneFile);
+        try {
+            for (int step = 0; step < STEPS; step++) {
+                InputEvent event = getEvent(step, sim.cols, sim.rows);
+                if (event != null) {
+                    log.add(step, event);
+                    event.accept(sim);
+                }
+                sim.SimulationStep();
+            }
+            InputEvent last = InputEvent.force(1, 1, 2, 1, 1, 0, true); //After the last step
+            log.add(STEPS, last);
+            last.accept(sim);
+            log.steps = STEPS;
+            recordedHash = HeadlessRunner.hashState(sim);
+        } finally {
+            sim.clean();
+        }
+
+        Path file = directory.resolve("inputs.log");
+        log.save(file);
+        InputLog loaded = InputLog.load(file);
+        assertEquals(log.getEventCount(), loaded.getEventCount());
+        Simulation replay = loaded.createSimulation(3);
+        try {
+            loaded.replay(replay);
+            assertEquals(recordedHash, HeadlessRunner.hashState(replay));
+        } finally {
+            replay.clean();
+        }
+    }
+
+    private static InputEvent getEvent(int step, int cols, int rows) {
+        switch (step) {
+            case 3: return InputEvent.mouse(cols * 0.25, rows * 0.75, 0.3, -1);
+            case 10: return InputEvent.force(cols / 2, rows / 2, cols / 2 + 1, rows / 2, 1, 0, false);
+            case 20: return InputEvent.mouse(cols * 0.8, rows * 0.1 + 0.123456789, -1, 0.7);
+            case 25: return InputEvent.obstacles(2, 2, 3, 4, true);
+            case 40: return InputEvent.force(cols / 3, rows / 3, cols / 3, rows / 3 + 1, 0, 1, true);
+            case 55: return InputEvent.obstacles(2, 3, 1, 1, false);
+            case 60: return InputEvent.mouse(cols * 0.5 + 1e-9, rows * 0.5, 1, 1);
+            default: return null;
+        }
+    }
+}
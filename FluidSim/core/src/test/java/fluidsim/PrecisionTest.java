@@ -0,0 +1,54 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reduced precision storage must stay close to DOUBLE. Every preset runs from the same seed with DOUBLE and with
+ * the reduced precision, the flows and colors are compared like HeadlessRunner --compare-precision does.
+ */
+class PrecisionTest {
+    private static final int STEPS = 100;
+    private static final long SEED = 1L;
+    private static final double FLOAT_TOLERANCE = 1e-3;
+    private static final double PACKED_COLOR_TOLERANCE = 1e-2; //Packed colors round to 1/64 every time they are stored
+
+    @Test
+    void floatStaysCloseToDouble() {
+        for (String name : SimulationSceneInfo.getPresetNames()) {
+            Simulation reference = run(name, FieldPrecision.DOUBLE, FieldPrecision.DOUBLE);
+            Simulation reduced = run(name, FieldPrecision.FLOAT, FieldPrecision.FLOAT);
+            assertWithin(FLOAT_TOLERANCE, HeadlessRunner.getFlowError(reference, reduced), name + " flows");
+            assertWithin(FLOAT_TOLERANCE, HeadlessRunner.getColorError(reference, reduced), name + " colors");
+        }
+    }
+
+    @Test
+    void packedColorsStayCloseToDouble() {
+        for (String name : SimulationSceneInfo.getPresetNames()) {
+            Simulation reference = run(name, FieldPrecision.DOUBLE, FieldPrecision.DOUBLE);
+            Simulation reduced = run(name, FieldPrecision.FLOAT, FieldPrecision.PACKED);
+            assertWithin(FLOAT_TOLERANCE, HeadlessRunner.getFlowError(reference, reduced), name + " flows");
+            assertWithin(PACKED_COLOR_TOLERANCE, HeadlessRunner.getColorError(reference, reduced), name + " colors");
+        }
+    }
+
+    private static void assertWithin(double tolerance, double error, String what) {
+        assertTrue(error <= tolerance, what + " differ by " + error + ", more than " + tolerance);
+    }
+
+    private static Simulation run(String sceneName, FieldPrecision precision, FieldPrecision colorPrecision) {
+        SimulationSceneInfo sceneInfo = SimulationSceneInfo.getPreset(sceneName).copy();
+        sceneInfo.seed = SEED;
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1, precision, colorPrecision);
+        try {
+            for (int i = 0; i < STEPS; i++) {
+                sim.SimulationStep();
+            }
+        } finally {
+            sim.clean();
+        }
+        return sim;
+    }
+}
@@ -0,0 +1,203 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MultigridSolver and ConjugateGradientSolver have to converge on grids whose obstacles split the fluid into regions,
+ * and give the same flows as Gauss-Seidel projection run to convergence.
+ */
+class ProjectionSolverTest {
+    private static final int COLS = 24;
+    private static final int ROWS = 20;
+    private static final int MAX_CYCLES = 50;
+    private static final int MAX_ITERATIONS = 500;
+    private static final int MAX_GAUSS_SEIDEL_ITERATIONS = 100000;
+    private static final double TOLERANCE = 1e-8;
+    private static final double FLOW_TOLERANCE = 1e-5;
+
+    @Test
+    void multigridConvergesInEveryRegion() {
+        Simulation sim = createSimulation();
+        try {
+            MultigridSolver solver = new MultigridSolver(COLS, ROWS, sim.cellType, sim.fluidRegions, sim.fluidRegionCount, sim.scheduler);
+            GridField divergence = createDivergence(sim);
+            GridField pressure = GridField.create(COLS, ROWS, 1, FieldPrecision.DOUBLE);
+            for (boolean useL2 : new boolean[]{false, true}) {
+                pressure.fill(0, 0);
+                int cycles = solver.solve(divergence, pressure, MAX_CYCLES, TOLERANCE, useL2);
+                assertTrue(cycles < MAX_CYCLES, "Multigrid did not converge within " + MAX_CYCLES + " cycles");
+                assertSolved(sim, divergence, pressure);
+            }
+        } finally {
+            sim.clean();
+        }
+    }
+
+    @Test
+    void conjugateGradientConvergesInEveryRegion() {
+        Simulation sim = createSimulation();
+        try {
+            ConjugateGradientSolver solver = new ConjugateGradientSolver(COLS, ROWS, sim.cellType, sim.fluidRegions, sim.fluidRegionCount, sim.scheduler);
+            GridField divergence = createDivergence(sim);
+            GridField pressure = GridField.create(COLS, ROWS, 1, FieldPrecision.DOUBLE);
+            for (boolean useL2 : new boolean[]{false, true}) {
+                pressure.fill(0, 0);
+                int iterations = solver.solve(divergence, pressure, MAX_ITERATIONS, TOLERANCE, useL2);
+                assertTrue(iterations < MAX_ITERATIONS, "Conjugate gradients did not converge within " + MAX_ITERATIONS + " iterations");
+                assertSolved(sim, divergence, pressure);
+            }
+        } finally {
+            sim.clean();
+        }
+    }
+
+    @Test
+    void projectionGivesTheSameFlowsAsGaussSeidel() {
+        Simulation gaussSeidel = project(ProjectionMethod.GAUSS_SEIDEL);
+        try {
+            for (ProjectionMethod method : new ProjectionMethod[]{ProjectionMethod.MULTIGRID, ProjectionMethod.CONJUGATE_GRADIENT}) {
+                Simulation sim = project(method);
+                try {
+                    //Both only add pressure gradients to the same flows, so there is one divergence free result
+                    for (int i = 0; i < COLS * ROWS; i++) {
+                        assertEquals(gaussSeidel.divergence.get(0, i), sim.divergence.get(0, i), 2 * TOLERANCE, method + " divergence of cell " + i);
+                        for (int c = 0; c < 2; c++) {
+                            assertEquals(gaussSeidel.flows.get(c, i), sim.flows.get(c, i), FLOW_TOLERANCE, method + " flow " + c + " of cell " + i);
+                        }
+                    }
+                } finally {
+                    sim.clean();
+                }
+            }
+        } finally {
+            gaussSeidel.clean();
+        }
+    }
+
+    /**
+     * A grid split in two by a wall, with another obstacle in the left part.
+     */
+    private static Simulation createSimulation() {
+        SimulationSceneInfo sceneInfo = new SimulationSceneInfo(COLS, ROWS, new InflowInfo[0]);
+        sceneInfo.seed = 1L;
+        sceneInfo.particleCount = 0;
+        for (int y = 0; y < ROWS; y++) {
+            sceneInfo.setObstacle(15, y, true);
+        }
+        for (int y = 6; y < 10; y++) {
+            for (int x = 4; x < 7; x++) {
+                sceneInfo.setObstacle(x, y, true);
+            }
+        }
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1);
+        assertEquals(2, sim.fluidRegionCount);
+        return sim;
+    }
+
+    /**
+     * @return random divergence in the fluid cells, its sum is different in the two regions.
+     */
+    private static GridField createDivergence(Simulation sim) {
+        Random random = new Random(2);
+        GridField divergence = GridField.create(COLS, ROWS, 1, FieldPrecision.DOUBLE);
+        for (int i = 0; i < COLS * ROWS; i++) {
+            if (sim.fluidRegions[i] >= 0)
+                divergence.set(0, i, random.nextDouble() * 2 - 1 + (sim.fluidRegions[i] == 0 ? 0.5 : -0.3));
+        }
+        return divergence;
+    }
+
+    /**
+     * Checks A p against the divergence with the mean of every region removed, which is all a closed region can cancel.
+     */
+    private static void assertSolved(Simulation sim, GridField divergence, GridField pressure) {
+        double[] sums = new double[sim.fluidRegionCount];
+        int[] counts = new int[sim.fluidRegionCount];
+        for (int i = 0; i < COLS * ROWS; i++) {
+            if (sim.fluidRegions[i] >= 0) {
+                sums[sim.fluidRegions[i]] += divergence.get(0, i);
+                counts[sim.fluidRegions[i]]++;
+            }
+        }
+        for (int y = 0; y < ROWS; y++) {
+            for (int x = 0; x < COLS; x++) {
+                int i = y * COLS + x;
+                int region = sim.fluidRegions[i];
+                if (region < 0)
+                    continue;
+                double ap = 0;
+                int[][] offsets = {{-1, 0}, {1, 0}, {0, -1}, {0, 1}};
+                for (int[] offset : offsets) {
+                    int nx = x + offset[0];
+                    int ny = y + offset[1];
+                    if (nx >= 0 && nx < COLS && ny >= 0 && ny < ROWS && sim.fluidRegions[ny * COLS + nx] >= 0)
+                        ap += pressure.get(0, i) - pressure.get(0, ny * COLS + nx);
+                }
+                double expected = divergence.get(0, i) - sums[region] / counts[region];
+                assertEquals(expected, ap, 10 * TOLERANCE, "Cell " + x + ", " + y);
+            }
+        }
+    }
+
+    /**
+     * Projects the same random flows with the given method until the divergence is below the tolerance.
+     * The flows are the differences of a random potential between neighbouring fluid cells. Gauss-Seidel projection
+     * moves the divergence of a cell to its neighbours all at once, which can never cancel a divergence alternating
+     * like a checkerboard, so the potential is chosen to have none.
+     */
+    private static Simulation project(ProjectionMethod method) {
+        Simulation sim = createSimulation();
+        Random random = new Random(3);
+        double[] potential = new double[COLS * ROWS];
+        double[] checkerboard = new double[sim.fluidRegionCount];
+        double[] faceCounts = new double[sim.fluidRegionCount];
+        for (int i = 0; i < potential.length; i++) {
+            int region = sim.fluidRegions[i];
+            if (region < 0)
+                continue;
+            potential[i] = random.nextDouble();
+            int faces = Integer.bitCount(sim.openFaces[i]);
+            checkerboard[region] += faces * getSign(i) * potential[i];
+            faceCounts[region] += faces;
+        }
+        for (int i = 0; i < potential.length; i++) {
+            int region = sim.fluidRegions[i];
+            if (region >= 0)
+                potential[i] -= getSign(i) * checkerboard[region] / faceCounts[region];
+        }
+        for (int i = 0; i < potential.length; i++) {
+            //Only flows between two fluid cells, Gauss-Seidel leaves the others as they are
+            int faces = sim.openFaces[i];
+            sim.flows.set(Simulation.HORIZONTAL_FLOW, i, (faces & Simulation.OPEN_RIGHT) != 0 ? potential[i] - potential[i + 1] : 0);
+            sim.flows.set(Simulation.VERTICAL_FLOW, i, (faces & Simulation.OPEN_DOWN) != 0 ? potential[i] - potential[i + COLS] : 0);
+        }
+
+        sim.projectionTolerance = TOLERANCE;
+        sim.multigridCycles = MAX_CYCLES;
+        sim.conjugateGradientIterations = MAX_ITERATIONS;
+        if (method == ProjectionMethod.MULTIGRID) {
+            sim.projectMultigrid();
+        } else if (method == ProjectionMethod.CONJUGATE_GRADIENT) {
+            sim.projectConjugateGradient();
+        } else {
+            for (int iteration = 0; iteration < MAX_GAUSS_SEIDEL_ITERATIONS; iteration++) {
+                sim.calculateDivergence();
+                if (sim.maxDivergence < TOLERANCE)
+                    break;
+                sim.projectGaussSeidel();
+            }
+        }
+        sim.calculateDivergence();
+        assertTrue(sim.maxDivergence < TOLERANCE, method + " left a divergence of " + sim.maxDivergence);
+        return sim;
+    }
+
+    private static int getSign(int i) {
+        return (i % COLS + i / COLS) % 2 == 0 ? 1 : -1;
+    }
+}
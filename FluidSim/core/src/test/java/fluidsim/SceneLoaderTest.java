@@ -0,0 +1,132 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Scene files have to give the same scenes as code. The obstacles of every kind land on the cells they name and
+ * a bad line fails with its line number.
+ */
+class SceneLoaderTest {
+    private static final int STEPS = 50;
+    private static final long SEED = 1L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void waterFallFileMatchesThePreset() throws IOException {
+        SimulationSceneInfo loaded = SceneLoader.load(Path.of("..", "scenes", "waterFall.scene"));
+        assertEquals(hashAfterSteps(SimulationSceneInfo.waterFallScene.copy()), hashAfterSteps(loaded));
+    }
+
+    @Test
+    void rectanglesAndBitmapsLandOnTheirCells() throws IOException {
+        SimulationSceneInfo sceneInfo = load("size 10 8",
+                "obstacle 1 2 3 2",
+                "obstacle 8 6 5 5 # Clipped to the grid",
+                "obstacles 6 1",
+                "#.#",
+                ".#",
+                "end");
+        boolean[] expected = new boolean[10 * 8];
+        for (int y = 2; y < 4; y++) {
+            for (int x = 1; x < 4; x++) {
+                expected[y * 10 + x] = true;
+            }
+        }
+        for (int y = 6; y < 8; y++) {
+            for (int x = 8; x < 10; x++) {
+                expected[y * 10 + x] = true;
+            }
+        }
+        expected[1 * 10 + 6] = true;
+        expected[1 * 10 + 8] = true;
+        expected[2 * 10 + 7] = true;
+        assertArrayEquals(expected, sceneInfo.obstacles);
+    }
+
+    @Test
+    void imagesLandOnTheirCells() throws IOException {
+        //Every image is 3x2 pixels with the dark pixels at 0,0, 2,0 and 1,1
+        byte[][] images = new byte[][]{
+                ascii("P1\n# plain bitmap\n3 2\n101\n010\n"),
+                concat(ascii("P4\n3 2\n"), new byte[]{(byte) 0b10100000, (byte) 0b01000000}),
+                ascii("P2\n3 2\n255\n0 255 0\n255 0 255\n"),
+                concat(ascii("P5\n3 2\n65535\n"), new byte[]{0, 0, -1, -1, 0, 0, -1, -1, 0, 0, -1, -1}),
+        };
+        boolean[] expected = new boolean[8 * 8];
+        expected[3 * 8 + 2] = true;
+        expected[3 * 8 + 4] = true;
+        expected[4 * 8 + 3] = true;
+        for (int i = 0; i < images.length; i++) {
+            Files.write(directory.resolve("image" + i + ".pbm"), images[i]);
+            SimulationSceneInfo sceneInfo = load("size 8 8", "obstacle-image image" + i + ".pbm 2 3");
+            assertArrayEquals(expected, sceneInfo.obstacles, new String(images[i], 0, 2, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void badLinesFailWithTheirLineNumber() {
+        String[] badLines = new String[]{
+                "particles -1",
+                "particle-budget -5",
+                "diffusion implicit 0",
+                "velocity-diffusion 2",
+                "obstacle 1 2",
+                "obstacles 1 1",
+                "obstacle-image missing.pbm 0 0",
+                "inflow 1 2 0 1",
+                "inflow 1 2 0 1 255 255 255 repeat 0 1 0",
+                "unknown 1",
+        };
+        for (String badLine : badLines) {
+            IOException e = assertThrows(IOException.class, () -> load("size 10 10", "seed 3", badLine), badLine);
+            assertTrue(e.getMessage().startsWith("Line 4 of "), badLine + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the lines after the format line into a scene file and loads it.
+     */
+    private SimulationSceneInfo load(String... lines) throws IOException {
+        Path file = directory.resolve("test" + SceneLoader.EXTENSION);
+        Files.writeString(file, SceneLoader.FORMAT + "\n" + String.join("\n", lines) + "\n");
+        return SceneLoader.load(file);
+    }
+
+    private static long hashAfterSteps(SimulationSceneInfo sceneInfo) {
+        sceneInfo.seed = SEED;
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1);
+        try {
+            for (int i = 0; i < STEPS; i++) {
+                sim.SimulationStep();
+            }
+            return HeadlessRunner.hashState(sim);
+        } finally {
+            sim.clean();
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[] header, byte[] pixels) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(header);
+        out.writeBytes(pixels);
+        return out.toByteArray();
+    }
+}
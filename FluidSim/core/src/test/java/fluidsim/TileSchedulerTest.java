@@ -0,0 +1,86 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A kernel that throws fails its dispatch, on the calling thread as on a worker. The workers finish that job before the
+ * exception is rethrown, so the next dispatch runs every item exactly once.
+ */
+@Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD) //A lost wakeup hangs the dispatch
+class TileSchedulerTest {
+    private static final int SIZE = 64;
+    private static final int TILE_SIZE = 8;
+    private static final int PARALLELISM = 3;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void dispatchAfterFailureOnCallingThreadRunsEveryItemOnce() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        checkDispatchAfterFailure(() -> Thread.currentThread() == caller);
+    }
+
+    @Test
+    void dispatchAfterFailureOnWorkerRunsEveryItemOnce() throws InterruptedException {
+        Thread caller = Thread.currentThread();
+        checkDispatchAfterFailure(() -> Thread.currentThread() != caller);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    /**
+     * Fails a tile job in every round, then checks that a range job and a tile job afterwards see every item once.
+     *
+     * @param throwHere Whether the current thread throws, the others sleep a little so the throwing one surely claims tiles.
+     */
+    private static void checkDispatchAfterFailure(Condition throwHere) throws InterruptedException {
+        TileScheduler scheduler = new TileScheduler(SIZE, SIZE, TILE_SIZE, PARALLELISM);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                IllegalStateException failure = new IllegalStateException("Tile failed");
+                IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> scheduler.forEachTile((tile, x0, y0, x1, y1) -> {
+                    if (throwHere.holds())
+                        throw failure;
+                    sleep();
+                }));
+                assertSame(failure, thrown);
+
+                AtomicIntegerArray runs = new AtomicIntegerArray(SIZE * SIZE);
+                scheduler.forEachRange(SIZE * SIZE, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        runs.incrementAndGet(i);
+                    }
+                });
+                scheduler.forEachTile((tile, x0, y0, x1, y1) -> {
+                    for (int y = y0; y < y1; y++) {
+                        for (int x = x0; x < x1; x++) {
+                            runs.incrementAndGet(y * SIZE + x);
+                        }
+                    }
+                });
+                Thread.sleep(5); //A worker still running the failed job would write late
+                for (int i = 0; i < SIZE * SIZE; i++) {
+                    assertEquals(2, runs.get(i), "Item " + i + " in round " + round);
+                }
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
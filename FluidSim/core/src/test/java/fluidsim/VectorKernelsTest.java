@@ -0,0 +1,71 @@
+package fluidsim;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The Vector API kernels have to give the same flows and colors as the scalar ones, bit for bit. Obstacles make
+ * the rows with masked cells and the grid widths leave partial vectors at the row ends.
+ */
+class VectorKernelsTest {
+    private static final int STEPS = 100;
+    private static final long SEED = 1L;
+
+    @Test
+    void presetWithObstaclesMatchesScalar() {
+        SimulationSceneInfo sceneInfo = SimulationSceneInfo.getPreset("waterFallScene").copy();
+        for (int y = 45; y < 50; y++) {
+            for (int x = 20; x < 47; x++) {
+                sceneInfo.setObstacle(x, y, x % 9 != 0); //A wall with single cell gaps
+            }
+        }
+        checkScene(sceneInfo);
+    }
+
+    @Test
+    void sceneFileWithObstaclesMatchesScalar() throws IOException {
+        checkScene(SceneLoader.load(Path.of("..", "scenes", "obstacles.scene")));
+    }
+
+    private static void checkScene(SimulationSceneInfo sceneInfo) {
+        sceneInfo.seed = SEED;
+        for (FieldPrecision precision : new FieldPrecision[]{FieldPrecision.DOUBLE, FieldPrecision.FLOAT}) {
+            for (DiffusionMethod diffusionMethod : DiffusionMethod.values()) {
+                sceneInfo.diffusionMethod = diffusionMethod;
+                Simulation scalar = run(sceneInfo, precision, false);
+                Simulation vector = run(sceneInfo, precision, true);
+                String what = precision + " " + diffusionMethod;
+                assertSameValues(scalar.flows, vector.flows, what + " flows");
+                assertSameValues(scalar.colors.values, vector.colors.values, what + " colors");
+            }
+        }
+    }
+
+    private static Simulation run(SimulationSceneInfo sceneInfo, FieldPrecision precision, boolean vectorKernels) {
+        Simulation sim = new Simulation(sceneInfo, TileScheduler.DEFAULT_TILE_SIZE, 1, precision, precision);
+        assumeTrue(sim.vectorKernelsAvailable(), "The jdk.incubator.vector module is missing");
+        sim.useVectorKernels = vectorKernels;
+        try {
+            for (int i = 0; i < STEPS; i++) {
+                sim.SimulationStep();
+            }
+        } finally {
+            sim.clean();
+        }
+        return sim;
+    }
+
+    private static void assertSameValues(GridField expected, GridField actual, String what) {
+        for (int c = 0; c < expected.components; c++) {
+            for (int i = 0; i < expected.cols * expected.rows; i++) {
+                assertEquals(Double.doubleToRawLongBits(expected.get(c, i)), Double.doubleToRawLongBits(actual.get(c, i)),
+                        what + ", component " + c + " of cell " + i);
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
+package fluidsim.ui;
+
+import fluidsim.*;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 /**
  * Grid Panel visualizes the Simulation and its debug options.
@@ -21,10 +26,15 @@ public class GridPanel extends JPanel {
 
     public int[][][] cellCenters;
 
-    public Simulation sim;
+    public final SimulationThread simulation;
+    public FrameSnapshot frame; //The frame being drawn, only used on the event dispatch thread
 
     public boolean drawDefault = true;
+    public boolean rasterCells = true; //Draws the cells as one scaled image instead of a rectangle per cell
     public boolean drawParticles = false;
+    public boolean paintObstacles = false; //Dragging with the left button adds obstacles instead of pushing the fluid, the right button removes them
+    public int obstacleBrush = 1; //Edge length in cells of the square painted obstacles
+    public static final Color OBSTACLE_COLOR = new Color(90, 90, 90);
     public boolean debug = true;
     public boolean debugDirections = false;
     public boolean debugFlows = false;
@@ -50,26 +60,29 @@ public class GridPanel extends JPanel {
     public double mouseVelX; //Velocity at mouse
     public double mouseVelY;
 
+    private BufferedImage cellImage; //One pixel per cell, scaled up when drawn
+    private int[] cellPixels; //The data buffer of cellImage, row-major like the fields of the simulation
 
-    public GridPanel(Simulation sim) {
-        this.sim = sim;
+    public GridPanel(SimulationThread simulation) {
+        this.simulation = simulation;
+        frame = simulation.getLatestFrame();
         
-        if(sim.cols > sim.rows) {
-            cellWidth = (int) (WIDTH / (float) sim.cols - (2 * MARGIN / (float) sim.cols));
+        if(frame.cols > frame.rows) {
+            cellWidth = (int) (WIDTH / (float) frame.cols - (2 * MARGIN / (float) frame.cols));
             cellHeight = cellWidth;
         }
         else {
-            cellHeight = (int) (HEIGHT / (float) sim.rows - (2 * MARGIN / (float) sim.rows));
+            cellHeight = (int) (HEIGHT / (float) frame.rows - (2 * MARGIN / (float) frame.rows));
             cellWidth = cellHeight;
         }
         
 
         //Calculate Cell centers
-        cellCenters = new int[sim.cols][sim.rows][2];
+        cellCenters = new int[frame.cols][frame.rows][2];
         var x = MARGIN + cellWidth / 2;
         var y = MARGIN + cellHeight / 2;
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
                 cellCenters[j][i][0] = x;
                 cellCenters[j][i][1] = y;
                 x += cellWidth;
@@ -83,6 +96,14 @@ public class GridPanel extends JPanel {
         setMinimumSize(dim);
 
 
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (paintObstacles)
+                    paintObstacle(canvasToCellCoordinateXFloored(e.getX()), canvasToCellCoordinateYFloored(e.getY()), !SwingUtilities.isRightMouseButton(e));
+            }
+        });
+
         this.addMouseMotionListener(new MouseAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
@@ -91,11 +112,20 @@ public class GridPanel extends JPanel {
                 lastCellY = newCellY;
                 lastMouseX = e.getX();
                 lastMouseY = e.getY();
-                newCellX = Math.max(Math.min(canvasToCellCoordinateXFloored(e.getX()), sim.cols - 1), 0);
-                newCellY = Math.max(Math.min(canvasToCellCoordinateYFloored(e.getY()), sim.rows - 1), 0);
-
-                if (lastCellX != newCellX || lastCellY != newCellY) {
-                    sim.addNewForceBetweenCells(lastCellX, lastCellY, newCellX, newCellY, (lastMouseX - mouseCellEnterX) * 3000 * cellWidth, (lastMouseY - mouseCellEnterY) * 3000 * cellHeight, true);
+                newCellX = Math.max(Math.min(canvasToCellCoordinateXFloored(e.getX()), frame.cols - 1), 0);
+                newCellY = Math.max(Math.min(canvasToCellCoordinateYFloored(e.getY()), frame.rows - 1), 0);
+
+                if (paintObstacles) {
+                    if (lastCellX != newCellX || lastCellY != newCellY)
+                        paintObstacle(newCellX, newCellY, !SwingUtilities.isRightMouseButton(e));
+                } else if (lastCellX != newCellX || lastCellY != newCellY) {
+                    int cell1X = lastCellX;
+                    int cell1Y = lastCellY;
+                    int cell2X = newCellX;
+                    int cell2Y = newCellY;
+                    int dirX = (lastMouseX - mouseCellEnterX) * 3000 * cellWidth;
+                    int dirY = (lastMouseY - mouseCellEnterY) * 3000 * cellHeight;
+                    simulation.submit(InputEvent.force(cell1X, cell1Y, cell2X, cell2Y, dirX, dirY, true));
                 }
             }
 
@@ -108,18 +138,19 @@ public class GridPanel extends JPanel {
                 lastMouseY = e.getY();
 
 
-                sim.inflowDirX = (newCellX - (sim.cols / 2)) * (2.0 / sim.cols);
-                sim.inflowDirY = (newCellY - (sim.rows / 2)) * (2.0 / sim.rows);
-
-                sim.mouseX = canvasToCellCoordinateX(lastMouseX);
-                sim.mouseY = canvasToCellCoordinateY(lastMouseY);
+                double inflowDirX = (newCellX - (frame.cols / 2)) * (2.0 / frame.cols);
+                double inflowDirY = (newCellY - (frame.rows / 2)) * (2.0 / frame.rows);
+                double mouseX = canvasToCellCoordinateX(lastMouseX);
+                double mouseY = canvasToCellCoordinateY(lastMouseY);
+                simulation.submit(InputEvent.mouse(mouseX, mouseY, inflowDirX, inflowDirY));
 
-                newCellX = Math.max(Math.min(canvasToCellCoordinateXFloored(e.getX()), sim.cols - 1), 0);
-                newCellY = Math.max(Math.min(canvasToCellCoordinateYFloored(e.getY()), sim.rows - 1), 0);
+                newCellX = Math.max(Math.min(canvasToCellCoordinateXFloored(e.getX()), frame.cols - 1), 0);
+                newCellY = Math.max(Math.min(canvasToCellCoordinateYFloored(e.getY()), frame.rows - 1), 0);
+                simulation.inspectX = newCellX;
+                simulation.inspectY = newCellY;
 
-                double[] mouseVel = sim.getVelAtPoint((lastMouseX - MARGIN) / (double) cellWidth, (lastMouseY - MARGIN) / (double) cellHeight);
-                mouseVelX = mouseVel[0];
-                mouseVelY = mouseVel[1];
+                mouseVelX = frame.getVelAtPoint(mouseX, mouseY, 0);
+                mouseVelY = frame.getVelAtPoint(mouseX, mouseY, 1);
             }
         });
     }
@@ -132,31 +163,43 @@ public class GridPanel extends JPanel {
         Graphics2D graphics2D = (Graphics2D) g;
 
         if (!debug || drawDefault) {
-            //Draw Cells
-            for (int i = 0; i < sim.rows; i++) {
-                for (int j = 0; j < sim.cols; j++) {
-                    graphics2D.setColor(new Color((int) Math.max(Math.min(sim.cellColors[j][i][0], 255), 0), (int) Math.max(Math.min(sim.cellColors[j][i][1], 255), 0), (int) Math.max(Math.min(sim.cellColors[j][i][2], 255), 0)));
-                    graphics2D.fillRect(cellCenters[j][i][0] - cellWidth / 2, cellCenters[j][i][1] - cellHeight / 2, cellWidth, cellHeight);
-                    graphics2D.setColor(Color.WHITE);
+            if (rasterCells) {
+                drawCellImage(graphics2D);
+            } else {
+                //Draw Cells
+                for (int i = 0; i < frame.rows; i++) {
+                    for (int j = 0; j < frame.cols; j++) {
+                        graphics2D.setColor(new Color(frame.colorPixels[i * frame.cols + j]));
+                        graphics2D.fillRect(cellCenters[j][i][0] - cellWidth / 2, cellCenters[j][i][1] - cellHeight / 2, cellWidth, cellHeight);
+                        graphics2D.setColor(Color.WHITE);
+                    }
                 }
             }
-
         } else {
             graphics2D.setColor(Color.BLACK);
-            graphics2D.fillRect(MARGIN, MARGIN, cellWidth * sim.cols, cellHeight * sim.rows);
+            graphics2D.fillRect(MARGIN, MARGIN, cellWidth * frame.cols, cellHeight * frame.rows);
+        }
+
+        if (frame.obstacles != null) {
+            drawObstacles(graphics2D);
         }
 
-        if(drawParticles){
-            for(FluidParticle p : sim.particles){
-                graphics2D.setColor(new Color((int) Math.max(Math.min(Math.sqrt(Math.pow(p.velX,2)+Math.pow(p.velY,2))*200,255),0),0,255));
-                if (p!=null) graphics2D.fillOval(cellToCanvasCoordinateX(p.x), cellToCanvasCoordinateY(p.y), p.getSize(cellWidth), p.getSize(cellHeight));
-                System.out.println(cellToCanvasCoordinateX(p.x) + "  " + cellToCanvasCoordinateY(p.y));
+        if(drawParticles && frame.particleX != null){
+            for(int i = 0; i < frame.particleCount; i++){
+                double velX = frame.particleVelX[i];
+                double velY = frame.particleVelY[i];
+                double lifetime = frame.particleLifetime[i];
+                if (lifetime <= 0)
+                    continue; //Emitted particles that expired but wait behind older ones to be released
+                graphics2D.setColor(new Color((int) Math.max(Math.min(Math.sqrt(velX * velX + velY * velY)*200,255),0),0,255));
+                graphics2D.fillOval(cellToCanvasCoordinateX(frame.particleX[i]), cellToCanvasCoordinateY(frame.particleY[i]),
+                        ParticleSystem.getSize(lifetime, cellWidth), ParticleSystem.getSize(lifetime, cellHeight));
             }
         }
 
 
 
-        if (debug) {
+        if (debug && frame.flows != null) { //The debug fields are in the snapshots from the step after debug was turned on
             if (debugNumbers) {
                 drawCellNumbers(graphics2D);
             }
@@ -197,41 +240,86 @@ public class GridPanel extends JPanel {
         }
     }
 
+    /**
+     * Copies the colors of the frame into the pixels of cellImage and draws the image scaled to the size of the grid
+     * with a single drawImage. The colors were packed on the threads of the simulation when the frame was captured.
+     */
+    private void drawCellImage(Graphics2D graphics2D) {
+        if (cellImage == null || cellImage.getWidth() != frame.cols || cellImage.getHeight() != frame.rows) {
+            cellImage = new BufferedImage(frame.cols, frame.rows, BufferedImage.TYPE_INT_RGB);
+            cellPixels = ((DataBufferInt) cellImage.getRaster().getDataBuffer()).getData();
+        }
+        System.arraycopy(frame.colorPixels, 0, cellPixels, 0, cellPixels.length);
+        graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        graphics2D.drawImage(cellImage, MARGIN, MARGIN, cellWidth * frame.cols, cellHeight * frame.rows, null);
+    }
+
+    /**
+     * Submits the obstacle brush centered on a cell, as an input event so it is part of recorded inputs.
+     */
+    private void paintObstacle(int cellX, int cellY, boolean obstacle) {
+        int offset = (obstacleBrush - 1) / 2;
+        simulation.submit(InputEvent.obstacles(cellX - offset, cellY - offset, obstacleBrush, obstacleBrush, obstacle));
+    }
+
+    /**
+     * Fills the obstacle cells, one rectangle per run of obstacles in a row.
+     */
+    private void drawObstacles(Graphics2D graphics2D) {
+        graphics2D.setColor(OBSTACLE_COLOR);
+        boolean[] obstacles = frame.obstacles;
+        for (int y = 0; y < frame.rows; y++) {
+            int x = 0;
+            while (x < frame.cols) {
+                if (!obstacles[y * frame.cols + x]) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < frame.cols && obstacles[y * frame.cols + x]) {
+                    x++;
+                }
+                graphics2D.fillRect(MARGIN + start * cellWidth, MARGIN + y * cellHeight, (x - start) * cellWidth, cellHeight);
+            }
+        }
+    }
+
     private void drawCellNumbers(Graphics2D graphics2D) {
         graphics2D.setColor(Color.WHITE);
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
-                if (sim.cellColors[j][i][0] != 0)
-                    graphics2D.drawString(String.valueOf((int) sim.cellColors[j][i][0]), cellCenters[j][i][0] - cellWidth / 2, cellCenters[j][i][1]);
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
+                int red = frame.colorPixels[i * frame.cols + j] >> 16;
+                if (red != 0)
+                    graphics2D.drawString(String.valueOf(red), cellCenters[j][i][0] - cellWidth / 2, cellCenters[j][i][1]);
             }
         }
     }
 
     private void drawFlowArrows(Graphics2D graphics2D) {
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
-                if (sim.flows[j][i][0] != 0) {
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
+                if (frame.flows.get(j, i, 0) != 0) {
                     //Draw Right Arrow
-                    paintArrow(graphics2D, cellCenters[j][i][0] + (int) (cellWidth / 2f - cellWidth / 4f * sim.flows[j][i][0]),
-                            cellCenters[j][i][1], (int) (cellWidth / 2f * sim.flows[j][i][0]), 0, new Color(63, 192, 135));
+                    paintArrow(graphics2D, cellCenters[j][i][0] + (int) (cellWidth / 2f - cellWidth / 4f * frame.flows.get(j, i, 0)),
+                            cellCenters[j][i][1], (int) (cellWidth / 2f * frame.flows.get(j, i, 0)), 0, new Color(63, 192, 135));
                 }
-                if (sim.flows[j][i][1] != 0) {
+                if (frame.flows.get(j, i, 1) != 0) {
                     //Draw LeftArrow
                     paintArrow(graphics2D, cellCenters[j][i][0],
-                            cellCenters[j][i][1] + (int) (cellHeight / 2f - cellHeight / 4f * sim.flows[j][i][1]),
-                            0, (int) (cellHeight / 2f * sim.flows[j][i][1]), new Color(63, 192, 135));
+                            cellCenters[j][i][1] + (int) (cellHeight / 2f - cellHeight / 4f * frame.flows.get(j, i, 1)),
+                            0, (int) (cellHeight / 2f * frame.flows.get(j, i, 1)), new Color(63, 192, 135));
                 }
             }
         }
     }
 
     private void drawDivergence(Graphics2D graphics2D) {
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
                 graphics2D.setColor(Color.YELLOW);
-                if (sim.divergence[j][i] < 0)
+                if (frame.divergence.get(j, i, 0) < 0)
                     graphics2D.setColor(Color.BLACK);
-                double div = Math.abs(sim.divergence[j][i]);
+                double div = Math.abs(frame.divergence.get(j, i, 0));
                 int radius = (int) (cellWidth / 8f * div);
                 graphics2D.fillOval(cellCenters[j][i][0] - radius, cellCenters[j][i][1] - radius, radius * 2, radius * 2);
             }
@@ -240,14 +328,16 @@ public class GridPanel extends JPanel {
 
     private void drawVelocityHairs(Graphics2D graphics2D) {
         int hairSteps = 30;
-        for (int y = 0; y < sim.rows; y++) {
-            for (int x = 0; x < sim.cols; x++) {
+        for (int y = 0; y < frame.rows; y++) {
+            for (int x = 0; x < frame.cols; x++) {
                 double linePosX = x;
                 double linePosY = y;
                 for (int i = 0; i < hairSteps; i++) {
-                    double velocityMagnitude = Math.sqrt(Math.pow(sim.getVelAtPoint(linePosX, linePosY)[0], 2) + Math.pow(sim.getVelAtPoint(linePosX, linePosY)[1], 2));
-                    double newLinePosX = linePosX + sim.getVelAtPoint(linePosX, linePosY)[0] * 0.3;
-                    double newLinePosY = linePosY + sim.getVelAtPoint(linePosX, linePosY)[1] * 0.3;
+                    double velX = frame.getVelAtPoint(linePosX, linePosY, 0);
+                    double velY = frame.getVelAtPoint(linePosX, linePosY, 1);
+                    double velocityMagnitude = Math.sqrt(velX * velX + velY * velY);
+                    double newLinePosX = linePosX + velX * 0.3;
+                    double newLinePosY = linePosY + velY * 0.3;
                     graphics2D.setColor(new Color((int)Math.min(velocityMagnitude * 255, 255), 0, 255));
                     graphics2D.drawLine(cellToCanvasCoordinateX(linePosX), cellToCanvasCoordinateY(linePosY),
                             cellToCanvasCoordinateX(newLinePosX), cellToCanvasCoordinateY(newLinePosY));
@@ -261,15 +351,15 @@ public class GridPanel extends JPanel {
     private void drawAdvectionNeighbours(Graphics2D graphics2D) {
         graphics2D.setColor(Color.GRAY);
         //Draw Advection Neighbours
-        for (int y = 0; y < sim.rows; y++) {
-            for (int x = 0; x < sim.cols; x++) {
+        for (int y = 0; y < frame.rows; y++) {
+            for (int x = 0; x < frame.cols; x++) {
                 if (lastCellX != x || lastCellY != y) {
                     continue;
                 }
 
-                AdvectionInterpolationInfo adInfo = sim.getAdvectionDeltas(x, y, false);
-                double dirX = sim.summedFlows[x][y][0];
-                double dirY = sim.summedFlows[x][y][1];
+                AdvectionInterpolationInfo adInfo = frame.getAdvectionDeltas(x, y, false);
+                double dirX = frame.summedFlows.get(x, y, 0);
+                double dirY = frame.summedFlows.get(x, y, 1);
 
 
                 double tX = (x + dirX) - adInfo.CellBLX;
@@ -287,12 +377,12 @@ public class GridPanel extends JPanel {
     }
 
     private void drawOutflows(Graphics2D graphics2D) {
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
                 double dirX;
                 double dirY;
-                dirX = sim.summedOutflows[j][i][0];
-                dirY = sim.summedOutflows[j][i][1];
+                dirX = frame.summedOutflows.get(j, i, 0);
+                dirY = frame.summedOutflows.get(j, i, 1);
                 dirX /= 2;
                 dirY /= 2;
                 paintArrow(graphics2D, cellCenters[j][i][0], cellCenters[j][i][1], (int) (dirX * cellWidth), (int) (dirY * cellHeight), Color.PINK);
@@ -301,16 +391,16 @@ public class GridPanel extends JPanel {
     }
 
     private void drawSummedFlow(Graphics2D graphics2D) {
-        for (int i = 0; i < sim.rows; i++) {
-            for (int j = 0; j < sim.cols; j++) {
+        for (int i = 0; i < frame.rows; i++) {
+            for (int j = 0; j < frame.cols; j++) {
                 double dirX;
                 double dirY;
-                dirX = sim.flows[j][i][0];
-                dirY = sim.flows[j][i][1];
+                dirX = frame.flows.get(j, i, 0);
+                dirY = frame.flows.get(j, i, 1);
                 if (j > 0)
-                    dirX += sim.flows[j - 1][i][0];
+                    dirX += frame.flows.get(j - 1, i, 0);
                 if (i > 0)
-                    dirY += sim.flows[j][i - 1][1];
+                    dirY += frame.flows.get(j, i - 1, 1);
                 dirX /= 2;
                 dirY /= 2;
 
@@ -0,0 +1,97 @@
+package fluidsim.ui;
+
+import fluidsim.*;
+import javax.swing.*;
+import java.awt.*;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+public class InspectorPanel extends JPanel {
+    private JLabel neighboursLabel;
+    private GridPanel gridPanel;
+    JLabel coordinateLabel;
+    JLabel flowsLabel;
+    JLabel divergenceLabel;
+    JLabel fpsLabel;
+    JLabel pressureLabel;
+    JLabel projectionLabel;
+    JLabel timingsLabel;
+    private final StringBuilder timingsText = new StringBuilder();
+
+    public InspectorPanel(GridPanel gridPanel) {
+        setLayout(new FlowLayout(FlowLayout.LEADING, 10, 5));
+        setLayout(new GridLayout(8, 1));
+        setPreferredSize(new Dimension(200, 500));
+        this.gridPanel = gridPanel;
+        coordinateLabel = new JLabel("x: " + gridPanel.lastCellX + " y: " + gridPanel.lastCellY);
+        divergenceLabel = new JLabel("<html> Divergence: <br>" + gridPanel.frame.inspectedDivergence);
+        fpsLabel = new JLabel("FPS: 60");
+        flowsLabel = new JLabel("");
+        neighboursLabel = new JLabel();
+        pressureLabel = new JLabel();
+        projectionLabel = new JLabel();
+        timingsLabel = new JLabel();
+        add(fpsLabel);
+        add(projectionLabel);
+        add(coordinateLabel);
+        add(flowsLabel);
+        add(divergenceLabel);
+        add(neighboursLabel);
+        add(pressureLabel);
+        add(timingsLabel);
+    }
+
+    @Override
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        Graphics2D graphics2D = (Graphics2D) g;
+
+        FrameSnapshot frame = gridPanel.frame;
+        fpsLabel.setText("FPS: " +  new DecimalFormat("#.0", DecimalFormatSymbols.getInstance(Locale.ENGLISH)).format(frame.fps) + " / " + Main.stepsPerSecond);
+        projectionLabel.setText("<html> Projection: " + frame.projectionIterations + " it <br> Residual: "
+                + new DecimalFormat("0.0E0", DecimalFormatSymbols.getInstance(Locale.ENGLISH)).format(frame.projectionResidual));
+        coordinateLabel.setText("x: " + frame.inspectedX + " y: " + frame.inspectedY);
+        var flowTop = ((int)(frame.inspectedFlowTop * 1000) / 1000.0);
+        var flowLeft = ((int)(frame.inspectedFlowLeft * 1000) / 1000.0);
+        var flowRight = ((int)(frame.inspectedFlowRight * 1000) / 1000.0);
+        var flowDown = ((int)(frame.inspectedFlowDown * 1000) / 1000.0);
+        
+        final int flowRectScale = 40;
+        final int rectMiddleX = flowsLabel.getX()+ flowsLabel.getWidth() / 2 - 20;
+        final int rectMiddleY = flowsLabel.getY() + flowsLabel.getHeight() / 2;
+        final int textOffsetX = 15;
+        graphics2D.setColor(new Color((int)Math.min(frame.inspectedColor[0],255), (int)Math.min(frame.inspectedColor[1], 255), (int)Math.min(frame.inspectedColor[2], 255)));
+        graphics2D.fillRect(rectMiddleX - flowRectScale / 2, rectMiddleY - flowRectScale / 2, flowRectScale,flowRectScale);
+        graphics2D.setColor(Color.BLACK);
+        graphics2D.drawString( String.valueOf(flowTop), rectMiddleX - textOffsetX, rectMiddleY - flowRectScale);
+        graphics2D.drawString( String.valueOf(flowDown), rectMiddleX - textOffsetX, rectMiddleY + flowRectScale);
+        graphics2D.drawString( String.valueOf(flowLeft), rectMiddleX - flowRectScale - textOffsetX , rectMiddleY);
+        graphics2D.drawString( String.valueOf(flowRight), rectMiddleX + flowRectScale - textOffsetX, rectMiddleY);
+
+        divergenceLabel.setText("<html> Divergence: <br>" + frame.inspectedDivergence);
+        neighboursLabel.setText(frame.inspectedNeighbours + " Neighbours");
+        pressureLabel.setText(frame.inspectedPressure+"");
+        updateTimings(frame);
+    }
+
+    /**
+     * Shows the median and 99th percentile of every phase of the simulation step in milliseconds, as captured with the frame.
+     */
+    private void updateTimings(FrameSnapshot frame) {
+        if (!frame.timingsEnabled) {
+            timingsLabel.setText("Timings disabled");
+            return;
+        }
+        timingsText.setLength(0);
+        timingsText.append("<html><font size=2><table cellspacing=0 cellpadding=0><tr><td>ms</td><td>p50</td><td>p99</td></tr>");
+        for (SimulationPhase phase : SimulationPhase.values()) {
+            timingsText.append("<tr><td>").append(phase.name().toLowerCase())
+                    .append("</td><td>").append(String.format(Locale.ENGLISH, "%.2f", frame.phaseP50[phase.ordinal()] / 1e6))
+                    .append("</td><td>").append(String.format(Locale.ENGLISH, "%.2f", frame.phaseP99[phase.ordinal()] / 1e6))
+                    .append("</td></tr>");
+        }
+        timingsLabel.setText(timingsText.append("</table>").toString());
+    }
+}
@@ -1,3 +1,6 @@
+package fluidsim.ui;
+
+import fluidsim.*;
 import javax.swing.*;
 import java.awt.*;
 
@@ -26,6 +29,14 @@ public class InteractionPanel extends JPanel {
         particleButton.addActionListener(e -> {
             Main.toggleParticles();
         });
+        Button recordButton = new Button("Record");
+        recordButton.addActionListener(e -> {
+            Main.toggleRecording();
+        });
+        Button inputsButton = new Button("Record Inputs");
+        inputsButton.addActionListener(e -> {
+            Main.toggleInputRecording();
+        });
         Button debugButton = new Button("Debug");
         debugButton.addActionListener(e -> {
             Main.toggleDebug();
@@ -41,15 +52,27 @@ public class InteractionPanel extends JPanel {
         previousSceneButton.addActionListener(e -> {
             Main.previousSimulationScene();
         });
+        Button obstacleButton = new Button("Paint Obstacles");
+        obstacleButton.addActionListener(e -> {
+            Main.toggleObstaclePainting();
+        });
+        Button loadObstaclesButton = new Button("Load Obstacles");
+        loadObstaclesButton.addActionListener(e -> {
+            Main.loadObstacles();
+        });
         scenePanel.add(previousSceneButton);
         scenePanel.add(nextSceneButton);
+        scenePanel.add(obstacleButton);
+        scenePanel.add(loadObstaclesButton);
         JPanel steppingPanel = new JPanel();
         steppingPanel.setLayout(new FlowLayout(FlowLayout.CENTER, 10, 5));
-        steppingPanel.setLayout(new GridLayout(1, 5));
+        steppingPanel.setLayout(new GridLayout(1, 7));
         steppingPanel.add(restartButton);
         steppingPanel.add(pauseButton);
         steppingPanel.add(stepButton);
         steppingPanel.add(particleButton);
+        steppingPanel.add(recordButton);
+        steppingPanel.add(inputsButton);
         steppingPanel.add(debugButton);
         add(steppingPanel, BorderLayout.CENTER);
         debugPanel = new JPanel();
@@ -82,6 +105,10 @@ public class InteractionPanel extends JPanel {
         drawDefaultButton.addActionListener(e -> {
             Main.toggleDrawDefault();
         });
+        Button rasterButton = new Button("Raster Cells");
+        rasterButton.addActionListener(e -> {
+            Main.toggleRasterCells();
+        });
         Button hairButton = new Button("Velocity Hairs");
         hairButton.addActionListener(e -> {
             Main.toggleDebugHairs();
@@ -94,6 +121,7 @@ public class InteractionPanel extends JPanel {
         debugPanel.add(advectionButton);
         debugPanel.add(mouseVelButton);
         debugPanel.add(hairButton);
+        debugPanel.add(rasterButton);
         add(debugPanel, BorderLayout.SOUTH);
         add(scenePanel, BorderLayout.NORTH);
         setBorder(BorderFactory.createLineBorder(Color.black));
@@ -0,0 +1,268 @@
+package fluidsim.ui;
+
+import fluidsim.*;
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class Main {
+    public static int simScaleX = 40;
+    public static int simScaleY = 40;
+    private static GridPanel gridPanel;
+    private static JFrame window;
+    private static SimulationThread simulation;
+    public static int desiredFps = 100; //Repaints per second
+    public static double stepsPerSecond = 100; //Steps per second of the simulation thread, independent of the repaints
+    private static Timer timer;
+    public static int recordEvery = 2; //Steps between two recorded frames
+    private static boolean recording;
+    private static boolean recordingInputs;
+
+    private static SimulationSceneInfo[] simulationSceneInfos = new SimulationSceneInfo[]{
+            SimulationSceneInfo.waterFallScene,
+            SimulationSceneInfo.vortexScene,
+            SimulationSceneInfo.colorMixingScene,
+            SimulationSceneInfo.clashScene,
+            SimulationSceneInfo.movingInflowScene,
+            SimulationSceneInfo.colorSplashesScene,
+            SimulationSceneInfo.shootMouseScene,
+            SimulationSceneInfo.multiShootMouseScene,
+            SimulationSceneInfo.shootCircleScene,
+    };
+    private static int currentScene = 0;
+
+
+    public static void showGUI(Simulation sim) {
+        showGUI(sim, false);
+    }
+
+    private static void showGUI(Simulation sim, boolean recordInputs) {
+        simulation = new SimulationThread(sim, stepsPerSecond);
+        if (recordInputs) {
+            Path file = Paths.get("fluidsim-" + System.currentTimeMillis() + ".inputs");
+            simulation.recordInputs(InputLog.start(sim), file);
+            recordingInputs = true;
+            System.out.println("Recording the inputs to " + file.toAbsolutePath());
+        }
+        window = new JFrame("FLUID SIM");
+        window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        gridPanel = new GridPanel(simulation);
+        window.add(gridPanel);
+        final InteractionPanel interactionPanel = new InteractionPanel();
+        window.add(interactionPanel, BorderLayout.SOUTH);
+        final InspectorPanel inspectorPanel = new InspectorPanel(gridPanel);
+        window.add(inspectorPanel, BorderLayout.EAST);
+        window.setResizable(false);
+        window.pack();
+        window.setVisible(true);
+        timer = new Timer(1000 / desiredFps, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent e) {
+                gridPanel.frame = simulation.getLatestFrame();
+                gridPanel.repaint();
+                inspectorPanel.repaint();
+            }
+        });
+        timer.start();
+        simulation.start();
+
+    }
+    
+    /**
+     * @param args Optionally a scene file, it is shown first and added in front of the presets.
+     */
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            try {
+                SimulationSceneInfo sceneInfo = SceneLoader.load(Paths.get(args[0]));
+                SimulationSceneInfo[] scenes = new SimulationSceneInfo[simulationSceneInfos.length + 1];
+                scenes[0] = sceneInfo;
+                System.arraycopy(simulationSceneInfos, 0, scenes, 1, simulationSceneInfos.length);
+                simulationSceneInfos = scenes;
+            } catch (IOException e) {
+                System.err.println("Cannot load " + args[0] + ": " + e.getMessage());
+            }
+        }
+        Simulation sim = new Simulation(simulationSceneInfos[0]);
+        showGUI(sim);
+    }
+
+    public static void restartSimulation()
+    {
+        startScene(simulationSceneInfos[currentScene], false);
+    }
+
+    /**
+     * Stops the running simulation and shows a new one of the given scene.
+     *
+     * @param recordInputs Whether to log the inputs of the new simulation, so the run can be replayed.
+     */
+    private static void startScene(SimulationSceneInfo sceneInfo, boolean recordInputs)
+    {
+        simulation.stop(); //Also finishes a recording and saves the inputs
+        recording = false;
+        recordingInputs = false;
+        simulation.sim.clean();
+        Simulation sim = new Simulation(sceneInfo);
+        timer.stop();
+        window.dispose();
+        showGUI(sim, recordInputs);
+    }
+
+    public static void pauseSimulation() {
+        simulation.togglePause();
+    }
+
+    public static void stepSimulation() {
+        simulation.step();
+    }
+
+    public static void toggleDebug()
+    {
+        gridPanel.debug = !gridPanel.debug;
+        simulation.captureDebugFields = gridPanel.debug;
+    }
+
+    public static void toggleDebugDirections()
+    {
+        gridPanel.debugDirections = !gridPanel.debugDirections;
+    }
+
+    public static void toggleDebugFlows()
+    {
+        gridPanel.debugFlows = !gridPanel.debugFlows;
+    }
+
+    public static void toggleDebugNumbers()
+    {
+        gridPanel.debugNumbers = !gridPanel.debugNumbers;
+    }
+
+    public static void toggleDebugOutflows() { gridPanel.debugOutflows = !gridPanel.debugOutflows;
+    }
+
+    public static void toggleDebugAdvectionNeighbours() {
+        gridPanel.debugAdvectionNeighbours = !gridPanel.debugAdvectionNeighbours;
+    }
+
+    public static void toggleDebugMouseVel() {
+        gridPanel.debugMouseVelocity = !gridPanel.debugMouseVelocity;
+    }
+
+    public static void toggleDebugHairs() {
+        gridPanel.debugHairVelocity = !gridPanel.debugHairVelocity;
+    }
+
+    public static void toggleRasterCells() {
+        gridPanel.rasterCells = !gridPanel.rasterCells;
+    }
+
+    public static void toggleDrawDefault() {
+        gridPanel.drawDefault = !gridPanel.drawDefault;
+    }
+
+    public static void nextSimulationScene() {
+        currentScene = (currentScene + 1) % simulationSceneInfos.length;
+        startScene(simulationSceneInfos[currentScene], false);
+    }
+
+    public static void previousSimulationScene() {
+        currentScene = (currentScene - 1) % simulationSceneInfos.length;
+        if(currentScene == -1)
+            currentScene = simulationSceneInfos.length - 1;
+        startScene(simulationSceneInfos[currentScene], false);
+    }
+
+    /**
+     * Starts recording the colors into a new file in the working directory or finishes the running recording.
+     */
+    public static void toggleRecording() {
+        if (recording) {
+            simulation.stopRecording();
+            recording = false;
+            return;
+        }
+        Path file = Paths.get("fluidsim-" + System.currentTimeMillis() + ".fsr");
+        try {
+            simulation.startRecording(new FrameRecorder(file, simulation.sim.cols, simulation.sim.rows, false, recordEvery, 30, 8));
+            recording = true;
+            System.out.println("Recording to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Cannot record to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restarts the scene and logs its inputs, or saves the log of the running simulation.
+     * HeadlessRunner --replay runs a saved log again with the same results.
+     */
+    public static void toggleInputRecording() {
+        if (recordingInputs) {
+            simulation.stopRecordingInputs();
+            recordingInputs = false;
+            return;
+        }
+        startScene(simulationSceneInfos[currentScene], true);
+    }
+
+    public static void toggleObstaclePainting() {
+        gridPanel.paintObstacles = !gridPanel.paintObstacles;
+    }
+
+    /**
+     * Replaces the obstacles of the running simulation by the dark pixels of an image, scaled to the grid.
+     * The obstacles are submitted as input events, one per run of obstacle cells in a row, so they are part of
+     * recorded inputs.
+     */
+    public static void loadObstacles() {
+        JFileChooser chooser = new JFileChooser(".");
+        if (chooser.showOpenDialog(window) != JFileChooser.APPROVE_OPTION)
+            return;
+        File file = chooser.getSelectedFile();
+        BufferedImage image;
+        try {
+            image = ImageIO.read(file);
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+            return;
+        }
+        if (image == null) {
+            System.err.println("Not an image: " + file);
+            return;
+        }
+        int cols = simulation.sim.cols;
+        int rows = simulation.sim.rows;
+        simulation.submit(InputEvent.obstacles(0, 0, cols, rows, false));
+        boolean[] row = new boolean[cols + 1];
+        for (int y = 0; y < rows; y++) {
+            Arrays.fill(row, false);
+            for (int x = 0; x < cols; x++) {
+                int argb = image.getRGB(x * image.getWidth() / cols, y * image.getHeight() / rows);
+                int brightness = ((argb >> 16 & 0xFF) + (argb >> 8 & 0xFF) + (argb & 0xFF)) / 3;
+                row[x] = (argb >>> 24) >= 128 && brightness < 128;
+            }
+            for (int x = 0; x < cols; x++) {
+                if (!row[x])
+                    continue;
+                int start = x;
+                while (row[x]) {
+                    x++;
+                }
+                simulation.submit(InputEvent.obstacles(start, y, x - start, 1, true));
+            }
+        }
+    }
+
+    public static void toggleParticles() {
+        gridPanel.drawParticles = !gridPanel.drawParticles;
+        simulation.captureParticles = gridPanel.drawParticles;
+    }
+}
\ No newline at end of file